@@ -0,0 +1,104 @@
+package com.phoenixkahlo.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.phoenixkahlo.utils.BiMap;
+import com.phoenixkahlo.utils.ConcurrentBiMap;
+import com.phoenixkahlo.utils.FrozenBiMap;
+import com.phoenixkahlo.utils.IntObjBiMap;
+
+/**
+ * Measures lookups from each side of the BiMaps at several sizes. Each invocation looks up the next of the
+ * linked items in turn, so that larger maps are measured with their real cache behavior.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BiMapBenchmark {
+
+	@Param({"10", "1000", "100000"})
+	public int size;
+
+	private BiMap<Integer, String> biMap;
+	private ConcurrentBiMap<Integer, String> concurrentBiMap;
+	private FrozenBiMap<Integer, String> frozenBiMap;
+	private IntObjBiMap<String> intObjBiMap;
+	private Integer[] as;
+	private String[] bs;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		biMap = new BiMap<Integer, String>();
+		concurrentBiMap = new ConcurrentBiMap<Integer, String>();
+		intObjBiMap = new IntObjBiMap<String>(size, -1);
+		as = new Integer[size];
+		bs = new String[size];
+		for (int i = 0; i < size; i++) {
+			as[i] = i * 7919;
+			bs[i] = "item" + i;
+			biMap.link(as[i], bs[i]);
+			concurrentBiMap.link(as[i], bs[i]);
+			intObjBiMap.link(as[i], bs[i]);
+		}
+		frozenBiMap = biMap.freeze();
+	}
+
+	private int next() {
+		int i = next;
+		next = i + 1 == size ? 0 : i + 1;
+		return i;
+	}
+
+	@Benchmark
+	public String biMapGetB() {
+		return biMap.getB(as[next()]);
+	}
+
+	@Benchmark
+	public Integer biMapGetA() {
+		return biMap.getA(bs[next()]);
+	}
+
+	@Benchmark
+	public String concurrentBiMapGetB() {
+		return concurrentBiMap.getB(as[next()]);
+	}
+
+	@Benchmark
+	public String frozenBiMapGetB() {
+		return frozenBiMap.getB(as[next()]);
+	}
+
+	@Benchmark
+	public Integer frozenBiMapGetA() {
+		return frozenBiMap.getA(bs[next()]);
+	}
+
+	@Benchmark
+	public String intObjBiMapGetB() {
+		return intObjBiMap.getB(as[next()]);
+	}
+
+	@Benchmark
+	public int intObjBiMapGetA() {
+		return intObjBiMap.getA(bs[next()]);
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.phoenixkahlo.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.phoenixkahlo.networking.Sendable;
+import com.phoenixkahlo.utils.StreamUtils;
+
+/**
+ * A typical small Sendable: a few numbers and a name.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ */
+public class Payload implements Sendable<Object, Object> {
+
+	/**
+	 * Which of several registered types this Payload counts as, for coders with many types.
+	 */
+	int type;
+	private long id;
+	private double x;
+	private double y;
+	private String name;
+
+	public Payload(int type, long id, double x, double y, String name) {
+		this.type = type;
+		this.id = id;
+		this.x = x;
+		this.y = y;
+		this.name = name;
+	}
+
+	public Payload(InputStream in) throws IOException {
+		this(0, in);
+	}
+
+	Payload(int type, InputStream in) throws IOException {
+		this.type = type;
+		id = StreamUtils.readLong(in);
+		x = StreamUtils.readDouble(in);
+		y = StreamUtils.readDouble(in);
+		name = StreamUtils.readString(in);
+	}
+
+	@Override
+	public void write(OutputStream out) throws IOException {
+		StreamUtils.writeLong(id, out);
+		StreamUtils.writeDouble(x, out);
+		StreamUtils.writeDouble(y, out);
+		StreamUtils.writeString(name, out);
+	}
+
+	@Override
+	public void effectClient(Object connection) {}
+
+	@Override
+	public void effectServer(Object connection) {}
+
+}
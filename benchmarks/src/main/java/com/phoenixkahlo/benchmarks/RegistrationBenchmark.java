@@ -0,0 +1,70 @@
+package com.phoenixkahlo.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.phoenixkahlo.networking.BadDataException;
+import com.phoenixkahlo.networking.Sendable;
+import com.phoenixkahlo.networking.SendableCoder;
+
+/**
+ * Measures the class reflection path of SendableCoder: registering a class, and writing and reading
+ * Sendables of a type registered by class.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RegistrationBenchmark {
+
+	private SendableCoder<Object, Object> coder;
+	private Payload payload;
+	private ByteArrayOutputStream out;
+	private byte[] encoded;
+
+	@Setup
+	public void setup() throws IOException {
+		coder = new SendableCoder<Object, Object>();
+		coder.register(1, Payload.class);
+		payload = new Payload(0, 123456789L, 1.5, -2.25, "player name");
+		out = new ByteArrayOutputStream(256);
+		coder.write(out, payload);
+		encoded = out.toByteArray();
+	}
+
+	@Benchmark
+	public SendableCoder<Object, Object> register() {
+		SendableCoder<Object, Object> fresh = new SendableCoder<Object, Object>();
+		fresh.register(1, Payload.class);
+		return fresh;
+	}
+
+	@Benchmark
+	public int write() throws IOException {
+		out.reset();
+		coder.write(out, payload);
+		return out.size();
+	}
+
+	@Benchmark
+	public Sendable<Object, Object> read() throws IOException, BadDataException {
+		return coder.read(new ByteArrayInputStream(encoded));
+	}
+
+}
@@ -0,0 +1,151 @@
+package com.phoenixkahlo.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.phoenixkahlo.networking.Reply;
+import com.phoenixkahlo.networking.ReplyClientConnection;
+import com.phoenixkahlo.networking.ReplyServerConnection;
+import com.phoenixkahlo.networking.SendableCoder;
+import com.phoenixkahlo.networking.SimpleRepliable;
+import com.phoenixkahlo.networking.SimpleReply;
+
+/**
+ * Measures the latency of a request and its reply over loopback, through ReplyClientConnection and
+ * ReplyServerConnection, with and without batching.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RoundTripBenchmark {
+
+	public static class Ping extends SimpleRepliable<Client, Server> {
+
+		public Ping() {}
+
+		public Ping(InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		public void effectClient(Client connection) {}
+
+		@Override
+		public void effectServer(Server connection) {
+			connection.sendReplyTo(new Pong(), this);
+		}
+
+	}
+
+	public static class Pong extends SimpleReply<Client, Server> {
+
+		public Pong() {}
+
+		public Pong(InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		public void effectClient(Client connection) {}
+
+		@Override
+		public void effectServer(Server connection) {}
+
+	}
+
+	public static class Coder extends SendableCoder<Client, Server> {
+
+		public Coder() {
+			register(1, Ping.class);
+			register(2, Pong.class);
+		}
+
+	}
+
+	public static class Client extends ReplyClientConnection<Client, Server> {
+
+		public Client(Socket socket) {
+			super(socket, new Coder());
+		}
+
+	}
+
+	public static class Server extends ReplyServerConnection<Client, Server> {
+
+		public Server(Socket socket) {
+			super(socket, new Coder());
+		}
+
+	}
+
+	@Param({"false", "true"})
+	public boolean batching;
+
+	private ServerSocket serverSocket;
+	private Client client;
+
+	@Setup
+	public void setup() throws IOException, InterruptedException, ExecutionException {
+		serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		CompletableFuture<Server> accepted = new CompletableFuture<Server>();
+		Thread acceptor = new Thread(() -> {
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				Server server = new Server(socket);
+				if (batching)
+					server.enableBatching(8192, 0);
+				server.start();
+				accepted.complete(server);
+			} catch (IOException e) {
+				accepted.completeExceptionally(e);
+			}
+		});
+		acceptor.start();
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+		socket.setTcpNoDelay(true);
+		client = new Client(socket);
+		if (batching)
+			client.enableBatching(8192, 0);
+		client.start();
+		accepted.get();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		client.disconnect();
+		serverSocket.close();
+	}
+
+	@Benchmark
+	public Reply<Client, Server> roundTrip() throws InterruptedException, ExecutionException, TimeoutException {
+		CompletableFuture<Reply<Client, Server>> reply = new CompletableFuture<Reply<Client, Server>>();
+		client.sendAndAwait(new Ping(), reply::complete);
+		return reply.get(10, TimeUnit.SECONDS);
+	}
+
+}
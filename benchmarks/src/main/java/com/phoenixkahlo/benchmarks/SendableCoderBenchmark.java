@@ -0,0 +1,80 @@
+package com.phoenixkahlo.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.phoenixkahlo.networking.BadDataException;
+import com.phoenixkahlo.networking.Sendable;
+import com.phoenixkahlo.networking.SendableCoder;
+
+/**
+ * Measures SendableCoder.write and read with varying numbers of registered types. The Sendable coded is of
+ * the last type registered, and the others are registered with lambdas, so that this measures how the
+ * lookup of a type scales.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SendableCoderBenchmark {
+
+	@Param({"1", "16", "256"})
+	public int types;
+
+	private SendableCoder<Object, Object> coder;
+	private Payload payload;
+	private ByteArrayOutputStream out;
+	private byte[] encoded;
+
+	@Setup
+	public void setup() throws IOException {
+		coder = new SendableCoder<Object, Object>();
+		for (int i = 0; i < types; i++) {
+			int type = i;
+			coder.register(type,
+					sendable -> sendable instanceof Payload && ((Payload) sendable).type == type,
+					in -> new Payload(type, in),
+					(out, sendable) -> {
+						try {
+							sendable.write(out);
+						} catch (IOException e) {
+							throw new RuntimeException(e);
+						}
+					});
+		}
+		payload = new Payload(types - 1, 123456789L, 1.5, -2.25, "player name");
+		out = new ByteArrayOutputStream(256);
+		coder.write(out, payload);
+		encoded = out.toByteArray();
+	}
+
+	@Benchmark
+	public int write() throws IOException {
+		out.reset();
+		coder.write(out, payload);
+		return out.size();
+	}
+
+	@Benchmark
+	public Sendable<Object, Object> read() throws IOException, BadDataException {
+		return coder.read(new ByteArrayInputStream(encoded));
+	}
+
+}
@@ -0,0 +1,158 @@
+package com.phoenixkahlo.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.phoenixkahlo.utils.StreamUtils;
+
+/**
+ * Measures encoding and decoding primitives, Strings and arrays with StreamUtils.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StreamUtilsBenchmark {
+
+	/**
+	 * The length of the Strings and arrays coded.
+	 */
+	@Param({"16", "1024"})
+	public int length;
+
+	private ByteArrayOutputStream out;
+	private String ascii;
+	private String unicode;
+	private int[] ints;
+	private double[] doubles;
+	private byte[] encodedInt;
+	private byte[] encodedAscii;
+	private byte[] encodedUnicode;
+	private byte[] encodedInts;
+	private byte[] encodedDoubles;
+
+	@Setup
+	public void setup() throws IOException {
+		Random random = new Random(0);
+		StringBuilder asciiBuilder = new StringBuilder();
+		StringBuilder unicodeBuilder = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			asciiBuilder.append((char) ('a' + random.nextInt(26)));
+			unicodeBuilder.append((char) (0x400 + random.nextInt(256)));
+		}
+		ascii = asciiBuilder.toString();
+		unicode = unicodeBuilder.toString();
+		ints = new int[length];
+		doubles = new double[length];
+		for (int i = 0; i < length; i++) {
+			ints[i] = random.nextInt();
+			doubles[i] = random.nextDouble();
+		}
+		out = new ByteArrayOutputStream(length * 8 + 16);
+		StreamUtils.writeInt(42, out);
+		encodedInt = encoded();
+		StreamUtils.writeString(ascii, out);
+		encodedAscii = encoded();
+		StreamUtils.writeString(unicode, out);
+		encodedUnicode = encoded();
+		StreamUtils.writeIntArray(ints, out);
+		encodedInts = encoded();
+		StreamUtils.writeDoubleArray(doubles, out);
+		encodedDoubles = encoded();
+	}
+
+	private byte[] encoded() {
+		byte[] bytes = out.toByteArray();
+		out.reset();
+		return bytes;
+	}
+
+	@Benchmark
+	public int writeInt() throws IOException {
+		out.reset();
+		StreamUtils.writeInt(length, out);
+		return out.size();
+	}
+
+	@Benchmark
+	public int readInt() throws IOException {
+		return StreamUtils.readInt(new ByteArrayInputStream(encodedInt));
+	}
+
+	@Benchmark
+	public int writeAsciiString() throws IOException {
+		out.reset();
+		StreamUtils.writeString(ascii, out);
+		return out.size();
+	}
+
+	@Benchmark
+	public String readAsciiString() throws IOException {
+		return StreamUtils.readString(new ByteArrayInputStream(encodedAscii));
+	}
+
+	@Benchmark
+	public int writeUnicodeString() throws IOException {
+		out.reset();
+		StreamUtils.writeString(unicode, out);
+		return out.size();
+	}
+
+	@Benchmark
+	public String readUnicodeString() throws IOException {
+		return StreamUtils.readString(new ByteArrayInputStream(encodedUnicode));
+	}
+
+	@Benchmark
+	public int writeIntsOneByOne() throws IOException {
+		out.reset();
+		StreamUtils.writeInt(ints.length, out);
+		for (int n : ints) {
+			StreamUtils.writeInt(n, out);
+		}
+		return out.size();
+	}
+
+	@Benchmark
+	public int writeIntArray() throws IOException {
+		out.reset();
+		StreamUtils.writeIntArray(ints, out);
+		return out.size();
+	}
+
+	@Benchmark
+	public int[] readIntArray() throws IOException {
+		return StreamUtils.readIntArray(new ByteArrayInputStream(encodedInts));
+	}
+
+	@Benchmark
+	public int writeDoubleArray() throws IOException {
+		out.reset();
+		StreamUtils.writeDoubleArray(doubles, out);
+		return out.size();
+	}
+
+	@Benchmark
+	public double[] readDoubleArray() throws IOException {
+		return StreamUtils.readDoubleArray(new ByteArrayInputStream(encodedDoubles));
+	}
+
+}
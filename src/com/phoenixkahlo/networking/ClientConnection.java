@@ -2,7 +2,14 @@ package com.phoenixkahlo.networking;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Represents a client's Sendable-based connection to a server. When run, uses a SendableCoder to decode Sendables
@@ -13,10 +20,46 @@ import java.net.Socket;
  * detect if this is not the case, and if this is not the case, unchecked casts will occur incorrectly.</b>
  * @param <B> The class of servers that the Sendables are generic to.
  */
-public class ClientConnection<A, B> extends Thread {
+public class ClientConnection<A, B> extends Thread implements Connection<A, B> {
 
-	private Socket socket;
+	private volatile Socket socket;
 	private SendableCoder<A, B> coder;
+	private SendableUnpacker<A, B> unpacker;
+	private volatile SendableBatcher<A, B> batcher;
+	private volatile IdleMonitor.Watch idleWatch;
+	private volatile StringDictionary.Encoder dictionary;
+	private volatile NetworkMetrics.ConnectionMetrics metrics;
+	
+	/**
+	 * The parameters of batching and idle detection, kept so that they can be applied to a new socket.
+	 */
+	private int maxBatchBytes = -1;
+	private long maxDelayMicros;
+	private long readIdleMillis = -1;
+	private long writeIdleMillis;
+	private int dictionaryCapacity = -1;
+	InboundPublisher<A, B> inbound = new InboundPublisher<A, B>();
+	private List<Runnable> disconnectListeners = new CopyOnWriteArrayList<Runnable>();
+	private volatile boolean disconnected = false;
+	
+	/**
+	 * Serializes writes when batching is disabled, so that concurrently sent Sendables don't interleave, and
+	 * tells a ping whether a write is in progress.
+	 */
+	private ReentrantLock writeLock = new ReentrantLock();
+	
+	/**
+	 * The OutputStream last wrapped to count the bytes written when batching is disabled, its wrapper and the
+	 * ConnectionMetrics it counts in, guarded by writeLock, so that the wrapper isn't allocated on every send.
+	 */
+	private OutputStream countedSource = null;
+	private OutputStream counted = null;
+	private NetworkMetrics.ConnectionMetrics countedMetrics = null;
+	
+	/**
+	 * Whether the listener that stops counting this connection when it disconnects has been added.
+	 */
+	private boolean metricsListened = false;
 	
 	/**
 	 * Constructs the ClientConnection with the given arguments, but does not start it.
@@ -26,6 +69,8 @@ public class ClientConnection<A, B> extends Thread {
 	public ClientConnection(Socket socket, SendableCoder<A, B> coder) {
 		this.socket = socket;
 		this.coder = coder;
+		this.unpacker = new SendableUnpacker<A, B>(coder);
+		addDisconnectListener(inbound::complete);
 		Thread.currentThread().setUncaughtExceptionHandler(new UncaughtExceptionHandler() {
 
 			@Override
@@ -43,15 +88,62 @@ public class ClientConnection<A, B> extends Thread {
 		try {
 			InputStream in = socket.getInputStream();
 			while (true) {
-				read(in).effectClient((A) this);
+				inbound.awaitDemand();
+				Sendable<A, B> sendable = read(in);
+				if (inbound.publish(sendable))
+					continue;
+				NetworkEvents.Dispatch event = new NetworkEvents.Dispatch();
+				event.begin();
+				sendable.effectClient((A) this);
+				event.end();
+				if (event.shouldCommit()) {
+					event.type = sendable.getClass();
+					event.commit();
+				}
 			}
 		} catch (IOException | BadDataException e) {
-			System.out.print("Disconnecting " + this + " on account of exception: ");
-			e.printStackTrace(System.out);
-			disconnect();
+			connectionFailed(e);
 		}
 	}
 	
+	/**
+	 * Is called when reading or writing fails. Disconnects by default, and is seperated for the purpose
+	 * of overriding.
+	 * @param e the exception with which the connection failed
+	 */
+	protected void connectionFailed(Exception e) {
+		System.out.print("Disconnecting " + this + " on account of exception: ");
+		e.printStackTrace(System.out);
+		disconnect();
+	}
+	
+	/**
+	 * @return the socket currently encapsulated
+	 */
+	protected Socket getSocket() {
+		return socket;
+	}
+	
+	/**
+	 * Replaces the encapsulated socket, for subclasses that reconnect. Any batching and idle detection
+	 * enabled on this connection is applied to the new socket. Should be called only from the thread
+	 * that reads, or before it is started.
+	 * @param socket the new socket
+	 * @throws IOException if the socket's OutputStream cannot be obtained
+	 */
+	protected void setSocket(Socket socket) throws IOException {
+		this.socket = socket;
+		unpacker = new SendableUnpacker<A, B>(coder);
+		unpacker.setMetrics(metrics);
+		dictionary = null;
+		if (dictionaryCapacity > 0)
+			enableStringDictionary(dictionaryCapacity);
+		if (maxBatchBytes > 0)
+			enableBatching(maxBatchBytes, maxDelayMicros);
+		if (readIdleMillis >= 0)
+			setIdleTimeouts(readIdleMillis, writeIdleMillis);
+	}
+	
 	/**
 	 * Reads the next Sendable from the InputStream. Is called from run(), and is seperated for
 	 * the purpose of overriding.
@@ -60,37 +152,260 @@ public class ClientConnection<A, B> extends Thread {
 	 * @throws IOException if the InputStream throws an IOException
 	 * @throws BadDataException if the SendableCoder throws a BadDataException
 	 */
+	@SuppressWarnings("unchecked")
 	protected Sendable<A, B> read(InputStream in) throws IOException, BadDataException {
-		return coder.read(in);
+		while (true) {
+			Sendable<A, B> sendable = unpacker.read(in);
+			IdleMonitor.Watch idleWatch = this.idleWatch;
+			if (idleWatch != null)
+				idleWatch.markRead();
+			if (sendable == Heartbeat.PING)
+				send(Heartbeat.PONG);
+			else if (sendable != Heartbeat.PONG)
+				return sendable;
+		}
 	}
 	
 	/**
 	 * Sends the Sendable to the server
 	 * @param sendable the Sendable to send
 	 */
+	@Override
 	public void send(Sendable<A, B> sendable) {
+		NetworkEvents.Send event = new NetworkEvents.Send();
+		event.begin();
 		try {
-			coder.write(socket.getOutputStream(), sendable);
+			SendableBatcher<A, B> batcher = this.batcher;
+			if (batcher != null) {
+				batcher.send(sendable);
+			} else {
+				writeLock.lock();
+				try {
+					OutputStream out = socket.getOutputStream();
+					NetworkMetrics.ConnectionMetrics metrics = this.metrics;
+					if (metrics != null || new NetworkEvents.Encode().isEnabled())
+						out = counted(out, metrics);
+					StringDictionary.Encoder dictionary = this.dictionary;
+					if (dictionary == null) {
+						coder.write(out, sendable);
+					} else {
+						// the state of a dictionary is guarded by the dictionary, as the batcher guards it
+						synchronized (dictionary) {
+							coder.write(dictionary.wrap(out, SendablePriority.NORMAL.ordinal()), sendable);
+						}
+					}
+				} finally {
+					writeLock.unlock();
+				}
+			}
+			event.end();
+			if (event.shouldCommit()) {
+				event.type = sendable.getClass();
+				event.batched = batcher != null;
+				event.commit();
+			}
+			NetworkMetrics.ConnectionMetrics metrics = this.metrics;
+			if (metrics != null)
+				metrics.sent();
+			IdleMonitor.Watch idleWatch = this.idleWatch;
+			if (idleWatch != null)
+				idleWatch.markWrite();
 		} catch (IOException e) {
-			System.out.print("Disconnecting " + this + " on account of exception: ");
-			e.printStackTrace(System.out);
-			disconnect();
+			connectionFailed(e);
+		}
+	}
+	
+	/**
+	 * Returns the OutputStream wrapped to count the bytes written, in the ConnectionMetrics if enabled, reusing
+	 * the last wrapper if it is of the same OutputStream and ConnectionMetrics. Is called holding writeLock.
+	 */
+	private OutputStream counted(OutputStream out, NetworkMetrics.ConnectionMetrics metrics) {
+		if (out != countedSource || metrics != countedMetrics) {
+			countedSource = out;
+			countedMetrics = metrics;
+			counted = metrics != null ? metrics.count(out) : new CountingOutputStream(out, new LongAdder());
+		}
+		return counted;
+	}
+	
+	/**
+	 * Enables batching of outgoing Sendables. Sendables sent while a previous write is still in progress
+	 * are accumulated and written as one SendableBatch frame, which the other side unpacks and invokes in
+	 * order. While the connection is idle, Sendables are written without delay, and under load batches are
+	 * held back for up to maxDelayMicros or until maxBatchBytes have accumulated.<br>
+	 * Batches are taken from the lanes of each SendablePriority in order, and no write exceeds maxBatchBytes,
+	 * larger frames being split into fragments. The smaller maxBatchBytes, the more closely CONTROL Sendables
+	 * can be interleaved with a bulk transfer.
+	 * @param maxBatchBytes the number of bytes after which a batch is written without further delay, and the
+	 * largest number of bytes written at once
+	 * @param maxDelayMicros the longest time in microseconds that a batch will be held back
+	 * @throws IOException if the socket's OutputStream cannot be obtained
+	 * @see com.phoenixkahlo.networking.SendableBatch
+	 */
+	public void enableBatching(int maxBatchBytes, long maxDelayMicros) throws IOException {
+		this.maxBatchBytes = maxBatchBytes;
+		this.maxDelayMicros = maxDelayMicros;
+		if (socket != null) {
+			SendableBatcher<A, B> batcher = new SendableBatcher<A, B>(coder, socket.getOutputStream(), maxBatchBytes,
+					maxDelayMicros);
+			batcher.setDictionary(dictionary);
+			batcher.setMetrics(metrics);
+			SendableBatcher<A, B> previous = this.batcher;
+			this.batcher = batcher;
+			if (previous != null)
+				previous.close();
 		}
 	}
 	
+	/**
+	 * Enables a dictionary of repeated Strings in each direction, such that Strings which Sendables write with
+	 * StringDictionary.writeString are sent as small tokens after the first time. Must be enabled on both
+	 * sides before anything is sent or received. Once a dictionary holds capacity Strings, further Strings are
+	 * sent in full.
+	 * @param capacity the greatest number of Strings held in each direction
+	 * @see com.phoenixkahlo.networking.StringDictionary
+	 */
+	public void enableStringDictionary(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Invalid string dictionary capacity " + capacity);
+		dictionaryCapacity = capacity;
+		writeLock.lock();
+		try {
+			dictionary = new StringDictionary.Encoder(capacity);
+			unpacker.setDictionary(new StringDictionary.Decoder(capacity));
+			SendableBatcher<A, B> batcher = this.batcher;
+			if (batcher != null)
+				batcher.setDictionary(dictionary);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Enables the counting of this connection's traffic in the NetworkMetrics, and of the encoding and
+	 * decoding of its SendableCoder. Should be enabled before the connection is started, so that everything
+	 * received is counted. The connection stops being counted when it disconnects.
+	 * @param metrics the NetworkMetrics to count in, such as NetworkMetrics.shared()
+	 * @see com.phoenixkahlo.networking.NetworkMetrics
+	 */
+	public void enableMetrics(NetworkMetrics metrics) {
+		NetworkMetrics.ConnectionMetrics previous = this.metrics;
+		if (previous != null)
+			previous.close();
+		NetworkMetrics.ConnectionMetrics connectionMetrics = metrics.register(toString());
+		this.metrics = connectionMetrics;
+		coder.setMetrics(metrics);
+		unpacker.setMetrics(connectionMetrics);
+		SendableBatcher<A, B> batcher = this.batcher;
+		if (batcher != null)
+			batcher.setMetrics(connectionMetrics);
+		writeLock.lock();
+		try {
+			if (metricsListened)
+				return;
+			metricsListened = true;
+		} finally {
+			writeLock.unlock();
+		}
+		addDisconnectListener(() -> {
+			NetworkMetrics.ConnectionMetrics current = this.metrics;
+			if (current != null)
+				current.close();
+		});
+	}
+	
+	/**
+	 * @return the counters of this connection, or null if metrics are not enabled
+	 */
+	public NetworkMetrics.ConnectionMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Enables idle detection on the shared IdleMonitor. When nothing has been sent for writeIdleMillis, a
+	 * ping is sent, to which the other side automatically replies, and when nothing has been received for
+	 * readIdleMillis, the connection is disconnected. It is therefore sufficient for one side to enable idle
+	 * detection, so long as its writeIdleMillis is well below its readIdleMillis. Replaces any previous idle
+	 * detection of this connection.
+	 * @param readIdleMillis the time without receiving after which to disconnect, or 0 to never disconnect
+	 * @param writeIdleMillis the time without sending after which to ping, or 0 to never ping
+	 * @see com.phoenixkahlo.networking.IdleMonitor
+	 */
+	public void setIdleTimeouts(long readIdleMillis, long writeIdleMillis) {
+		this.readIdleMillis = readIdleMillis;
+		this.writeIdleMillis = writeIdleMillis;
+		IdleMonitor.Watch previous = idleWatch;
+		if (previous != null)
+			previous.cancel();
+		idleWatch = IdleMonitor.shared().watch(readIdleMillis, writeIdleMillis, this::ping,
+				() -> connectionFailed(new SocketTimeoutException("Nothing received for " + readIdleMillis + " ms")));
+	}
+	
+	/**
+	 * Sends a ping, unless a write is in progress or frames are waiting to be written, since the ping would
+	 * then only wait behind them, and would block the IdleMonitor's callback thread for as long as a peer
+	 * that has stopped reading leaves them unwritten.
+	 */
+	@SuppressWarnings("unchecked")
+	private void ping() {
+		SendableBatcher<A, B> batcher = this.batcher;
+		if (batcher != null ? batcher.isBusy() : writeLock.isLocked())
+			return;
+		send(Heartbeat.PING);
+	}
+	
 	/**
 	 * Disconnects the encapsulated socket and ends this connection.
 	 * If any additional cleanup is necessary, such as removing this object from a list,
-	 * this method should be overridden and called with super.
+	 * this method should be overridden and called with super, or a disconnect listener
+	 * should be added. A ConnectionRegistry does the latter.
 	 * Can be called externally, and will be called when the socket throws an IOException
 	 * or when the SendableCoder throws a BadDataException.
 	 */
+	@Override
 	public void disconnect() {
+		IdleMonitor.Watch idleWatch = this.idleWatch;
+		if (idleWatch != null)
+			idleWatch.cancel();
+		SendableBatcher<A, B> batcher = this.batcher;
+		if (batcher != null)
+			batcher.close();
 		try {
-			socket.close();
+			if (socket != null)
+				socket.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		runDisconnectListeners();
+	}
+	
+	@Override
+	public Flow.Publisher<Sendable<A, B>> inbound() {
+		return inbound;
+	}
+	
+	@Override
+	public Flow.Subscriber<Sendable<A, B>> outbound() {
+		return new OutboundSubscriber<A, B>(this, () -> batcher);
+	}
+	
+	@Override
+	public void addDisconnectListener(Runnable listener) {
+		disconnectListeners.add(listener);
+		if (disconnected && disconnectListeners.remove(listener))
+			listener.run();
+	}
+	
+	/**
+	 * Runs and removes each disconnect listener, such that each is run only once even if disconnect is
+	 * called several times or concurrently.
+	 */
+	private void runDisconnectListeners() {
+		disconnected = true;
+		for (Runnable listener : disconnectListeners) {
+			if (disconnectListeners.remove(listener))
+				listener.run();
+		}
 	}
 	
 	@Override
@@ -0,0 +1,53 @@
+package com.phoenixkahlo.networking;
+
+import java.util.concurrent.Flow;
+
+/**
+ * The operations common to the client and server ends of a Sendable-based connection.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of clients that the Sendables are generic to.
+ * @param <B> The class of servers that the Sendables are generic to.
+ * @see com.phoenixkahlo.networking.ClientConnection
+ * @see com.phoenixkahlo.networking.ServerConnection
+ */
+public interface Connection<A, B> {
+
+	/**
+	 * Sends the Sendable to the other side of the connection.
+	 * @param sendable the Sendable to send
+	 */
+	void send(Sendable<A, B> sendable);
+	
+	/**
+	 * Disconnects the connection.
+	 */
+	void disconnect();
+	
+	/**
+	 * Adds a listener to be run once when the connection disconnects, on the thread that disconnects it. If
+	 * the connection has already disconnected, the listener is run immediately.
+	 * @param listener the listener to run
+	 */
+	void addDisconnectListener(Runnable listener);
+	
+	/**
+	 * Returns the Sendables received as a Flow.Publisher, which accepts a single Subscriber. Once it has
+	 * subscribed, received Sendables are passed to its onNext rather than invoked, and the connection reads
+	 * from its socket only while the Subscriber has requested more, so that a slow Subscriber holds back the
+	 * other side through TCP flow control. The Subscriber is completed when the connection disconnects, and
+	 * should it cancel, received Sendables are invoked again. Since nothing is read without demand, neither
+	 * are the pings of idle detection.
+	 * @return the Publisher of received Sendables
+	 */
+	Flow.Publisher<Sendable<A, B>> inbound();
+	
+	/**
+	 * Returns a new Flow.Subscriber that sends the Sendables it receives through the connection, requesting
+	 * them only as fast as the connection writes them, so that a Publisher faster than the network is held
+	 * back rather than its Sendables accumulating. Its subscription is cancelled when the connection
+	 * disconnects.
+	 * @return a Subscriber to subscribe to a Publisher of Sendables to send
+	 */
+	Flow.Subscriber<Sendable<A, B>> outbound();
+	
+}
@@ -0,0 +1,265 @@
+package com.phoenixkahlo.networking;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A concurrent registry of connections, which assigns each connection an id and removes it when it disconnects.
+ * Connections can be looked up by id, or by attributes that are indexed for lookup by value. Adding, removing
+ * and looking up are expected O(1) and never block readers. Iteration is weakly consistent: it never blocks
+ * connections from being added or removed, and reflects some of the changes made during it, which makes it
+ * suitable for broadcasting.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <C> The class of connections registered
+ */
+public class ConnectionRegistry<C extends Connection<?, ?>> {
+
+	/**
+	 * A registered connection and its attributes. Changes to the attributes of an entry, and its removal,
+	 * are synchronized on the entry so that the indexes stay consistent with the attributes.
+	 */
+	private class Entry {
+		long id;
+		C connection;
+		Map<Object, Object> attributes = new ConcurrentHashMap<Object, Object>();
+		boolean removed = false;
+		Entry(long id, C connection) {
+			this.id = id;
+			this.connection = connection;
+		}
+	}
+
+	private AtomicLong nextID = new AtomicLong(1);
+	private Map<Long, Entry> byID = new ConcurrentHashMap<Long, Entry>();
+	private Map<C, Entry> byConnection = new ConcurrentHashMap<C, Entry>();
+	private Collection<C> connections = Collections.unmodifiableCollection(new ConnectionView());
+
+	/**
+	 * The connections to which a disconnect listener has been added, so that one registered, removed and
+	 * registered again doesn't get another.
+	 */
+	private Set<C> listened = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * For each attribute key, the connections that have each value of that attribute.
+	 */
+	private Map<Object, Map<Object, Set<C>>> indexes = new ConcurrentHashMap<Object, Map<Object, Set<C>>>();
+
+	/**
+	 * The connections of the registry, backed by the map from id to entry.
+	 */
+	private class ConnectionView extends AbstractCollection<C> {
+
+		@Override
+		public Iterator<C> iterator() {
+			Iterator<Entry> entries = byID.values().iterator();
+			return new Iterator<C>() {
+
+				@Override
+				public boolean hasNext() {
+					return entries.hasNext();
+				}
+
+				@Override
+				public C next() {
+					return entries.next().connection;
+				}
+
+			};
+		}
+
+		@Override
+		public int size() {
+			return byID.size();
+		}
+
+	}
+
+	/**
+	 * Registers the connection, and adds a disconnect listener that unregisters it.
+	 * @param connection the connection to register
+	 * @return the id assigned to the connection, or its existing id if it is already registered
+	 */
+	public long add(C connection) {
+		Entry entry = new Entry(nextID.getAndIncrement(), connection);
+		Entry existing = byConnection.putIfAbsent(connection, entry);
+		if (existing != null)
+			return existing.id;
+		synchronized (entry) {
+			// a concurrent remove may have found the entry before it could be put by id
+			if (!entry.removed)
+				byID.put(entry.id, entry);
+		}
+		if (listened.add(connection)) {
+			connection.addDisconnectListener(() -> {
+				listened.remove(connection);
+				remove(connection);
+			});
+		}
+		return entry.id;
+	}
+
+	/**
+	 * Unregisters the connection, if it is registered.
+	 * @param connection the connection to unregister
+	 * @return whether the connection was registered
+	 */
+	public boolean remove(C connection) {
+		Entry entry = byConnection.remove(connection);
+		if (entry == null)
+			return false;
+		synchronized (entry) {
+			entry.removed = true;
+			byID.remove(entry.id);
+			for (Map.Entry<Object, Object> attribute : entry.attributes.entrySet()) {
+				unindex(attribute.getKey(), attribute.getValue(), connection);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Unregisters the connection with the id, if there is one.
+	 * @param id the id of the connection to unregister
+	 * @return whether a connection was registered with that id
+	 */
+	public boolean remove(long id) {
+		Entry entry = byID.get(id);
+		return entry != null && remove(entry.connection);
+	}
+
+	/**
+	 * @param id the id of a connection
+	 * @return the connection registered with that id, or null if there is none
+	 */
+	public C get(long id) {
+		Entry entry = byID.get(id);
+		return entry == null ? null : entry.connection;
+	}
+
+	/**
+	 * @param connection a connection
+	 * @return the id of the connection, or -1 if it is not registered
+	 */
+	public long getID(C connection) {
+		Entry entry = byConnection.get(connection);
+		return entry == null ? -1 : entry.id;
+	}
+
+	/**
+	 * @param connection a connection
+	 * @return whether the connection is registered
+	 */
+	public boolean contains(C connection) {
+		return byConnection.containsKey(connection);
+	}
+
+	/**
+	 * Sets an attribute of a registered connection, indexing the connection by its value.
+	 * @param connection the registered connection
+	 * @param key the key of the attribute
+	 * @param value the value of the attribute, or null to remove the attribute
+	 * @return false if the connection is not registered
+	 */
+	public boolean setAttribute(C connection, Object key, Object value) {
+		Entry entry = byConnection.get(connection);
+		if (entry == null)
+			return false;
+		synchronized (entry) {
+			if (entry.removed)
+				return false;
+			Object previous = value == null ? entry.attributes.remove(key) : entry.attributes.put(key, value);
+			if (previous != null)
+				unindex(key, previous, connection);
+			if (value != null)
+				index(key, value, connection);
+		}
+		return true;
+	}
+
+	/**
+	 * @param connection a registered connection
+	 * @param key the key of the attribute
+	 * @return the value of the attribute, or null if the connection is not registered or doesn't have it
+	 */
+	public Object getAttribute(C connection, Object key) {
+		Entry entry = byConnection.get(connection);
+		return entry == null ? null : entry.attributes.get(key);
+	}
+
+	/**
+	 * @param key the key of an attribute
+	 * @param value the value of that attribute
+	 * @return the connections whose attribute has that value, as a weakly consistent view
+	 */
+	public Collection<C> findByAttribute(Object key, Object value) {
+		Map<Object, Set<C>> index = indexes.get(key);
+		Set<C> found = index == null ? null : index.get(value);
+		return found == null ? Collections.<C>emptySet() : Collections.unmodifiableSet(found);
+	}
+
+	/**
+	 * @param key the key of an attribute
+	 * @param value the value of that attribute
+	 * @return any one connection whose attribute has that value, or null if there is none
+	 */
+	public C findOneByAttribute(Object key, Object value) {
+		for (C connection : findByAttribute(key, value)) {
+			return connection;
+		}
+		return null;
+	}
+
+	/**
+	 * @return all registered connections, as a weakly consistent view
+	 */
+	public Collection<C> connections() {
+		return connections;
+	}
+
+	/**
+	 * Performs the action for each registered connection, such as sending it a Sendable. Is weakly consistent.
+	 * @param action the action to perform
+	 */
+	public void forEach(Consumer<? super C> action) {
+		for (Entry entry : byID.values()) {
+			action.accept(entry.connection);
+		}
+	}
+
+	/**
+	 * @return the number of registered connections
+	 */
+	public int size() {
+		return byID.size();
+	}
+
+	private void index(Object key, Object value, C connection) {
+		Map<Object, Set<C>> index = indexes.computeIfAbsent(key, k -> new ConcurrentHashMap<Object, Set<C>>());
+		// added within compute so that a concurrent unindex can't discard the set after it is found
+		index.compute(value, (v, set) -> {
+			if (set == null)
+				set = ConcurrentHashMap.newKeySet();
+			set.add(connection);
+			return set;
+		});
+	}
+	
+	private void unindex(Object key, Object value, C connection) {
+		Map<Object, Set<C>> index = indexes.get(key);
+		if (index == null)
+			return;
+		index.computeIfPresent(value, (v, set) -> {
+			set.remove(connection);
+			return set.isEmpty() ? null : set;
+		});
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.phoenixkahlo.networking;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An InputStream that counts the bytes read through it.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ */
+class CountingInputStream extends FilterInputStream {
+
+	private LongAdder count;
+
+	/**
+	 * @param in the InputStream to read from
+	 * @param count the counter to add the bytes read to, which may be read by other threads
+	 */
+	CountingInputStream(InputStream in, LongAdder count) {
+		super(in);
+		this.count = count;
+	}
+
+	/**
+	 * @return the number of bytes counted
+	 */
+	long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = in.read();
+		if (b != -1)
+			count.increment();
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = in.read(b, off, len);
+		if (n > 0)
+			count.add(n);
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = in.skip(n);
+		count.add(skipped);
+		return skipped;
+	}
+
+}
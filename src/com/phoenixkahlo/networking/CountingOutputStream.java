@@ -0,0 +1,44 @@
+package com.phoenixkahlo.networking;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An OutputStream that counts the bytes written through it.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ */
+class CountingOutputStream extends FilterOutputStream {
+
+	private LongAdder count;
+
+	/**
+	 * @param out the OutputStream to write to
+	 * @param count the counter to add the bytes written to, which may be read by other threads
+	 */
+	CountingOutputStream(OutputStream out, LongAdder count) {
+		super(out);
+		this.count = count;
+	}
+
+	/**
+	 * @return the number of bytes counted
+	 */
+	long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		count.increment();
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		count.add(len);
+	}
+
+}
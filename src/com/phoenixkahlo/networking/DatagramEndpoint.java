@@ -0,0 +1,290 @@
+package com.phoenixkahlo.networking;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.phoenixkahlo.utils.StreamUtils;
+
+/**
+ * A thread that encapsulates a DatagramChannel over which UnreliableChannels paired with connections send and
+ * receive Sendables that are stale once superseded, such as positions, without the head-of-line blocking of
+ * TCP. A server has one DatagramEndpoint for all of its connections, and a client one for its connection.
+ * <p>
+ * The server pairs each connection, which sends the client a random token over the connection. The client,
+ * which has paired its connection with the address of the server's DatagramEndpoint beforehand, then sends
+ * hellos carrying the token until the server replies. Every packet carries the token of its channel and a
+ * sequence number, and packets are dropped unless their sequence number is above that of every packet
+ * received before them, such that Sendables arrive at most once and never out of order, but may be lost.
+ * <p>
+ * Both sides must register the DatagramEndpoint with the SendableCoders of their connections under the same
+ * header before connecting, and the Sendables sent through its channels must be registered with the
+ * SendableCoder of the DatagramEndpoint on both sides. Received Sendables are invoked with the paired
+ * connection on the thread of the DatagramEndpoint, concurrently with those received by the connection.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of clients that the Sendables are generic to
+ * @param <B> The class of servers that the Sendables are generic to
+ * @see com.phoenixkahlo.networking.UnreliableChannel
+ */
+public class DatagramEndpoint<A, B> extends Thread {
+
+	/**
+	 * The number of bytes of the header of each packet: the token and the sequence number.
+	 */
+	static final int HEADER_BYTES = 16;
+
+	/**
+	 * The time between the hellos of a client that has not heard from the server.
+	 */
+	static final long HELLO_INTERVAL_MILLIS = 100;
+
+	private static final SecureRandom random = new SecureRandom();
+
+	private SendableCoder<A, B> coder;
+	private DatagramChannel channel;
+	private Selector selector;
+	private int maxPacketBytes;
+
+	/**
+	 * The channels by token, and the channels of clients waiting for their token, by connection.
+	 */
+	private Map<Long, UnreliableChannel<A, B>> channels = new ConcurrentHashMap<Long, UnreliableChannel<A, B>>();
+	private Map<Connection<A, B>, UnreliableChannel<A, B>> pending =
+			new ConcurrentHashMap<Connection<A, B>, UnreliableChannel<A, B>>();
+
+	/**
+	 * The channels of clients that have their token but have not yet heard from the server, which are the only
+	 * channels that send hellos.
+	 */
+	private Set<UnreliableChannel<A, B>> unanswered = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean shouldContinueRunning = true;
+
+	/**
+	 * Creates a DatagramEndpoint bound to the address, but does not receive packets until it is started.
+	 * @param coder the SendableCoder with which to encode and decode the Sendables of packets
+	 * @param local the address to bind to, such as new InetSocketAddress(0) for a client
+	 * @param maxPacketBytes the greatest number of bytes of a packet, such as 1200, below which packets are
+	 * unlikely to be fragmented or dropped by the path between the sides
+	 * @throws IOException if the DatagramChannel fails to open or bind
+	 */
+	public DatagramEndpoint(SendableCoder<A, B> coder, SocketAddress local, int maxPacketBytes) throws IOException {
+		if (maxPacketBytes <= HEADER_BYTES + 4 || maxPacketBytes > 65507)
+			throw new IllegalArgumentException("Invalid max packet bytes " + maxPacketBytes);
+		this.coder = coder;
+		this.maxPacketBytes = maxPacketBytes;
+		channel = DatagramChannel.open();
+		channel.bind(local);
+		channel.configureBlocking(false);
+		selector = Selector.open();
+		channel.register(selector, SelectionKey.OP_READ);
+		setName("DatagramEndpoint on " + channel.getLocalAddress());
+		setDaemon(true);
+	}
+
+	/**
+	 * Registers the pairings of this DatagramEndpoint with the SendableCoder of a connection, such that the
+	 * connections of clients are paired when the server pairs them. The connections must be subclasses of
+	 * Connection, as ClientConnections and ServerConnections are.
+	 * @param coder the SendableCoder of the connections to pair
+	 * @param id the header with which to register, which must be the same on both sides
+	 * @throws RuntimeException if there is already an entry registered with that id
+	 */
+	public void register(SendableCoder<A, B> coder, int id) throws RuntimeException {
+		coder.register(id, new SendableCoder.SendableCoderEntry<A, B>() {
+
+			@Override
+			public boolean isType(Sendable<A, B> sendable) {
+				return sendable instanceof DatagramPairing;
+			}
+
+			@Override
+			public Sendable<A, B> create(InputStream in) throws IOException, BadDataException {
+				long token = StreamUtils.readLong(in);
+				if (token == 0)
+					throw new BadDataException("Invalid datagram token");
+				return new DatagramPairing<A, B>(DatagramEndpoint.this, token);
+			}
+
+			@Override
+			public void write(OutputStream out, Sendable<A, B> sendable) throws IOException {
+				sendable.write(out);
+			}
+
+		});
+	}
+
+	/**
+	 * Pairs the connection of a server with a new UnreliableChannel, and sends the client its token. The
+	 * channel sends nothing until the client's first hello arrives. The channel is closed when the connection
+	 * disconnects.
+	 * @param connection the connection to a client, whose DatagramEndpoint is registered with its coder
+	 * @return the UnreliableChannel through which to send the client Sendables
+	 */
+	public UnreliableChannel<A, B> pair(Connection<A, B> connection) {
+		UnreliableChannel<A, B> paired;
+		long token;
+		do {
+			token = random.nextLong();
+			paired = new UnreliableChannel<A, B>(this, connection, false, token, null);
+		} while (token == 0 || channels.putIfAbsent(token, paired) != null);
+		UnreliableChannel<A, B> closed = paired;
+		long closedToken = token;
+		connection.addDisconnectListener(() -> {
+			closed.close();
+			channels.remove(closedToken);
+		});
+		connection.send(new DatagramPairing<A, B>(this, token));
+		return paired;
+	}
+
+	/**
+	 * Pairs the connection of a client with a new UnreliableChannel to the server's DatagramEndpoint, which
+	 * sends nothing until the server has paired the connection. Should be called before the connection
+	 * starts, so that it is ready for the pairing. The channel is closed when the connection disconnects.
+	 * @param connection the connection to the server, whose DatagramEndpoint is registered with its coder
+	 * @param server the address of the server's DatagramEndpoint
+	 * @return the UnreliableChannel through which to send the server Sendables
+	 */
+	public UnreliableChannel<A, B> pair(Connection<A, B> connection, SocketAddress server) {
+		UnreliableChannel<A, B> paired = new UnreliableChannel<A, B>(this, connection, true, 0, server);
+		pending.put(connection, paired);
+		connection.addDisconnectListener(() -> {
+			paired.close();
+			pending.remove(connection);
+			unanswered.remove(paired);
+			if (paired.getToken() != 0)
+				channels.remove(paired.getToken());
+		});
+		return paired;
+	}
+
+	/**
+	 * Gives the client's channel of the connection the token sent by the server, and starts its hellos.
+	 */
+	void paired(Connection<A, B> connection, long token) {
+		UnreliableChannel<A, B> paired = pending.remove(connection);
+		if (paired == null) {
+			System.err.println("Received datagram pairing for unpaired " + connection);
+			return;
+		}
+		paired.setToken(token);
+		channels.put(token, paired);
+		unanswered.add(paired);
+		paired.hello();
+		selector.wakeup();
+	}
+
+	/**
+	 * Ends the thread that receives packets and closes the DatagramChannel, such that no channel of this
+	 * DatagramEndpoint sends or receives anything more.
+	 */
+	public void terminate() {
+		shouldContinueRunning = false;
+		try {
+			selector.close();
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return the address that this DatagramEndpoint is bound to
+	 * @throws IOException if the DatagramChannel is closed
+	 */
+	public SocketAddress getLocalAddress() throws IOException {
+		return channel.getLocalAddress();
+	}
+
+	/**
+	 * @return the greatest number of bytes of a packet
+	 */
+	public int getMaxPacketBytes() {
+		return maxPacketBytes;
+	}
+
+	@Override
+	public void run() {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(65536);
+		while (shouldContinueRunning) {
+			try {
+				selector.select(HELLO_INTERVAL_MILLIS);
+				selector.selectedKeys().clear();
+				SocketAddress source;
+				while ((source = receive(buffer)) != null) {
+					received(buffer, source);
+				}
+				for (UnreliableChannel<A, B> paired : unanswered) {
+					if (paired.isAnswered())
+						unanswered.remove(paired);
+					else
+						paired.helloIfUnanswered();
+				}
+			} catch (ClosedChannelException | ClosedSelectorException e) {
+				break;
+			} catch (IOException e) {
+				if (shouldContinueRunning) {
+					System.err.println("Failed to receive datagram");
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Receives the next packet into the buffer, flipped, if there is one.
+	 * @return the address the packet came from, or null if there was none
+	 */
+	private SocketAddress receive(ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		SocketAddress source = channel.receive(buffer);
+		buffer.flip();
+		return source;
+	}
+
+	/**
+	 * Passes the packet to the channel of its token, if there is one. Any exception from decoding or invoking
+	 * its Sendables drops the rest of the packet.
+	 */
+	private void received(ByteBuffer buffer, SocketAddress source) {
+		if (buffer.remaining() < HEADER_BYTES)
+			return;
+		UnreliableChannel<A, B> paired = channels.get(buffer.getLong());
+		if (paired == null)
+			return;
+		try {
+			paired.received(buffer, buffer.getLong(), source);
+		} catch (IOException | BadDataException e) {
+			System.err.println("Dropping malformed datagram from " + source);
+			e.printStackTrace();
+		} catch (RuntimeException e) {
+			// a Sendable that throws must not end the thread that receives for every channel
+			System.err.println("Dropping datagram from " + source + " whose Sendable threw");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Sends the packet, flipped, to the address. Packets that the system has no room to send are dropped.
+	 */
+	void send(ByteBuffer packet, SocketAddress target) throws IOException {
+		channel.send(packet, target);
+	}
+
+	SendableCoder<A, B> getCoder() {
+		return coder;
+	}
+
+}
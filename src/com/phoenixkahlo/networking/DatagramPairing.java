@@ -0,0 +1,41 @@
+package com.phoenixkahlo.networking;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.phoenixkahlo.utils.StreamUtils;
+
+/**
+ * Sent by a server through a connection that it has paired with an UnreliableChannel, to give the client the
+ * token with which the packets of the channel are sent. Is registered under the header given to
+ * DatagramEndpoint.register.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of client that is expected to be invoked with on the client end.
+ * @param <B> The class of server that is expected to be invoked with on the server end.
+ * @see com.phoenixkahlo.networking.DatagramEndpoint
+ */
+class DatagramPairing<A, B> implements Sendable<A, B> {
+
+	private DatagramEndpoint<A, B> endpoint;
+	private long token;
+
+	DatagramPairing(DatagramEndpoint<A, B> endpoint, long token) {
+		this.endpoint = endpoint;
+		this.token = token;
+	}
+
+	@Override
+	public void write(OutputStream out) throws IOException {
+		StreamUtils.writeLong(token, out);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void effectClient(A connection) {
+		endpoint.paired((Connection<A, B>) connection, token);
+	}
+
+	@Override
+	public void effectServer(B connection) {}
+
+}
@@ -0,0 +1,63 @@
+package com.phoenixkahlo.networking;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A Sendable already encoded by a SendableCoder, including its header, which any SendableCoder with the same
+ * registrations writes by copying the bytes. Sending one Sendable to many connections as an EncodedSendable
+ * encodes it once rather than once per connection. Since the bytes may be sent on any connection, they are
+ * encoded without a StringDictionary.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of client that is expected to be invoked with on the client end.
+ * @param <B> The class of server that is expected to be invoked with on the server end.
+ * @see com.phoenixkahlo.networking.SendableCoder#encode(Sendable)
+ */
+class EncodedSendable<A, B> implements Sendable<A, B> {
+
+	private Sendable<A, B> sendable;
+	private byte[] frame;
+	private SendablePriority priority;
+
+	EncodedSendable(Sendable<A, B> sendable, byte[] frame, SendablePriority priority) {
+		this.sendable = sendable;
+		this.frame = frame;
+		this.priority = priority;
+	}
+
+	/**
+	 * Writes the frame, header included.
+	 */
+	@Override
+	public void write(OutputStream out) throws IOException {
+		out.write(frame);
+	}
+
+	@Override
+	public void effectClient(A connection) {
+		sendable.effectClient(connection);
+	}
+
+	@Override
+	public void effectServer(B connection) {
+		sendable.effectServer(connection);
+	}
+
+	byte[] getFrame() {
+		return frame;
+	}
+
+	SendablePriority getPriority() {
+		return priority;
+	}
+
+	Sendable<A, B> getSendable() {
+		return sendable;
+	}
+
+	@Override
+	public String toString() {
+		return "Encoded " + sendable;
+	}
+
+}
@@ -0,0 +1,36 @@
+package com.phoenixkahlo.networking;
+
+/**
+ * The singleton Sendables with which connections check that their peer is still alive. A connection that
+ * receives PING replies with PONG, and neither is ever invoked.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of client that is expected to be invoked with on the client end.
+ * @param <B> The class of server that is expected to be invoked with on the server end.
+ * @see com.phoenixkahlo.networking.IdleMonitor
+ */
+class Heartbeat<A, B> extends DatalessSendable<A, B> {
+
+	@SuppressWarnings("rawtypes")
+	static final Heartbeat PING = new Heartbeat("PING");
+	
+	@SuppressWarnings("rawtypes")
+	static final Heartbeat PONG = new Heartbeat("PONG");
+	
+	private String name;
+	
+	private Heartbeat(String name) {
+		this.name = name;
+	}
+	
+	@Override
+	public void effectClient(A connection) {}
+
+	@Override
+	public void effectServer(B connection) {}
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+	
+}
@@ -0,0 +1,196 @@
+package com.phoenixkahlo.networking;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects idle connections using a single timer thread for any number of connections, rather than a thread
+ * or socket timeout per connection. Every tick, each Watch is checked against the time it was last marked
+ * as having read and written. When a Watch has not written for its write idle time, its write idle callback
+ * is run, and when it has not read for its read idle time, the Watch is cancelled and its read idle callback
+ * is run. Callbacks run on a few shared callback threads, so that neither a blocking write nor a slow
+ * disconnect listener can stall the timer. Since a ping to a peer that has stopped reading may block until
+ * the peer is disconnected, write idle callbacks may occupy all but one of the callback threads, and are
+ * skipped until the next write idle time while they do, so that read idle callbacks always have a thread.
+ * Write idle callbacks should still avoid blocking, such as by skipping the ping while a write is waiting.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ */
+public class IdleMonitor {
+
+	/**
+	 * The number of threads on which callbacks are run.
+	 */
+	private static final int CALLBACK_THREADS = 4;
+
+	private static IdleMonitor shared;
+
+	/**
+	 * Returns the IdleMonitor shared by all connections, creating it with a tick of 250 milliseconds if it
+	 * has not yet been created.
+	 */
+	public static synchronized IdleMonitor shared() {
+		if (shared == null)
+			shared = new IdleMonitor(250);
+		return shared;
+	}
+
+	/**
+	 * The times at which a connection was last active, registered with an IdleMonitor.
+	 */
+	public class Watch {
+
+		private long readIdleNanos;
+		private long writeIdleNanos;
+		private Runnable onWriteIdle;
+		private Runnable onReadIdle;
+
+		private volatile long lastRead;
+		private volatile long lastWrite;
+
+		/**
+		 * Whether the write idle callback has been submitted and not yet finished, so that a blocked
+		 * callback is not submitted again.
+		 */
+		private volatile boolean writeIdleRunning = false;
+
+		private Watch(long readIdleMillis, long writeIdleMillis, Runnable onWriteIdle, Runnable onReadIdle) {
+			this.readIdleNanos = TimeUnit.MILLISECONDS.toNanos(readIdleMillis);
+			this.writeIdleNanos = TimeUnit.MILLISECONDS.toNanos(writeIdleMillis);
+			this.onWriteIdle = onWriteIdle;
+			this.onReadIdle = onReadIdle;
+			lastRead = now;
+			lastWrite = now;
+		}
+
+		/**
+		 * Marks that the connection has read. Is cheap enough to be called for every Sendable, since it
+		 * uses the time of the last tick rather than reading the clock.
+		 */
+		public void markRead() {
+			lastRead = now;
+		}
+
+		/**
+		 * Marks that the connection has written.
+		 */
+		public void markWrite() {
+			lastWrite = now;
+		}
+
+		/**
+		 * Stops watching the connection.
+		 */
+		public void cancel() {
+			watches.remove(this);
+		}
+
+		private void check(long time) {
+			if (readIdleNanos > 0 && time - lastRead >= readIdleNanos) {
+				cancel();
+				callbackExecutor.execute(() -> {
+					try {
+						onReadIdle.run();
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+					}
+				});
+			} else if (writeIdleNanos > 0 && time - lastWrite >= writeIdleNanos && !writeIdleRunning) {
+				lastWrite = time;
+				if (!writeIdlePermits.tryAcquire())
+					return;
+				writeIdleRunning = true;
+				callbackExecutor.execute(() -> {
+					try {
+						onWriteIdle.run();
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+					} finally {
+						writeIdleRunning = false;
+						writeIdlePermits.release();
+					}
+				});
+			}
+		}
+
+	}
+
+	private Set<Watch> watches = ConcurrentHashMap.newKeySet();
+	private ScheduledExecutorService timer;
+	private ExecutorService callbackExecutor;
+
+	/**
+	 * Limits the write idle callbacks running at once, so that one callback thread is left for read idle ones.
+	 */
+	private Semaphore writeIdlePermits = new Semaphore(CALLBACK_THREADS - 1);
+
+	/**
+	 * The time of the last tick, in the units of System.nanoTime.
+	 */
+	private volatile long now = System.nanoTime();
+
+	/**
+	 * Creates an IdleMonitor and starts its timer thread. The thread is a daemon thread.
+	 * @param tickMillis the period at which connections are checked, which is the precision of idle times
+	 */
+	public IdleMonitor(long tickMillis) {
+		timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "IdleMonitor timer thread");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ThreadPoolExecutor callbackExecutor = new ThreadPoolExecutor(CALLBACK_THREADS, CALLBACK_THREADS, 60,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), runnable -> {
+					Thread thread = new Thread(runnable, "IdleMonitor callback thread");
+					thread.setDaemon(true);
+					return thread;
+				});
+		callbackExecutor.allowCoreThreadTimeOut(true);
+		this.callbackExecutor = callbackExecutor;
+		timer.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts watching a connection. A time of 0 disables that kind of idle detection.
+	 * @param readIdleMillis the time without reading after which onReadIdle is run
+	 * @param writeIdleMillis the time without writing after which onWriteIdle is run, and repeatedly after
+	 * each further such time
+	 * @param onWriteIdle typically sends a heartbeat
+	 * @param onReadIdle typically disconnects the connection
+	 * @return the Watch, which must be marked when the connection reads and writes
+	 */
+	public Watch watch(long readIdleMillis, long writeIdleMillis, Runnable onWriteIdle, Runnable onReadIdle) {
+		if (readIdleMillis < 0 || writeIdleMillis < 0)
+			throw new IllegalArgumentException("Negative idle time");
+		Watch watch = new Watch(readIdleMillis, writeIdleMillis, onWriteIdle, onReadIdle);
+		watches.add(watch);
+		return watch;
+	}
+
+	/**
+	 * Stops the timer thread. Watches will no longer be checked.
+	 */
+	public void terminate() {
+		timer.shutdownNow();
+		callbackExecutor.shutdownNow();
+	}
+
+	private void tick() {
+		long time = System.nanoTime();
+		now = time;
+		for (Watch watch : watches) {
+			try {
+				watch.check(time);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,146 @@
+package com.phoenixkahlo.networking;
+
+import java.util.concurrent.Flow;
+
+/**
+ * Publishes the Sendables that a connection receives to a single Flow.Subscriber, in place of invoking them.
+ * The connection's reading thread waits for demand before reading each Sendable, so that when the Subscriber
+ * falls behind, the connection stops reading, the socket's receive buffer fills, and TCP flow control holds
+ * back the other side. Until a Subscriber subscribes, and once it cancels, the connection invokes the
+ * Sendables it receives as usual.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of clients that the Sendables are generic to
+ * @param <B> The class of servers that the Sendables are generic to
+ * @see com.phoenixkahlo.networking.OutboundSubscriber
+ */
+class InboundPublisher<A, B> implements Flow.Publisher<Sendable<A, B>> {
+
+	/**
+	 * The Subscriber and its outstanding demand, guarded by this.
+	 */
+	private Flow.Subscriber<? super Sendable<A, B>> subscriber = null;
+	private long demand = 0;
+	private boolean cancelled = false;
+	private boolean completed = false;
+
+	/**
+	 * Held while signalling the Subscriber, so that onNext and onComplete are never signalled concurrently.
+	 */
+	private Object signalLock = new Object();
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super Sendable<A, B>> subscriber) {
+		if (subscriber == null)
+			throw new NullPointerException();
+		boolean rejected;
+		boolean complete;
+		synchronized (this) {
+			rejected = this.subscriber != null;
+			complete = completed;
+			if (!rejected)
+				this.subscriber = subscriber;
+		}
+		synchronized (signalLock) {
+			subscriber.onSubscribe(rejected ? new Subscription(null) : new Subscription(subscriber));
+			if (rejected)
+				subscriber.onError(new IllegalStateException("A connection's inbound Sendables have one Subscriber"));
+			else if (complete)
+				subscriber.onComplete();
+		}
+	}
+
+	/**
+	 * Waits until the Subscriber has requested another Sendable, or returns immediately if there is no
+	 * Subscriber. Is called by the reading thread before reading.
+	 */
+	synchronized void awaitDemand() {
+		while (subscriber != null && !cancelled && !completed && demand == 0) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Passes the Sendable to the Subscriber, if there is one that has requested it.
+	 * @return false if the Sendable wasn't published, and should be invoked instead
+	 */
+	boolean publish(Sendable<A, B> sendable) {
+		Flow.Subscriber<? super Sendable<A, B>> subscriber;
+		synchronized (this) {
+			subscriber = this.subscriber;
+			if (subscriber == null || cancelled || completed || demand == 0)
+				return false;
+			if (demand != Long.MAX_VALUE)
+				demand--;
+		}
+		synchronized (signalLock) {
+			subscriber.onNext(sendable);
+		}
+		return true;
+	}
+
+	/**
+	 * Signals the Subscriber that nothing more will be received. Is called when the connection disconnects.
+	 */
+	void complete() {
+		Flow.Subscriber<? super Sendable<A, B>> subscriber;
+		synchronized (this) {
+			if (completed)
+				return;
+			completed = true;
+			notifyAll();
+			subscriber = cancelled ? null : this.subscriber;
+		}
+		if (subscriber != null) {
+			synchronized (signalLock) {
+				subscriber.onComplete();
+			}
+		}
+	}
+
+	private class Subscription implements Flow.Subscription {
+
+		/**
+		 * The Subscriber, or null if its subscription was rejected.
+		 */
+		private Flow.Subscriber<? super Sendable<A, B>> subscriber;
+
+		Subscription(Flow.Subscriber<? super Sendable<A, B>> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (subscriber == null)
+				return;
+			if (n <= 0) {
+				cancel();
+				synchronized (signalLock) {
+					subscriber.onError(new IllegalArgumentException("Non-positive request " + n));
+				}
+				return;
+			}
+			synchronized (InboundPublisher.this) {
+				// demand saturates at Long.MAX_VALUE, which is unbounded
+				demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+				InboundPublisher.this.notifyAll();
+			}
+		}
+
+		@Override
+		public void cancel() {
+			if (subscriber == null)
+				return;
+			synchronized (InboundPublisher.this) {
+				cancelled = true;
+				InboundPublisher.this.notifyAll();
+			}
+		}
+
+	}
+
+}
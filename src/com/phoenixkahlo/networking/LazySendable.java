@@ -0,0 +1,158 @@
+package com.phoenixkahlo.networking;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import com.phoenixkahlo.utils.StreamUtils;
+
+/**
+ * A Sendable that keeps the bytes it was received as, and only decodes its fields when they are accessed.
+ * Until it is modified, it is written by copying those bytes, so a server that relays a LazySendable without
+ * looking into it pays for a copy rather than a decode and an encode. A LazySendable constructed locally
+ * keeps its encoding once it has been written, so that broadcasting it encodes it only once.
+ * <p>
+ * A subclass reads and writes its fields in readFields and writeFields, calls decode() before reading a
+ * field, and calls modified() before changing one. It is registered like any other Sendable, with the
+ * constructor {@code public Sendable(InputStream in) throws IOException} calling the corresponding
+ * constructor of LazySendable. Its fields are written preceded by their length, so that they can be kept
+ * without being decoded. Since the kept bytes may be sent on other connections, they are encoded without
+ * any connection's StringDictionary. A LazySendable should not be modified while another thread may be
+ * writing it.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of client that is expected to be invoked with on the client end.
+ * @param <B> The class of server that is expected to be invoked with on the server end.
+ */
+public abstract class LazySendable<A, B> implements Sendable<A, B> {
+
+	/**
+	 * The encoding of the fields, or null if they have been modified since they were last encoded.
+	 */
+	private byte[] encoded;
+
+	/**
+	 * Whether the fields hold the values of the encoding.
+	 */
+	private boolean decoded;
+
+	/**
+	 * Constructs a LazySendable whose fields are set by the subclass.
+	 */
+	protected LazySendable() {
+		decoded = true;
+	}
+
+	/**
+	 * Constructs a LazySendable from the encoding of its fields, without decoding them.
+	 * @param in the InputStream to read the encoding from
+	 * @throws IOException if in throws an IOException
+	 */
+	protected LazySendable(InputStream in) throws IOException {
+		encoded = StreamUtils.readByteArray(in);
+		decoded = false;
+	}
+
+	/**
+	 * Constructs a LazySendable from the encoding of its fields in the ByteBuffer, without decoding them.
+	 * @param buffer the ByteBuffer to read the encoding from
+	 * @throws IOException if buffer ends before the encoding
+	 */
+	protected LazySendable(ByteBuffer buffer) throws IOException {
+		try {
+			int length = buffer.getInt();
+			if (length < 0)
+				throw new IOException("Negative length " + length);
+			// checked before allocating, since the length may come from an untrusted packet
+			if (length > buffer.remaining())
+				throw new IOException("Buffer ended before LazySendable of length " + length);
+			encoded = new byte[length];
+			buffer.get(encoded);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Buffer ended before LazySendable", e);
+		}
+		decoded = false;
+	}
+
+	/**
+	 * Reads the fields from their encoding.
+	 * @param in the InputStream of the encoding
+	 * @throws IOException if the encoding is invalid
+	 */
+	protected abstract void readFields(InputStream in) throws IOException;
+
+	/**
+	 * Writes the fields, symmetrically to readFields.
+	 * @param out the OutputStream to write to
+	 * @throws IOException if out throws an IOException
+	 */
+	protected abstract void writeFields(OutputStream out) throws IOException;
+
+	/**
+	 * Decodes the fields if they have not yet been. Must be called before a field is read.
+	 * @throws UncheckedIOException if the encoding is invalid
+	 */
+	protected final synchronized void decode() throws UncheckedIOException {
+		if (decoded)
+			return;
+		try {
+			readFields(new ByteArrayInputStream(encoded));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		decoded = true;
+	}
+
+	/**
+	 * Decodes the fields if they have not yet been, and discards their encoding. Must be called before a
+	 * field is changed.
+	 * @throws UncheckedIOException if the encoding is invalid
+	 */
+	protected final synchronized void modified() throws UncheckedIOException {
+		decode();
+		encoded = null;
+	}
+
+	/**
+	 * @return whether the fields have been decoded
+	 */
+	public synchronized boolean isDecoded() {
+		return decoded;
+	}
+
+	/**
+	 * Writes the encoding of the fields preceded by its length, copying the encoding it was received as if
+	 * it has not been modified.
+	 */
+	@Override
+	public void write(OutputStream out) throws IOException {
+		StreamUtils.writeByteArray(encoding(), out);
+	}
+
+	@Override
+	public void write(ByteBuffer buffer) throws IOException, BufferOverflowException {
+		byte[] encoding = encoding();
+		if (buffer.remaining() < 4 + encoding.length)
+			throw new BufferOverflowException();
+		buffer.putInt(encoding.length);
+		buffer.put(encoding);
+	}
+
+	/**
+	 * Returns the encoding of the fields, encoding and keeping it if it has been discarded.
+	 */
+	private synchronized byte[] encoding() throws IOException {
+		if (encoded == null) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			writeFields(out);
+			encoded = out.toByteArray();
+		}
+		return encoded;
+	}
+
+}
@@ -0,0 +1,167 @@
+package com.phoenixkahlo.networking;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import com.phoenixkahlo.utils.ByteBufferInputStream;
+import com.phoenixkahlo.utils.ByteBufferOutputStream;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The Java Flight Recorder events of the networking package, so that stalls in sending, receiving and handling
+ * Sendables can be correlated with garbage collection, lock contention and the rest of a recording. Every event
+ * is disabled by default, in which case it costs next to nothing. An event is enabled by its name in the
+ * settings of a recording, such as a .jfc file, or with Recording.enable, eg.
+ * {@code recording.enable(NetworkEvents.Send.class).withThreshold(Duration.ofMillis(10))}.
+ * <p>
+ * The size of an encoded or decoded Sendable is known when it is encoded into or decoded from a buffer, such as
+ * when batching is enabled, and is otherwise found by counting the bytes that pass through the socket's stream
+ * while the event is enabled. Since a stream only begins to be counted once the event is enabled, a size may be
+ * missing, as -1, at the start of a recording.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ */
+public class NetworkEvents {
+
+	/**
+	 * The encoding of a Sendable of a registered type.
+	 */
+	@Name("com.phoenixkahlo.networking.Encode")
+	@Label("Sendable Encode")
+	@Category({ "Phoenix-Utils", "Networking" })
+	@Description("Encoding of a Sendable by a SendableCoder")
+	@Enabled(false)
+	@StackTrace(false)
+	public static class Encode extends Event {
+
+		@Label("Type")
+		Class<?> type;
+
+		@Label("Bytes")
+		@Description("The size of the frame, including its header, or -1 if unknown")
+		@DataAmount
+		long bytes;
+
+	}
+
+	/**
+	 * The decoding of a Sendable of a registered type.
+	 */
+	@Name("com.phoenixkahlo.networking.Decode")
+	@Label("Sendable Decode")
+	@Category({ "Phoenix-Utils", "Networking" })
+	@Description("Decoding of a Sendable by a SendableCoder, including any wait for the rest of it to arrive")
+	@Enabled(false)
+	@StackTrace(false)
+	public static class Decode extends Event {
+
+		@Label("Type")
+		Class<?> type;
+
+		@Label("Bytes")
+		@Description("The size of the frame, including its header, or -1 if unknown")
+		@DataAmount
+		long bytes;
+
+	}
+
+	/**
+	 * The invocation of a received Sendable's effect.
+	 */
+	@Name("com.phoenixkahlo.networking.Dispatch")
+	@Label("Sendable Dispatch")
+	@Category({ "Phoenix-Utils", "Networking" })
+	@Description("Invocation of a received Sendable's effect, during which its connection reads nothing")
+	@Enabled(false)
+	@StackTrace(false)
+	public static class Dispatch extends Event {
+
+		@Label("Type")
+		Class<?> type;
+
+	}
+
+	/**
+	 * The wait for the Reply to a Repliable.
+	 */
+	@Name("com.phoenixkahlo.networking.ReplyWait")
+	@Label("Reply Wait")
+	@Category({ "Phoenix-Utils", "Networking" })
+	@Description("Time from sending a Repliable to receiving its Reply")
+	@Enabled(false)
+	@StackTrace(false)
+	public static class ReplyWait extends Event {
+
+		@Label("Type")
+		@Description("The type of the Repliable")
+		Class<?> type;
+
+	}
+
+	/**
+	 * A call to send that took long enough to suggest it was blocked.
+	 */
+	@Name("com.phoenixkahlo.networking.Send")
+	@Label("Sendable Send")
+	@Category({ "Phoenix-Utils", "Networking" })
+	@Description("A call to a connection's send, including any wait for the write lock, for the socket to accept "
+			+ "the bytes, or to write a batch")
+	@Enabled(false)
+	@StackTrace(true)
+	@Threshold("1 ms")
+	public static class Send extends Event {
+
+		@Label("Type")
+		Class<?> type;
+
+		@Label("Batched")
+		boolean batched;
+
+	}
+
+	/**
+	 * Returns the number of bytes written to or read from the stream so far, or -1 if the stream doesn't
+	 * reveal it. A stream wrapped by a StringDictionary reveals that of the stream it wraps.
+	 * @param stream an InputStream or OutputStream
+	 */
+	static long position(Object stream) {
+		Object unwrapped = StringDictionary.unwrap(stream);
+		if (unwrapped != null)
+			stream = unwrapped;
+		if (stream instanceof CountingInputStream)
+			return ((CountingInputStream) stream).getCount();
+		else if (stream instanceof CountingOutputStream)
+			return ((CountingOutputStream) stream).getCount();
+		else if (stream instanceof ByteArrayOutputStream)
+			return ((ByteArrayOutputStream) stream).size();
+		else if (stream instanceof ByteBufferOutputStream)
+			return ((ByteBufferOutputStream) stream).getBuffer().position();
+		else if (stream instanceof ByteBufferInputStream)
+			return ((ByteBufferInputStream) stream).getBuffer().position();
+		else if (stream.getClass() == ByteArrayInputStream.class)
+			// the bytes remaining only ever decrease, by the number read
+			return Integer.MAX_VALUE - ((ByteArrayInputStream) stream).available();
+		else
+			return -1;
+	}
+
+	/**
+	 * Returns the size of a frame whose body started at the position, given that its header has already been
+	 * read or written, or -1 if unknown.
+	 */
+	static long frameSize(Object stream, long start) {
+		if (start < 0)
+			return -1;
+		long end = position(stream);
+		return end < 0 ? -1 : end - start + 4;
+	}
+
+}
@@ -0,0 +1,517 @@
+package com.phoenixkahlo.networking;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.phoenixkahlo.utils.LatencyHistogram;
+
+/**
+ * Counts the traffic of any number of connections and their SendableCoders: the bytes and Sendables each
+ * connection sends and receives, the number of each type of Sendable encoded and decoded and the time it
+ * takes, and the round trip time of replies. Recording is lock-free, using striped counters and
+ * LatencyHistograms, and is cheap enough to be left enabled under full load. The numbers are read by taking
+ * a Snapshot, or over JMX.
+ * <p>
+ * A connection is counted once enableMetrics has been called on it, which also enables the counting of its
+ * SendableCoder. Only registered types are counted by type, not the batches, fragments and heartbeats that
+ * carry them. When batching is disabled, Sendables are encoded straight to the socket, so their encode time
+ * includes the time to write them, and likewise the decode time of a Sendable read from the socket includes
+ * any wait for the rest of it to arrive.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @see com.phoenixkahlo.networking.ClientConnection#enableMetrics(NetworkMetrics)
+ * @see com.phoenixkahlo.networking.ServerConnection#enableMetrics(NetworkMetrics)
+ */
+public class NetworkMetrics implements NetworkMetricsMXBean {
+
+	private static NetworkMetrics shared;
+
+	/**
+	 * Returns the NetworkMetrics shared by all connections, creating it and registering it with the platform
+	 * MBeanServer as com.phoenixkahlo.networking:type=NetworkMetrics,name=shared if it has not yet been.
+	 */
+	public static synchronized NetworkMetrics shared() {
+		if (shared == null) {
+			shared = new NetworkMetrics();
+			shared.registerMBean("shared");
+		}
+		return shared;
+	}
+
+	/**
+	 * The counters of one connection, registered with a NetworkMetrics until closed.
+	 */
+	public class ConnectionMetrics {
+
+		private String name;
+		private LongAdder bytesIn = new LongAdder();
+		private LongAdder bytesOut = new LongAdder();
+		private LongAdder messagesIn = new LongAdder();
+		private LongAdder messagesOut = new LongAdder();
+
+		private ConnectionMetrics(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Wraps the InputStream, such that the bytes read from it are counted as received.
+		 */
+		InputStream count(InputStream in) {
+			return new CountingInputStream(in, bytesIn);
+		}
+
+		/**
+		 * Wraps the OutputStream, such that the bytes written to it are counted as sent.
+		 */
+		OutputStream count(OutputStream out) {
+			return new CountingOutputStream(out, bytesOut);
+		}
+
+		void wrote(int bytes) {
+			bytesOut.add(bytes);
+		}
+
+		void received() {
+			messagesIn.increment();
+		}
+
+		void sent() {
+			messagesOut.increment();
+		}
+
+		void replied(long nanos) {
+			replyRoundTrip.record(nanos);
+		}
+
+		/**
+		 * Stops counting the connection, adding its counts to the totals of closed connections.
+		 */
+		public void close() {
+			if (connections.remove(this)) {
+				closedBytesIn.add(bytesIn.sum());
+				closedBytesOut.add(bytesOut.sum());
+				closedMessagesIn.add(messagesIn.sum());
+				closedMessagesOut.add(messagesOut.sum());
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getBytesIn() {
+			return bytesIn.sum();
+		}
+
+		public long getBytesOut() {
+			return bytesOut.sum();
+		}
+
+		public long getMessagesIn() {
+			return messagesIn.sum();
+		}
+
+		public long getMessagesOut() {
+			return messagesOut.sum();
+		}
+
+	}
+
+	/**
+	 * The counters of one type of Sendable.
+	 */
+	private static class TypeMetrics {
+		LongAdder encoded = new LongAdder();
+		LongAdder decoded = new LongAdder();
+		LatencyHistogram encodeNanos = new LatencyHistogram();
+		LatencyHistogram decodeNanos = new LatencyHistogram();
+	}
+
+	/**
+	 * A summary of a LatencyHistogram, in nanoseconds.
+	 */
+	public static class Latency {
+
+		private long count;
+		private long mean;
+		private long p50;
+		private long p99;
+		private long p999;
+		private long max;
+
+		private Latency(LatencyHistogram histogram) {
+			count = histogram.getCount();
+			mean = (long) histogram.getMean();
+			p50 = histogram.getPercentile(50);
+			p99 = histogram.getPercentile(99);
+			p999 = histogram.getPercentile(99.9);
+			max = histogram.getMax();
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getMean() {
+			return mean;
+		}
+
+		public long getP50() {
+			return p50;
+		}
+
+		public long getP99() {
+			return p99;
+		}
+
+		public long getP999() {
+			return p999;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + count + " mean=" + mean + " p50=" + p50 + " p99=" + p99 + " p999=" + p999 + " max="
+					+ max;
+		}
+
+	}
+
+	/**
+	 * The counts of one type of Sendable at the time of a Snapshot.
+	 */
+	public static class TypeSnapshot {
+
+		private String type;
+		private long encoded;
+		private long decoded;
+		private Latency encodeNanos;
+		private Latency decodeNanos;
+
+		private TypeSnapshot(String type, TypeMetrics metrics) {
+			this.type = type;
+			encoded = metrics.encoded.sum();
+			decoded = metrics.decoded.sum();
+			encodeNanos = new Latency(metrics.encodeNanos);
+			decodeNanos = new Latency(metrics.decodeNanos);
+		}
+
+		/**
+		 * @return the name of the class of Sendable
+		 */
+		public String getType() {
+			return type;
+		}
+
+		public long getEncoded() {
+			return encoded;
+		}
+
+		public long getDecoded() {
+			return decoded;
+		}
+
+		public Latency getEncodeNanos() {
+			return encodeNanos;
+		}
+
+		public Latency getDecodeNanos() {
+			return decodeNanos;
+		}
+
+	}
+
+	/**
+	 * The counts of a connection at the time of a Snapshot.
+	 */
+	public static class ConnectionSnapshot {
+
+		private String name;
+		private long bytesIn;
+		private long bytesOut;
+		private long messagesIn;
+		private long messagesOut;
+
+		private ConnectionSnapshot(ConnectionMetrics metrics) {
+			name = metrics.getName();
+			bytesIn = metrics.getBytesIn();
+			bytesOut = metrics.getBytesOut();
+			messagesIn = metrics.getMessagesIn();
+			messagesOut = metrics.getMessagesOut();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getBytesIn() {
+			return bytesIn;
+		}
+
+		public long getBytesOut() {
+			return bytesOut;
+		}
+
+		public long getMessagesIn() {
+			return messagesIn;
+		}
+
+		public long getMessagesOut() {
+			return messagesOut;
+		}
+
+	}
+
+	/**
+	 * The counts of a NetworkMetrics at one time. The totals include connections that have since closed.
+	 * Rates are found by comparing two Snapshots.
+	 */
+	public static class Snapshot {
+
+		private long nanoTime;
+		private long bytesIn;
+		private long bytesOut;
+		private long messagesIn;
+		private long messagesOut;
+		private Map<String, TypeSnapshot> types = new TreeMap<String, TypeSnapshot>();
+		private List<ConnectionSnapshot> connections = new ArrayList<ConnectionSnapshot>();
+		private Latency replyRoundTripNanos;
+
+		/**
+		 * @return the time the Snapshot was taken, in the units of System.nanoTime
+		 */
+		public long getNanoTime() {
+			return nanoTime;
+		}
+
+		public long getBytesIn() {
+			return bytesIn;
+		}
+
+		public long getBytesOut() {
+			return bytesOut;
+		}
+
+		public long getMessagesIn() {
+			return messagesIn;
+		}
+
+		public long getMessagesOut() {
+			return messagesOut;
+		}
+
+		/**
+		 * @return the counts of each type of Sendable that has been encoded or decoded, by class name
+		 */
+		public Map<String, TypeSnapshot> getTypes() {
+			return Collections.unmodifiableMap(types);
+		}
+
+		/**
+		 * @return the counts of each open connection
+		 */
+		public List<ConnectionSnapshot> getConnections() {
+			return Collections.unmodifiableList(connections);
+		}
+
+		public Latency getReplyRoundTripNanos() {
+			return replyRoundTripNanos;
+		}
+
+		/**
+		 * Returns the number of each type of Sendable decoded per second between the earlier Snapshot and this.
+		 * @param earlier a Snapshot taken earlier of the same NetworkMetrics
+		 * @return the rate of each type, by class name
+		 */
+		public Map<String, Double> getDecodedPerSecond(Snapshot earlier) {
+			Map<String, Double> rates = new TreeMap<String, Double>();
+			double seconds = (nanoTime - earlier.nanoTime) / 1e9;
+			for (TypeSnapshot type : types.values()) {
+				TypeSnapshot before = earlier.types.get(type.type);
+				rates.put(type.type, (type.decoded - (before == null ? 0 : before.decoded)) / seconds);
+			}
+			return rates;
+		}
+
+		/**
+		 * Returns the number of each type of Sendable encoded per second between the earlier Snapshot and this.
+		 * @param earlier a Snapshot taken earlier of the same NetworkMetrics
+		 * @return the rate of each type, by class name
+		 */
+		public Map<String, Double> getEncodedPerSecond(Snapshot earlier) {
+			Map<String, Double> rates = new TreeMap<String, Double>();
+			double seconds = (nanoTime - earlier.nanoTime) / 1e9;
+			for (TypeSnapshot type : types.values()) {
+				TypeSnapshot before = earlier.types.get(type.type);
+				rates.put(type.type, (type.encoded - (before == null ? 0 : before.encoded)) / seconds);
+			}
+			return rates;
+		}
+
+	}
+
+	private Set<ConnectionMetrics> connections = ConcurrentHashMap.newKeySet();
+	private LongAdder closedBytesIn = new LongAdder();
+	private LongAdder closedBytesOut = new LongAdder();
+	private LongAdder closedMessagesIn = new LongAdder();
+	private LongAdder closedMessagesOut = new LongAdder();
+	private Map<Class<?>, TypeMetrics> types = new ConcurrentHashMap<Class<?>, TypeMetrics>();
+	private LatencyHistogram replyRoundTrip = new LatencyHistogram();
+
+	/**
+	 * Starts counting a connection.
+	 * @param name the name by which the connection appears in Snapshots
+	 * @return the counters of the connection, which must be closed when it disconnects
+	 */
+	public ConnectionMetrics register(String name) {
+		ConnectionMetrics metrics = new ConnectionMetrics(name);
+		connections.add(metrics);
+		return metrics;
+	}
+
+	void encoded(Class<?> type, long nanos) {
+		TypeMetrics metrics = typeMetrics(type);
+		metrics.encoded.increment();
+		metrics.encodeNanos.record(nanos);
+	}
+
+	void decoded(Class<?> type, long nanos) {
+		TypeMetrics metrics = typeMetrics(type);
+		metrics.decoded.increment();
+		metrics.decodeNanos.record(nanos);
+	}
+
+	private TypeMetrics typeMetrics(Class<?> type) {
+		TypeMetrics metrics = types.get(type);
+		return metrics != null ? metrics : types.computeIfAbsent(type, t -> new TypeMetrics());
+	}
+
+	/**
+	 * @return the counts at this time
+	 */
+	public Snapshot snapshot() {
+		Snapshot snapshot = new Snapshot();
+		snapshot.nanoTime = System.nanoTime();
+		snapshot.bytesIn = closedBytesIn.sum();
+		snapshot.bytesOut = closedBytesOut.sum();
+		snapshot.messagesIn = closedMessagesIn.sum();
+		snapshot.messagesOut = closedMessagesOut.sum();
+		for (ConnectionMetrics metrics : connections) {
+			ConnectionSnapshot connection = new ConnectionSnapshot(metrics);
+			snapshot.connections.add(connection);
+			snapshot.bytesIn += connection.bytesIn;
+			snapshot.bytesOut += connection.bytesOut;
+			snapshot.messagesIn += connection.messagesIn;
+			snapshot.messagesOut += connection.messagesOut;
+		}
+		for (Map.Entry<Class<?>, TypeMetrics> entry : types.entrySet()) {
+			String type = entry.getKey().getName();
+			snapshot.types.put(type, new TypeSnapshot(type, entry.getValue()));
+		}
+		snapshot.replyRoundTripNanos = new Latency(replyRoundTrip);
+		return snapshot;
+	}
+
+	/**
+	 * Registers this with the platform MBeanServer as com.phoenixkahlo.networking:type=NetworkMetrics,name=name.
+	 * @param name the name to register this under
+	 * @throws RuntimeException if the registration fails, eg. if the name is taken
+	 */
+	public void registerMBean(String name) throws RuntimeException {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+					new ObjectName("com.phoenixkahlo.networking:type=NetworkMetrics,name=" + ObjectName.quote(name)));
+		} catch (JMException e) {
+			throw new RuntimeException("Failed to register NetworkMetrics " + name, e);
+		}
+	}
+
+	@Override
+	public int getConnections() {
+		return connections.size();
+	}
+
+	@Override
+	public long getBytesIn() {
+		long sum = closedBytesIn.sum();
+		for (ConnectionMetrics metrics : connections) {
+			sum += metrics.getBytesIn();
+		}
+		return sum;
+	}
+
+	@Override
+	public long getBytesOut() {
+		long sum = closedBytesOut.sum();
+		for (ConnectionMetrics metrics : connections) {
+			sum += metrics.getBytesOut();
+		}
+		return sum;
+	}
+
+	@Override
+	public long getMessagesIn() {
+		long sum = closedMessagesIn.sum();
+		for (ConnectionMetrics metrics : connections) {
+			sum += metrics.getMessagesIn();
+		}
+		return sum;
+	}
+
+	@Override
+	public long getMessagesOut() {
+		long sum = closedMessagesOut.sum();
+		for (ConnectionMetrics metrics : connections) {
+			sum += metrics.getMessagesOut();
+		}
+		return sum;
+	}
+
+	@Override
+	public Map<String, Long> getEncodedByType() {
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		types.forEach((type, metrics) -> counts.put(type.getName(), metrics.encoded.sum()));
+		return counts;
+	}
+
+	@Override
+	public Map<String, Long> getDecodedByType() {
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		types.forEach((type, metrics) -> counts.put(type.getName(), metrics.decoded.sum()));
+		return counts;
+	}
+
+	@Override
+	public Map<String, Latency> getEncodeNanosByType() {
+		Map<String, Latency> latencies = new TreeMap<String, Latency>();
+		types.forEach((type, metrics) -> latencies.put(type.getName(), new Latency(metrics.encodeNanos)));
+		return latencies;
+	}
+
+	@Override
+	public Map<String, Latency> getDecodeNanosByType() {
+		Map<String, Latency> latencies = new TreeMap<String, Latency>();
+		types.forEach((type, metrics) -> latencies.put(type.getName(), new Latency(metrics.decodeNanos)));
+		return latencies;
+	}
+
+	@Override
+	public Latency getReplyRoundTripNanos() {
+		return new Latency(replyRoundTrip);
+	}
+
+}
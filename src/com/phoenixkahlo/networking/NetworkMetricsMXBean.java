@@ -0,0 +1,44 @@
+package com.phoenixkahlo.networking;
+
+import java.util.Map;
+
+/**
+ * The attributes of a NetworkMetrics as seen over JMX. Totals include connections that have closed.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @see com.phoenixkahlo.networking.NetworkMetrics
+ */
+public interface NetworkMetricsMXBean {
+
+	/**
+	 * @return the number of open connections counted
+	 */
+	int getConnections();
+
+	long getBytesIn();
+
+	long getBytesOut();
+
+	long getMessagesIn();
+
+	long getMessagesOut();
+
+	/**
+	 * @return the number of each type of Sendable encoded, by class name
+	 */
+	Map<String, Long> getEncodedByType();
+
+	/**
+	 * @return the number of each type of Sendable decoded, by class name
+	 */
+	Map<String, Long> getDecodedByType();
+
+	Map<String, NetworkMetrics.Latency> getEncodeNanosByType();
+
+	Map<String, NetworkMetrics.Latency> getDecodeNanosByType();
+
+	/**
+	 * @return the time between sending a Repliable and receiving its Reply
+	 */
+	NetworkMetrics.Latency getReplyRoundTripNanos();
+
+}
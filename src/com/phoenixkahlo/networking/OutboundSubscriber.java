@@ -0,0 +1,75 @@
+package com.phoenixkahlo.networking;
+
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+
+/**
+ * Sends the Sendables of a Flow.Publisher through a connection, requesting more only as fast as the
+ * connection writes them. Without batching, sending blocks until the socket accepts the bytes, and with
+ * batching, until less than a batch is queued, so a Publisher faster than the network is held back by TCP
+ * flow control rather than its Sendables accumulating in memory. The subscription is cancelled when the
+ * connection disconnects, and the connection is left open when the Publisher completes.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of clients that the Sendables are generic to
+ * @param <B> The class of servers that the Sendables are generic to
+ * @see com.phoenixkahlo.networking.InboundPublisher
+ */
+class OutboundSubscriber<A, B> implements Flow.Subscriber<Sendable<A, B>> {
+
+	/**
+	 * The number of Sendables requested at once, half of which are requested again once half are sent.
+	 */
+	static final int WINDOW = 32;
+
+	private Connection<A, B> connection;
+	private Supplier<SendableBatcher<A, B>> batcher;
+	private volatile Flow.Subscription subscription;
+	private int sentSinceRequest = 0;
+
+	/**
+	 * @param connection the connection to send through
+	 * @param batcher the current batcher of the connection, which returns null while batching is disabled
+	 */
+	OutboundSubscriber(Connection<A, B> connection, Supplier<SendableBatcher<A, B>> batcher) {
+		this.connection = connection;
+		this.batcher = batcher;
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		if (this.subscription != null) {
+			subscription.cancel();
+			return;
+		}
+		this.subscription = subscription;
+		connection.addDisconnectListener(subscription::cancel);
+		subscription.request(WINDOW);
+	}
+
+	@Override
+	public void onNext(Sendable<A, B> sendable) {
+		connection.send(sendable);
+		SendableBatcher<A, B> batcher = this.batcher.get();
+		if (batcher != null) {
+			try {
+				batcher.awaitRoom();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (++sentSinceRequest == WINDOW / 2) {
+			sentSinceRequest = 0;
+			subscription.request(WINDOW / 2);
+		}
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		System.err.println("Publisher of " + connection + " failed");
+		throwable.printStackTrace();
+	}
+
+	@Override
+	public void onComplete() {}
+
+}
@@ -0,0 +1,142 @@
+package com.phoenixkahlo.networking;
+
+import java.io.IOException;
+
+import com.phoenixkahlo.utils.BitReader;
+import com.phoenixkahlo.utils.BitWriter;
+
+/**
+ * An object whose state is replicated from a server to its clients a field at a time. The fields are numbered
+ * from zero, and the subclass writes and reads each in writeField and readField, bit-packed, and calls
+ * changed(field) whenever it changes one, so that only the fields changed since a client's last acknowledged
+ * update are sent to it.
+ * <p>
+ * On the server, a ReplicatedState should be changed, ticked and sent from one thread, such as that of the
+ * simulation loop. On a client, a replica is updated on the reading thread of its connection while
+ * synchronized on the replica, and replicated is then called.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @see com.phoenixkahlo.networking.Replication
+ * @see com.phoenixkahlo.networking.StateReplicator
+ */
+public abstract class ReplicatedState {
+
+	private int fieldCount;
+
+	/**
+	 * The fields changed since the last tick, as a list and as flags.
+	 */
+	private int[] changes;
+	private int changeCount = 0;
+	private boolean[] changed;
+
+	/**
+	 * The tick of the last update applied to this replica, or -1 if none has been.
+	 */
+	private long tick = -1;
+
+	/**
+	 * @param fieldCount the number of fields
+	 */
+	protected ReplicatedState(int fieldCount) {
+		if (fieldCount <= 0)
+			throw new IllegalArgumentException("Invalid field count " + fieldCount);
+		this.fieldCount = fieldCount;
+		changes = new int[fieldCount];
+		changed = new boolean[fieldCount];
+	}
+
+	/**
+	 * Writes the current value of the field.
+	 * @param field the number of the field
+	 * @param out the BitWriter to write to
+	 */
+	protected abstract void writeField(int field, BitWriter out);
+
+	/**
+	 * Reads a value of the field written by writeField, and sets the field to it.
+	 * @param field the number of the field
+	 * @param in the BitReader to read from
+	 * @throws IOException if the value can't be read
+	 */
+	protected abstract void readField(int field, BitReader in) throws IOException;
+
+	/**
+	 * Is called on a replica after an update has been applied to it. Does nothing by default.
+	 */
+	protected void replicated() {}
+
+	/**
+	 * Marks the field as changed, such that it is sent to the clients that don't have its new value.
+	 * @param field the number of the field
+	 */
+	protected void changed(int field) {
+		if (!changed[field]) {
+			changed[field] = true;
+			changes[changeCount++] = field;
+		}
+	}
+
+	/**
+	 * @return the number of fields
+	 */
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * @return the tick of the last update applied to this replica, or -1 if none has been
+	 */
+	public synchronized long getTick() {
+		return tick;
+	}
+
+	/**
+	 * @return the fields changed since this was last called, in the order they were first changed
+	 */
+	int[] takeChanges() {
+		int[] taken = new int[changeCount];
+		System.arraycopy(changes, 0, taken, 0, changeCount);
+		for (int field : taken) {
+			changed[field] = false;
+		}
+		changeCount = 0;
+		return taken;
+	}
+
+	/**
+	 * Applies an update to this replica, unless it is older than what it has.
+	 * @param tick the tick of the update
+	 * @param baseline the tick that the update is a delta against, or -1 if it is a snapshot
+	 * @param payload the fields of the update
+	 * @return whether the update was applied
+	 * @throws IOException if the payload is malformed
+	 */
+	boolean apply(long tick, long baseline, byte[] payload) throws IOException {
+		synchronized (this) {
+			// an update older than the replica, or against a baseline it doesn't have, can only arrive out of
+			// order over an unreliable channel
+			if (tick <= this.tick || baseline > this.tick)
+				return false;
+			BitReader in = new BitReader(payload);
+			if (baseline < 0) {
+				for (int field = 0; field < fieldCount; field++) {
+					readField(field, in);
+				}
+			} else {
+				long count = in.readUnsigned();
+				int field = -1;
+				for (long i = 0; i < count; i++) {
+					long next = field + in.readUnsigned() + 1;
+					if (next < 0 || next >= fieldCount)
+						throw new IOException("Field " + next + " out of range");
+					field = (int) next;
+					readField(field, in);
+				}
+			}
+			this.tick = tick;
+			replicated();
+		}
+		return true;
+	}
+
+}
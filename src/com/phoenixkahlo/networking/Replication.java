@@ -0,0 +1,133 @@
+package com.phoenixkahlo.networking;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Replicates ReplicatedStates from a server to its clients as bit-packed deltas against the last update each
+ * client acknowledged. On the server, replicate creates a StateReplicator for each state, which is ticked and
+ * sent to each client at the rate of the simulation. On a client, track gives the replica that updates of a
+ * state are applied to, which acknowledges each update it applies. Both sides register the Replication with
+ * their SendableCoders under the same header.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of clients that the Sendables are generic to
+ * @param <B> The class of servers that the Sendables are generic to
+ * @see com.phoenixkahlo.networking.ReplicatedState
+ * @see com.phoenixkahlo.networking.StateReplicator
+ */
+public class Replication<A, B> {
+
+	private Map<Integer, StateReplicator<A, B>> replicators = new ConcurrentHashMap<Integer, StateReplicator<A, B>>();
+	private Map<Integer, ReplicatedState> replicas = new ConcurrentHashMap<Integer, ReplicatedState>();
+
+	/**
+	 * Registers the updates and acknowledgements of this Replication with the SendableCoder, such that they
+	 * are applied to the replicas of this Replication on clients and recorded by its StateReplicators on
+	 * servers. The connections must be subclasses of Connection, as ClientConnections and ServerConnections are.
+	 * @param coder the SendableCoder to register with
+	 * @param id the header with which to register, which must be the same on both sides
+	 * @throws RuntimeException if there is already an entry registered with that id
+	 */
+	public void register(SendableCoder<A, B> coder, int id) throws RuntimeException {
+		coder.register(id, new SendableCoder.SendableCoderEntry<A, B>() {
+
+			@Override
+			public boolean isType(Sendable<A, B> sendable) {
+				return sendable instanceof ReplicationFrame;
+			}
+
+			@Override
+			public Sendable<A, B> create(InputStream in) throws IOException, BadDataException {
+				int kind = in.read();
+				if (kind == -1)
+					throw new EOFException();
+				else if (kind == ReplicationFrame.UPDATE)
+					return new ReplicationFrame.Update<A, B>(Replication.this, in);
+				else if (kind == ReplicationFrame.ACK)
+					return new ReplicationFrame.Ack<A, B>(Replication.this, in);
+				else
+					throw new BadDataException("Invalid replication frame " + kind);
+			}
+
+			@Override
+			public void write(OutputStream out, Sendable<A, B> sendable) throws IOException {
+				sendable.write(out);
+			}
+
+		});
+	}
+
+	/**
+	 * Starts replicating the state to the clients it is sent to.
+	 * @param id the id of the state, with which clients track it
+	 * @param state the state to replicate
+	 * @param history the number of ticks after which an unacknowledged client is sent a snapshot
+	 * @return the StateReplicator with which to tick and send the state
+	 * @throws IllegalArgumentException if a state is already replicated with the id
+	 */
+	public StateReplicator<A, B> replicate(int id, ReplicatedState state, int history)
+			throws IllegalArgumentException {
+		StateReplicator<A, B> replicator = new StateReplicator<A, B>(this, id, state, history);
+		if (replicators.putIfAbsent(id, replicator) != null)
+			throw new IllegalArgumentException("State " + id + " already replicated");
+		return replicator;
+	}
+
+	/**
+	 * Stops replicating the state with the id. Acknowledgements of it are ignored from now on.
+	 * @param id the id of the state
+	 */
+	public void stopReplicating(int id) {
+		replicators.remove(id);
+	}
+
+	/**
+	 * Applies the updates received of the state with the id to the replica from now on.
+	 * @param id the id of the state, as it is replicated by the server
+	 * @param replica the replica, which is of the same class as the state
+	 */
+	public void track(int id, ReplicatedState replica) {
+		replicas.put(id, replica);
+	}
+
+	/**
+	 * Stops applying the updates received of the state with the id.
+	 * @param id the id of the state
+	 */
+	public void untrack(int id) {
+		replicas.remove(id);
+	}
+
+	/**
+	 * Applies the update to its replica, if tracked, and acknowledges it.
+	 */
+	@SuppressWarnings("unchecked")
+	void apply(A connection, ReplicationFrame.Update<A, B> update) {
+		ReplicatedState replica = replicas.get(update.state);
+		if (replica == null)
+			return;
+		try {
+			if (replica.apply(update.tick, update.baseline, update.payload))
+				((Connection<A, B>) connection).send(new ReplicationFrame.Ack<A, B>(this, update.state,
+						update.tick));
+		} catch (IOException e) {
+			System.err.println("Failed to apply update of state " + update.state);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Records the acknowledgement with the StateReplicator of its state.
+	 */
+	@SuppressWarnings("unchecked")
+	void acknowledge(B connection, ReplicationFrame.Ack<A, B> ack) {
+		StateReplicator<A, B> replicator = replicators.get(ack.state);
+		if (replicator != null)
+			replicator.acknowledge((Connection<A, B>) connection, ack.tick);
+	}
+
+}
@@ -0,0 +1,105 @@
+package com.phoenixkahlo.networking;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.phoenixkahlo.utils.StreamUtils;
+
+/**
+ * The frames with which a Replication sends updates of ReplicatedStates and acknowledges them. Both are
+ * registered under the one header given to Replication.register, and are told apart by their first byte.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of client that is expected to be invoked with on the client end.
+ * @param <B> The class of server that is expected to be invoked with on the server end.
+ * @see com.phoenixkahlo.networking.Replication
+ */
+abstract class ReplicationFrame<A, B> implements Sendable<A, B> {
+
+	static final int UPDATE = 0;
+	static final int ACK = 1;
+
+	Replication<A, B> replication;
+	int state;
+	long tick;
+
+	ReplicationFrame(Replication<A, B> replication, int state, long tick) {
+		this.replication = replication;
+		this.state = state;
+		this.tick = tick;
+	}
+
+	/**
+	 * An update of a ReplicatedState, applied to the replica when invoked on the client, which then
+	 * acknowledges it.
+	 */
+	static class Update<A, B> extends ReplicationFrame<A, B> {
+
+		/**
+		 * The tick that the update is a delta against, or -1 if it is a snapshot.
+		 */
+		long baseline;
+		byte[] payload;
+
+		Update(Replication<A, B> replication, int state, long tick, long baseline, byte[] payload) {
+			super(replication, state, tick);
+			this.baseline = baseline;
+			this.payload = payload;
+		}
+
+		Update(Replication<A, B> replication, InputStream in) throws IOException {
+			super(replication, StreamUtils.readVarInt(in), StreamUtils.readLong(in));
+			baseline = StreamUtils.readLong(in);
+			payload = StreamUtils.readByteArray(in);
+		}
+
+		@Override
+		public void write(OutputStream out) throws IOException {
+			out.write(UPDATE);
+			StreamUtils.writeVarInt(state, out);
+			StreamUtils.writeLong(tick, out);
+			StreamUtils.writeLong(baseline, out);
+			StreamUtils.writeByteArray(payload, out);
+		}
+
+		@Override
+		public void effectClient(A connection) {
+			replication.apply(connection, this);
+		}
+
+		@Override
+		public void effectServer(B connection) {}
+
+	}
+
+	/**
+	 * The acknowledgement of an update, recorded by the StateReplicator when invoked on the server.
+	 */
+	static class Ack<A, B> extends ReplicationFrame<A, B> {
+
+		Ack(Replication<A, B> replication, int state, long tick) {
+			super(replication, state, tick);
+		}
+
+		Ack(Replication<A, B> replication, InputStream in) throws IOException {
+			super(replication, StreamUtils.readVarInt(in), StreamUtils.readLong(in));
+		}
+
+		@Override
+		public void write(OutputStream out) throws IOException {
+			out.write(ACK);
+			StreamUtils.writeVarInt(state, out);
+			StreamUtils.writeLong(tick, out);
+		}
+
+		@Override
+		public void effectClient(A connection) {}
+
+		@Override
+		public void effectServer(B connection) {
+			replication.acknowledge(connection, this);
+		}
+
+	}
+
+}
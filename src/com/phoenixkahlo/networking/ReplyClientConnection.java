@@ -3,9 +3,9 @@ package com.phoenixkahlo.networking;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.phoenixkahlo.utils.StreamUtils;
 
@@ -24,7 +24,7 @@ public class ReplyClientConnection<A, B> extends ClientConnection<A, B> {
 	/**
 	 * The reply ID of all the replies that are being waited for, and the Awaiter that are waiting for them
 	 */
-	private Map<String, ReplyAwaiter<A, B>> awaiting = new HashMap<String, ReplyAwaiter<A, B>>();
+	private Map<String, ReplyAwaiter<A, B>> awaiting = new ConcurrentHashMap<String, ReplyAwaiter<A, B>>();
 	
 	public ReplyClientConnection(Socket socket, SendableCoder<A, B> coder) {
 		super(socket, coder);
@@ -35,19 +35,37 @@ public class ReplyClientConnection<A, B> extends ClientConnection<A, B> {
 		Sendable<A, B> sendable = super.read(in);
 		if (sendable instanceof Reply) {
 			Reply<A, B> reply = (Reply<A, B>) sendable;
-			ReplyAwaiter<A, B> awaiter = awaiting.get(reply.getReplyID());
+			ReplyAwaiter<A, B> awaiter = awaiting.remove(reply.getReplyID());
 			if (awaiter != null) awaiter.invoke(reply);
 		}
-		return super.read(in);
+		return sendable;
 	}
 	
 	/**
-	 * Sends the Repliable and waits for a reply, activating the Thread when the reply is received.
+	 * Sends the Repliable and waits for a reply, activating the Thread when the reply is received. If
+	 * metrics or the ReplyWait event are enabled, the round trip time of the reply is counted.
 	 */
 	public void sendAndAwait(Repliable<A, B> repliable, ReplyAwaiter<A, B> awaiter) {
 		String replyID = createReplyID();
 		repliable.setReplyID(replyID);
-		awaiting.put(replyID, awaiter);
+		NetworkMetrics.ConnectionMetrics metrics = getMetrics();
+		NetworkEvents.ReplyWait event = new NetworkEvents.ReplyWait();
+		if (metrics == null && !event.isEnabled()) {
+			awaiting.put(replyID, awaiter);
+		} else {
+			long sent = System.nanoTime();
+			event.begin();
+			awaiting.put(replyID, reply -> {
+				event.end();
+				if (metrics != null)
+					metrics.replied(System.nanoTime() - sent);
+				if (event.shouldCommit()) {
+					event.type = repliable.getClass();
+					event.commit();
+				}
+				awaiter.invoke(reply);
+			});
+		}
 		send(repliable);
 	}
 	
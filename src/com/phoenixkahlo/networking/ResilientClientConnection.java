@@ -0,0 +1,229 @@
+package com.phoenixkahlo.networking;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A ClientConnection that reconnects when its connection fails, rather than disconnecting, and resumes its
+ * Session with a SessionServerConnection. Reconnection attempts are delayed by a jittered exponential backoff,
+ * so that many clients of a restarting server don't all reconnect at once. When the Session is resumed, the
+ * Sendables that either end sent but the other didn't receive are replayed, so that a brief interruption
+ * costs nothing more. If the Session can't be resumed, for example because the server has restarted or too
+ * much was sent while disconnected, a new Session is started and sessionReset is called.
+ * <p>
+ * Sendables sent while reconnecting are kept in the retransmit buffer and sent once the Session is resumed.
+ * The connection only ends when disconnect is called.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of clients that the Sendables are generic to. <b>Any subclass of ClientConnection
+ * must extend ClientConnection with a type argument A that the subclass can be cast to. The compiler will not
+ * detect if this is not the case, and if this is not the case, unchecked casts will occur incorrectly.</b>
+ * @param <B> The class of servers that the Sendables are generic to.
+ * @see com.phoenixkahlo.networking.Session
+ * @see com.phoenixkahlo.networking.SessionServerConnection
+ */
+public class ResilientClientConnection<A, B> extends ClientConnection<A, B> {
+
+	private String host;
+	private int port;
+	private SendableCoder<A, B> coder;
+	private Session<A, B> session;
+	
+	private long minBackoffMillis = 100;
+	private long maxBackoffMillis = 30000;
+	private volatile int attempt = 0;
+	
+	/**
+	 * Whether the Session has been established on the current socket, guarded by session.
+	 */
+	private volatile boolean connected = false;
+	private volatile boolean closed = false;
+	
+	/**
+	 * Constructs the ResilientClientConnection, but does not connect until it is started.
+	 * @param host the host of the server
+	 * @param port the port of the server
+	 * @param coder the SendableCoder with which to encode and decode Sendables
+	 * @param capacity the number of unacknowledged Sendables kept for replay, at least 32
+	 * @throws IllegalArgumentException if the capacity is less than 32
+	 */
+	public ResilientClientConnection(String host, int port, SendableCoder<A, B> coder, int capacity)
+			throws IllegalArgumentException {
+		super(null, coder);
+		this.host = host;
+		this.port = port;
+		this.coder = coder;
+		this.session = new Session<A, B>("", capacity);
+	}
+	
+	/**
+	 * Sets the backoff between reconnection attempts. The delay before each attempt is random between zero and
+	 * a limit that starts at minBackoffMillis and doubles with each consecutive failure, up to maxBackoffMillis.
+	 * @param minBackoffMillis the limit of the delay after the first failure
+	 * @param maxBackoffMillis the greatest limit of the delay
+	 */
+	public void setBackoff(long minBackoffMillis, long maxBackoffMillis) {
+		if (minBackoffMillis <= 0 || maxBackoffMillis < minBackoffMillis)
+			throw new IllegalArgumentException("Invalid backoff");
+		this.minBackoffMillis = minBackoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public void run() {
+		while (!closed) {
+			try {
+				setSocket(new Socket(host, port));
+				synchronized (session) {
+					super.send(new SessionFrame.Hello<A, B>(session.getToken(), session.received(),
+							session.firstBuffered(), session.getCapacity()));
+				}
+				InputStream in = getSocket().getInputStream();
+				while (true) {
+					inbound.awaitDemand();
+					Sendable<A, B> sendable = read(in);
+					if (inbound.publish(sendable))
+						continue;
+					NetworkEvents.Dispatch event = new NetworkEvents.Dispatch();
+					event.begin();
+					sendable.effectClient((A) this);
+					event.end();
+					if (event.shouldCommit()) {
+						event.type = sendable.getClass();
+						event.commit();
+					}
+				}
+			} catch (IOException | BadDataException e) {
+				connectionFailed(e);
+			}
+			if (closed)
+				break;
+			long limit = Math.min(maxBackoffMillis, minBackoffMillis << Math.min(attempt++, 30));
+			try {
+				Thread.sleep(ThreadLocalRandom.current().nextLong(limit + 1));
+			} catch (InterruptedException e) {
+				// disconnect interrupts
+			}
+		}
+	}
+	
+	/**
+	 * Closes the current socket, so that the connection will be reestablished.
+	 */
+	@Override
+	protected void connectionFailed(Exception e) {
+		if (closed)
+			return;
+		connected = false;
+		System.out.print("Reconnecting " + this + " on account of exception: ");
+		e.printStackTrace(System.out);
+		Socket socket = getSocket();
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e1) {
+				e1.printStackTrace();
+			}
+		}
+	}
+	
+	@Override
+	protected Sendable<A, B> read(InputStream in) throws IOException, BadDataException {
+		while (true) {
+			Sendable<A, B> sendable = super.read(in);
+			if (sendable instanceof SessionFrame.Welcome) {
+				welcome((SessionFrame.Welcome<A, B>) sendable);
+			} else if (sendable instanceof SessionFrame.Ack) {
+				session.acknowledge(((SessionFrame.Ack<A, B>) sendable).received);
+			} else if (sendable instanceof SequencedSendable) {
+				SequencedSendable<A, B> sequenced = (SequencedSendable<A, B>) sendable;
+				if (session.receive(sequenced)) {
+					if (session.shouldAcknowledge())
+						super.send(new SessionFrame.Ack<A, B>(session.received()));
+					return sequenced.getSendable();
+				}
+			} else {
+				return sendable;
+			}
+		}
+	}
+	
+	private void welcome(SessionFrame.Welcome<A, B> welcome) {
+		boolean reset = false;
+		synchronized (session) {
+			session.setPeerCapacity(welcome.capacity);
+			List<SequencedSendable<A, B>> replay;
+			if (welcome.resumed) {
+				replay = session.unacknowledged(welcome.received);
+			} else if (session.getToken().isEmpty()) {
+				// the first Session, which the server hasn't received anything from yet
+				session.setToken(welcome.token);
+				replay = session.unacknowledged(0);
+			} else {
+				session.reset(welcome.token);
+				replay = session.unacknowledged(0);
+				reset = true;
+			}
+			connected = true;
+			attempt = 0;
+			for (SequencedSendable<A, B> sequenced : replay) {
+				super.send(sequenced);
+			}
+		}
+		if (reset)
+			sessionReset();
+	}
+	
+	/**
+	 * Is called when the Session could not be resumed, and a new one was started. Everything sent and received
+	 * in the previous Session that was not acknowledged is lost, so the state shared with the server should be
+	 * rebuilt. Does nothing by default.
+	 */
+	protected void sessionReset() {}
+	
+	/**
+	 * Sends the Sendable through the Session. If the Session is not currently established, the Sendable
+	 * is buffered and sent once it is.
+	 * @param sendable the Sendable to send
+	 */
+	@Override
+	public void send(Sendable<A, B> sendable) {
+		if (sendable instanceof Heartbeat) {
+			if (connected)
+				super.send(sendable);
+			return;
+		}
+		synchronized (session) {
+			SequencedSendable<A, B> sequenced = session.sequence(coder, sendable);
+			if (connected)
+				super.send(sequenced);
+		}
+	}
+	
+	/**
+	 * Ends this connection for good, without reconnecting.
+	 */
+	@Override
+	public void disconnect() {
+		closed = true;
+		connected = false;
+		super.disconnect();
+		interrupt();
+	}
+	
+	/**
+	 * @return the Session of this connection
+	 */
+	public Session<A, B> getSession() {
+		return session;
+	}
+	
+	@Override
+	public String toString() {
+		return "ResilientClientConnection to " + host + ":" + port;
+	}
+	
+}
@@ -2,6 +2,10 @@ package com.phoenixkahlo.networking;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import com.phoenixkahlo.utils.ByteBufferOutputStream;
 
 /**
  * Can be sent across streams through a SendableCoder and invoked based on which side of the network it is on.
@@ -20,6 +24,20 @@ public interface Sendable<A, B> {
 	 */
 	void write(OutputStream out) throws IOException;
 	
+	/**
+	 * Writes all the necessary data of this object into the ByteBuffer, in the same format as write to an
+	 * OutputStream. By default, writes to the OutputStream of a ByteBufferOutputStream; may be overridden to
+	 * encode into the ByteBuffer directly, in which case the class may also have the constructor
+	 * {@code public Sendable(ByteBuffer buffer) throws IOException}.
+	 * @param buffer the big-endian ByteBuffer to write into at its position
+	 * @throws IOException if writing fails
+	 * @throws BufferOverflowException if buffer hasn't room for this object
+	 * @see com.phoenixkahlo.utils.ByteBufferOutputStream
+	 */
+	default void write(ByteBuffer buffer) throws IOException, BufferOverflowException {
+		write(new ByteBufferOutputStream(buffer));
+	}
+	
 	/**
 	 * Is invoked when received on the client end.
 	 * @param connection The ServerConnection that has received this object.
@@ -0,0 +1,65 @@
+package com.phoenixkahlo.networking;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+
+import com.phoenixkahlo.utils.StreamUtils;
+
+/**
+ * Several Sendables carried in a single frame. Batches are produced by connections with batching enabled,
+ * and are unpacked by the receiving connection, which invokes the contained Sendables in order. If a
+ * SendableBatch is invoked directly, it likewise invokes each of its Sendables in order.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of client that is expected to be invoked with on the client end.
+ * @param <B> The class of server that is expected to be invoked with on the server end.
+ * @see com.phoenixkahlo.networking.SendableCoder#BATCH_HEADER
+ */
+public class SendableBatch<A, B> implements Sendable<A, B> {
+
+	private SendableCoder<A, B> coder;
+	private List<Sendable<A, B>> sendables;
+
+	/**
+	 * @param coder the SendableCoder with which to write the contained Sendables
+	 * @param sendables the Sendables to carry, in order
+	 */
+	public SendableBatch(SendableCoder<A, B> coder, List<Sendable<A, B>> sendables) {
+		this.coder = coder;
+		this.sendables = sendables;
+	}
+
+	/**
+	 * Writes the number of Sendables, followed by each Sendable as written by the SendableCoder.
+	 */
+	@Override
+	public void write(OutputStream out) throws IOException {
+		StreamUtils.writeInt(sendables.size(), out);
+		for (Sendable<A, B> sendable : sendables) {
+			coder.write(out, sendable);
+		}
+	}
+
+	@Override
+	public void effectClient(A connection) {
+		for (Sendable<A, B> sendable : sendables) {
+			sendable.effectClient(connection);
+		}
+	}
+
+	@Override
+	public void effectServer(B connection) {
+		for (Sendable<A, B> sendable : sendables) {
+			sendable.effectServer(connection);
+		}
+	}
+
+	/**
+	 * @return the contained Sendables, in the order that they were sent
+	 */
+	public List<Sendable<A, B>> getSendables() {
+		return Collections.unmodifiableList(sendables);
+	}
+
+}
@@ -0,0 +1,301 @@
+package com.phoenixkahlo.networking;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.phoenixkahlo.utils.StreamUtils;
+
+/**
+ * Accumulates outgoing Sendables of a connection and writes them to the OutputStream as batch frames.
+ * Sendables are encoded on the sending thread, and whichever thread holds the write lock writes out
+ * everything that has accumulated in one write. When the connection is idle, a Sendable is written
+ * immediately and without a batch header. When the last write found several frames waiting, the writing
+ * thread lingers for up to the maximum delay, or until the maximum batch size has accumulated.
+ * <p>
+ * Frames are queued in one lane per SendablePriority, and higher priority lanes are always taken from first.
+ * No single write exceeds the maximum batch size: larger frames are split into SendableFragments, between
+ * which frames of higher priority can be written. The latency of a CONTROL Sendable is therefore bounded by
+ * the time it takes to write one batch, even while a bulk transfer is in progress.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of clients that the Sendables are generic to
+ * @param <B> The class of servers that the Sendables are generic to
+ * @see com.phoenixkahlo.networking.SendableBatch
+ * @see com.phoenixkahlo.networking.SendablePriority
+ */
+class SendableBatcher<A, B> {
+
+	/**
+	 * The size of the header of a fragment frame: the header, lane, last flag, and length.
+	 */
+	private static final int FRAGMENT_OVERHEAD = 10;
+
+	/**
+	 * A buffer in which a batch is assembled behind room for its header.
+	 */
+	private static class BatchBuffer extends ByteArrayOutputStream {
+		int start = 0;
+		
+		void setInt(int position, int n) {
+			System.arraycopy(StreamUtils.intToBytes(n), 0, buf, position, 4);
+		}
+		
+		void skipHeader() {
+			start = 8;
+		}
+		
+		@Override
+		public synchronized void reset() {
+			super.reset();
+			start = 0;
+		}
+		
+		@Override
+		public synchronized void writeTo(OutputStream out) throws IOException {
+			out.write(buf, start, count - start);
+		}
+	}
+
+	/**
+	 * An encoded frame, and how much of it has already been written as fragments.
+	 */
+	private static class Frame {
+		byte[] bytes;
+		int written = 0;
+		Frame(byte[] bytes) {
+			this.bytes = bytes;
+		}
+	}
+
+	private SendableCoder<A, B> coder;
+	private OutputStream out;
+	private int maxBatchBytes;
+	private long maxDelayNanos;
+
+	private ReentrantLock writeLock = new ReentrantLock();
+
+	/**
+	 * The frames that have not yet been completely written, by lane, guarded by this.
+	 */
+	private List<Queue<Frame>> lanes;
+	private int pendingBytes = 0;
+
+	/**
+	 * Whether the last write found more than one frame waiting, guarded by this.
+	 */
+	private boolean saturated = false;
+
+	/**
+	 * Whether the connection has disconnected, replaced this, or failed to write, guarded by this.
+	 */
+	private boolean closed = false;
+
+	/**
+	 * The batch being assembled, used only by the thread holding the write lock.
+	 */
+	private BatchBuffer batch = new BatchBuffer();
+
+	/**
+	 * The dictionary of outgoing Strings, if enabled. Encoding and queueing are synchronized on it, so that
+	 * frames are queued in the order in which they used it.
+	 */
+	private volatile StringDictionary.Encoder dictionary = null;
+
+	/**
+	 * The counters of the connection, if enabled.
+	 */
+	private volatile NetworkMetrics.ConnectionMetrics metrics = null;
+
+	/**
+	 * @param coder the SendableCoder with which to encode Sendables
+	 * @param out the OutputStream to write batches to
+	 * @param maxBatchBytes the number of bytes after which a batch is written without further delay, and
+	 * the largest number of bytes written at once
+	 * @param maxDelayMicros the longest time that a batch will be held back to accumulate more Sendables
+	 */
+	SendableBatcher(SendableCoder<A, B> coder, OutputStream out, int maxBatchBytes, long maxDelayMicros) {
+		if (maxBatchBytes <= 8 + FRAGMENT_OVERHEAD || maxDelayMicros < 0)
+			throw new IllegalArgumentException("Invalid batching parameters");
+		this.coder = coder;
+		this.out = out;
+		this.maxBatchBytes = maxBatchBytes;
+		this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+		lanes = new ArrayList<Queue<Frame>>(SendablePriority.values().length);
+		for (int i = 0; i < SendablePriority.values().length; i++) {
+			lanes.add(new ArrayDeque<Frame>());
+		}
+	}
+
+	/**
+	 * Encodes the Sendable and queues it in the lane of its priority. If no other thread is currently
+	 * writing, this thread writes everything that is queued before returning. Otherwise, the writing thread
+	 * will write it.
+	 * @param sendable the Sendable to send
+	 * @throws IOException if the OutputStream throws an IOException
+	 */
+	void send(Sendable<A, B> sendable) throws IOException {
+		int lane = coder.getPriority(sendable).ordinal();
+		StringDictionary.Encoder dictionary = this.dictionary;
+		if (dictionary == null) {
+			queue(encode(sendable, null, lane), lane);
+		} else {
+			synchronized (dictionary) {
+				queue(encode(sendable, dictionary, lane), lane);
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * Waits until less than maxBatchBytes is queued, so that a sender which waits after each send gets no
+	 * further ahead of the socket than about a batch. Returns immediately once this is closed.
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	synchronized void awaitRoom() throws InterruptedException {
+		while (!closed && pendingBytes >= maxBatchBytes) {
+			wait();
+		}
+	}
+
+	/**
+	 * @return whether a write is in progress or frames are waiting to be written
+	 */
+	synchronized boolean isBusy() {
+		return writeLock.isLocked() || pendingBytes > 0;
+	}
+
+	/**
+	 * Wakes the senders waiting for room, and stops them from waiting again, since what is queued will never
+	 * drain. Is called when a write fails, and by the connection when it disconnects or replaces this.
+	 */
+	synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Encodes Strings written with StringDictionary.writeString using the dictionary from now on.
+	 */
+	void setDictionary(StringDictionary.Encoder dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * Counts the bytes written in the ConnectionMetrics from now on.
+	 */
+	void setMetrics(NetworkMetrics.ConnectionMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	private byte[] encode(Sendable<A, B> sendable, StringDictionary.Encoder dictionary, int lane)
+			throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		coder.write(dictionary == null ? buffer : dictionary.wrap(buffer, lane), sendable);
+		return buffer.toByteArray();
+	}
+
+	private synchronized void queue(byte[] frame, int lane) {
+		lanes.get(lane).add(new Frame(frame));
+		pendingBytes += frame.length;
+		if (pendingBytes >= maxBatchBytes)
+			notifyAll();
+	}
+
+	/**
+	 * Writes everything that is queued, unless another thread is already doing so.
+	 */
+	private void flush() throws IOException {
+		while (writeLock.tryLock()) {
+			try {
+				while (takeBatch()) {
+					try {
+						batch.writeTo(out);
+						out.flush();
+					} catch (IOException e) {
+						close();
+						throw e;
+					}
+					NetworkMetrics.ConnectionMetrics metrics = this.metrics;
+					if (metrics != null)
+						metrics.wrote(batch.size() - batch.start);
+				}
+			} finally {
+				writeLock.unlock();
+			}
+			// a frame may have been queued after the last take but before the unlock
+			synchronized (this) {
+				if (pendingBytes == 0)
+					return;
+			}
+		}
+	}
+
+	/**
+	 * Moves up to maxBatchBytes of frames from the lanes into the batch buffer, lingering first if the
+	 * connection is saturated.
+	 * @return false if there was nothing to take
+	 */
+	private synchronized boolean takeBatch() throws IOException {
+		batch.reset();
+		if (pendingBytes == 0)
+			return false;
+		if (saturated && maxDelayNanos > 0) {
+			long deadline = System.nanoTime() + maxDelayNanos;
+			long remaining;
+			while (pendingBytes < maxBatchBytes && (remaining = deadline - System.nanoTime()) > 0) {
+				try {
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		// reserve room for the batch header, which is only written if there are several frames
+		batch.write(new byte[8]);
+		int count = 0;
+		lanes: for (int lane = 0; lane < lanes.size(); lane++) {
+			Frame frame;
+			while ((frame = lanes.get(lane).peek()) != null) {
+				int room = maxBatchBytes - batch.size();
+				int remaining = frame.bytes.length - frame.written;
+				if (frame.written == 0 && remaining <= room) {
+					batch.write(frame.bytes);
+					lanes.get(lane).poll();
+					pendingBytes -= remaining;
+				} else if (frame.written > 0 || remaining > maxBatchBytes - 8) {
+					if (room <= FRAGMENT_OVERHEAD)
+						break lanes;
+					int length = Math.min(remaining, room - FRAGMENT_OVERHEAD);
+					boolean last = length == remaining;
+					SendableFragment.write(batch, lane, last, frame.bytes, frame.written, length);
+					frame.written += length;
+					if (last)
+						lanes.get(lane).poll();
+					pendingBytes -= length;
+				} else {
+					// the frame would fit into a batch of its own, so it is left for the next one
+					break lanes;
+				}
+				count++;
+			}
+		}
+		saturated = count > 1 || pendingBytes > 0;
+		// wakes senders waiting for room
+		notifyAll();
+		if (count == 1) {
+			batch.skipHeader();
+		} else {
+			batch.setInt(0, SendableCoder.BATCH_HEADER);
+			batch.setInt(4, count);
+		}
+		return true;
+	}
+
+}
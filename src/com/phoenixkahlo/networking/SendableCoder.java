@@ -1,13 +1,22 @@
 package com.phoenixkahlo.networking;
 
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import com.phoenixkahlo.utils.ByteBufferInputStream;
+import com.phoenixkahlo.utils.ByteBufferOutputStream;
 import com.phoenixkahlo.utils.StreamUtils;
 
 /**
@@ -51,9 +60,159 @@ public class SendableCoder<A, B> {
 		 */
 		void write(OutputStream out, Sendable<C, D> sendable) throws IOException;
 		
+		/**
+		 * Creates the Sendable represented by this SendableCoderEntry from the ByteBuffer at its position,
+		 * advancing its position past the Sendable. By default, creates it from a ByteBufferInputStream.
+		 * @param buffer the big-endian ByteBuffer with which to create the Sendable
+		 * @return the Sendable created from the ByteBuffer
+		 * @throws IOException if an IOException occurs in the creation of the Sendable
+		 * @throws BadDataException if the data read is bad
+		 */
+		default Sendable<C, D> create(ByteBuffer buffer) throws IOException, BadDataException {
+			return create(new ByteBufferInputStream(buffer));
+		}
+		
+		/**
+		 * Writes the Sendable object into the ByteBuffer at its position. By default, writes it to a
+		 * ByteBufferOutputStream.
+		 * @param buffer the big-endian ByteBuffer to write the Sendable into
+		 * @param sendable the Sendable to write
+		 * @throws IOException if writing fails
+		 * @throws BufferOverflowException if buffer hasn't room for the Sendable
+		 */
+		default void write(ByteBuffer buffer, Sendable<C, D> sendable) throws IOException, BufferOverflowException {
+			write(new ByteBufferOutputStream(buffer), sendable);
+		}
+		
 	}
 	
+	/**
+	 * The reserved header of a SendableBatch, which carries several Sendables in a single frame.
+	 * @see com.phoenixkahlo.networking.SendableBatch
+	 */
+	public static final int BATCH_HEADER = -1;
+	
+	/**
+	 * The reserved header of a fragment of a frame that was too large to be written at once.
+	 */
+	public static final int FRAGMENT_HEADER = -2;
+	
+	/**
+	 * The reserved header of the heartbeat that a connection sends when it has been idle.
+	 */
+	public static final int PING_HEADER = -3;
+	
+	/**
+	 * The reserved header of the heartbeat with which a connection replies to a ping.
+	 */
+	public static final int PONG_HEADER = -4;
+	
+	/**
+	 * The reserved header with which a client starts or resumes a Session.
+	 */
+	public static final int SESSION_HELLO_HEADER = -5;
+	
+	/**
+	 * The reserved header with which a server accepts a client into a Session.
+	 */
+	public static final int SESSION_WELCOME_HEADER = -6;
+	
+	/**
+	 * The reserved header with which either end of a Session acknowledges the Sendables it has received.
+	 */
+	public static final int SESSION_ACK_HEADER = -7;
+	
+	/**
+	 * The reserved header of a Sendable sent through a Session, which carries its sequence number.
+	 */
+	public static final int SEQUENCED_HEADER = -8;
+	
 	private Map<Integer, SendableCoderEntry<A, B>> entries = new HashMap<Integer, SendableCoderEntry<A, B>>();
+	private Map<Integer, SendablePriority> priorities = new HashMap<Integer, SendablePriority>();
+	private volatile NetworkMetrics metrics = null;
+	
+	/**
+	 * Constructs a SendableCoder with only the reserved entries registered.
+	 */
+	public SendableCoder() {
+		registerReserved(BATCH_HEADER, SendableBatch.class, in -> {
+			int count = StreamUtils.readInt(in);
+			if (count < 0)
+				throw new BadDataException("Negative batch size " + count);
+			List<Sendable<A, B>> sendables = new ArrayList<Sendable<A, B>>(Math.min(count, 1024));
+			for (int i = 0; i < count; i++) {
+				sendables.add(read(in));
+			}
+			return new SendableBatch<A, B>(this, sendables);
+		});
+		registerReserved(FRAGMENT_HEADER, SendableFragment.class, SendableFragment<A, B>::new);
+		registerReservedSingleton(PING_HEADER, Heartbeat.PING);
+		registerReservedSingleton(PONG_HEADER, Heartbeat.PONG);
+		priorities.put(PING_HEADER, SendablePriority.CONTROL);
+		priorities.put(PONG_HEADER, SendablePriority.CONTROL);
+		registerReserved(SESSION_HELLO_HEADER, SessionFrame.Hello.class, SessionFrame.Hello<A, B>::new);
+		registerReserved(SESSION_WELCOME_HEADER, SessionFrame.Welcome.class, SessionFrame.Welcome<A, B>::new);
+		registerReserved(SESSION_ACK_HEADER, SessionFrame.Ack.class, SessionFrame.Ack<A, B>::new);
+		registerReserved(SEQUENCED_HEADER, SequencedSendable.class,
+				in -> new SequencedSendable<A, B>(this, StreamUtils.readLong(in), read(in)));
+		priorities.put(SESSION_HELLO_HEADER, SendablePriority.CONTROL);
+		priorities.put(SESSION_WELCOME_HEADER, SendablePriority.CONTROL);
+		priorities.put(SESSION_ACK_HEADER, SendablePriority.CONTROL);
+	}
+	
+	/**
+	 * Creates a reserved Sendable from the InputStream.
+	 */
+	private static interface ReservedFactory<A, B> {
+		
+		Sendable<A, B> create(InputStream in) throws IOException, BadDataException;
+		
+	}
+	
+	/**
+	 * Registers a reserved type of Sendables, which are of this type if they are instances of the Class,
+	 * are created with the factory, and write themselves.
+	 */
+	private void registerReserved(int id, Class<?> clazz, ReservedFactory<A, B> factory) {
+		registerReserved(id, new SendableCoderEntry<A, B>() {
+
+			@Override
+			public boolean isType(Sendable<A, B> sendable) {
+				return clazz.isInstance(sendable);
+			}
+
+			@Override
+			public Sendable<A, B> create(InputStream in) throws IOException, BadDataException {
+				return factory.create(in);
+			}
+
+			@Override
+			public void write(OutputStream out, Sendable<A, B> sendable) throws IOException {
+				sendable.write(out);
+			}
+
+			@Override
+			public void write(ByteBuffer buffer, Sendable<A, B> sendable) throws IOException {
+				sendable.write(buffer);
+			}
+			
+		});
+	}
+	
+	/**
+	 * Registers an entry under a reserved (negative) id. Reserved entries are used for the frames that the
+	 * networking package itself sends, and can't be registered by users of the SendableCoder.
+	 * @param id the reserved id with which to register the entry
+	 * @param entry the entry to register
+	 * @throws RuntimeException if there is already an entry registered with that id, or if the id is not
+	 * below 0.
+	 */
+	private void registerReserved(int id, SendableCoderEntry<A, B> entry) throws RuntimeException {
+		if (entries.containsKey(id) || id >= 0)
+			throw new RuntimeException("Invalid reserved sendable header " + id);
+		else
+			entries.put(id, entry);
+	}
 	
 	/**
 	 * Registers the SendableCoderEntry with this SendableCoder to ensure that that type of Sendable can be
@@ -69,6 +228,38 @@ public class SendableCoder<A, B> {
 			entries.put(id, entry);
 	}
 	
+	/**
+	 * Registers a singleton Sendable under a reserved (negative) id.
+	 * @see com.phoenixkahlo.networking.SendableCoder#register(int, Sendable)
+	 */
+	@SuppressWarnings("unchecked")
+	private void registerReservedSingleton(int id, @SuppressWarnings("rawtypes") Sendable singleton) {
+		registerReserved(id, new SendableCoderEntry<A, B>() {
+			
+			@Override
+			public boolean isType(Sendable<A, B> sendable) {
+				return sendable == singleton;
+			}
+			
+			@Override
+			public Sendable<A, B> create(InputStream in) {
+				return singleton;
+			}
+
+			@Override
+			public Sendable<A, B> create(ByteBuffer buffer) {
+				return singleton;
+			}
+
+			@Override
+			public void write(OutputStream out, Sendable<A, B> sendable) throws IOException {}
+
+			@Override
+			public void write(ByteBuffer buffer, Sendable<A, B> sendable) {}
+			
+		});
+	}
+	
 	/**
 	 * Reads a Sendable from the InputStream.
 	 * @param in the InputStream from which to read the Sendable
@@ -79,11 +270,26 @@ public class SendableCoder<A, B> {
 	 */
 	public Sendable<A, B> read(InputStream in) throws IOException, BadDataException {
 		int id = StreamUtils.readInt(in);
-		if (entries.containsKey(id)) {
-			return entries.get(id).create(in);
-		} else {
+		SendableCoderEntry<A, B> entry = entries.get(id);
+		if (entry == null)
 			throw new IOException("Header " + id + " not registered");
+		NetworkMetrics metrics = this.metrics;
+		NetworkEvents.Decode event = new NetworkEvents.Decode();
+		if (id < 0 || (metrics == null && !event.isEnabled()))
+			return entry.create(in);
+		long position = event.isEnabled() ? NetworkEvents.position(in) : -1;
+		long start = System.nanoTime();
+		event.begin();
+		Sendable<A, B> sendable = entry.create(in);
+		event.end();
+		if (metrics != null)
+			metrics.decoded(sendable.getClass(), System.nanoTime() - start);
+		if (event.shouldCommit()) {
+			event.type = sendable.getClass();
+			event.bytes = NetworkEvents.frameSize(in, position);
+			event.commit();
 		}
+		return sendable;
 	}
 	
 	/**
@@ -94,15 +300,173 @@ public class SendableCoder<A, B> {
 	 * @throws RuntimeException if the Sendable is not accepted by any of the registered types
 	 */
 	public void write(OutputStream out, Sendable<A, B> sendable) throws IOException, RuntimeException {
-		for (Map.Entry<Integer, SendableCoderEntry<A, B>> entry : entries.entrySet()) {
-			if (entry.getValue().isType(sendable)) {
-				StreamUtils.writeInt(entry.getKey(), out);
-				entry.getValue().write(out, sendable);
-				return;
+		if (sendable instanceof EncodedSendable) {
+			out.write(((EncodedSendable<A, B>) sendable).getFrame());
+			return;
+		}
+		int id = headerOf(sendable);
+		StreamUtils.writeInt(id, out);
+		NetworkMetrics metrics = this.metrics;
+		NetworkEvents.Encode event = new NetworkEvents.Encode();
+		if (id < 0 || (metrics == null && !event.isEnabled())) {
+			entries.get(id).write(out, sendable);
+			return;
+		}
+		long position = event.isEnabled() ? NetworkEvents.position(out) : -1;
+		long start = System.nanoTime();
+		event.begin();
+		entries.get(id).write(out, sendable);
+		event.end();
+		if (metrics != null)
+			metrics.encoded(sendable.getClass(), System.nanoTime() - start);
+		if (event.shouldCommit()) {
+			event.type = sendable.getClass();
+			event.bytes = NetworkEvents.frameSize(out, position);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Reads a Sendable from the ByteBuffer at its position, advancing its position past the Sendable. Types
+	 * whose entries decode from ByteBuffers natively are decoded straight from the ByteBuffer, such that a
+	 * transport can decode from its receive buffer without copying.
+	 * @param buffer the big-endian ByteBuffer from which to read the Sendable
+	 * @return the Sendable decoded from the ByteBuffer
+	 * @throws IOException if the ByteBuffer ends before the Sendable, or the header is not registered
+	 * @throws BadDataException if the creation of the Sendable throws a BadDataException
+	 */
+	public Sendable<A, B> read(ByteBuffer buffer) throws IOException, BadDataException {
+		if (buffer.remaining() < 4)
+			throw new EOFException();
+		int id = buffer.getInt();
+		SendableCoderEntry<A, B> entry = entries.get(id);
+		if (entry == null)
+			throw new IOException("Header " + id + " not registered");
+		try {
+			NetworkMetrics metrics = this.metrics;
+			NetworkEvents.Decode event = new NetworkEvents.Decode();
+			if (id < 0 || (metrics == null && !event.isEnabled()))
+				return entry.create(buffer);
+			int position = buffer.position();
+			long start = System.nanoTime();
+			event.begin();
+			Sendable<A, B> sendable = entry.create(buffer);
+			event.end();
+			if (metrics != null)
+				metrics.decoded(sendable.getClass(), System.nanoTime() - start);
+			if (event.shouldCommit()) {
+				event.type = sendable.getClass();
+				event.bytes = buffer.position() - position + 4;
+				event.commit();
 			}
+			return sendable;
+		} catch (BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+	
+	/**
+	 * Writes the Sendable into the ByteBuffer at its position.
+	 * @param buffer the big-endian ByteBuffer to write into
+	 * @param sendable the Sendable to write into the ByteBuffer
+	 * @throws IOException if the Sendable fails to write itself
+	 * @throws BufferOverflowException if buffer hasn't room for the Sendable, in which case its position is
+	 * unspecified
+	 * @throws RuntimeException if the Sendable is not accepted by any of the registered types
+	 */
+	public void write(ByteBuffer buffer, Sendable<A, B> sendable) throws IOException, BufferOverflowException,
+			RuntimeException {
+		if (sendable instanceof EncodedSendable) {
+			buffer.put(((EncodedSendable<A, B>) sendable).getFrame());
+			return;
+		}
+		int id = headerOf(sendable);
+		buffer.putInt(id);
+		NetworkMetrics metrics = this.metrics;
+		NetworkEvents.Encode event = new NetworkEvents.Encode();
+		if (id < 0 || (metrics == null && !event.isEnabled())) {
+			entries.get(id).write(buffer, sendable);
+			return;
+		}
+		int position = buffer.position();
+		long start = System.nanoTime();
+		event.begin();
+		entries.get(id).write(buffer, sendable);
+		event.end();
+		if (metrics != null)
+			metrics.encoded(sendable.getClass(), System.nanoTime() - start);
+		if (event.shouldCommit()) {
+			event.type = sendable.getClass();
+			event.bytes = buffer.position() - position + 4;
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Encodes the Sendable once, such that it can be sent to many connections whose SendableCoders have the
+	 * same registrations as this one without being encoded again for each. The Sendable should not be
+	 * changed afterwards, since the change would not be sent.
+	 * @param sendable the Sendable to encode
+	 * @return a Sendable that is written by copying the encoding
+	 * @throws IOException if the Sendable fails to write itself
+	 * @throws RuntimeException if the Sendable is not accepted by any of the registered types
+	 */
+	public Sendable<A, B> encode(Sendable<A, B> sendable) throws IOException, RuntimeException {
+		if (sendable instanceof EncodedSendable)
+			return sendable;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		write(out, sendable);
+		return new EncodedSendable<A, B>(sendable, out.toByteArray(), getPriority(sendable));
+	}
+	
+	/**
+	 * Counts the Sendables of registered types that are encoded and decoded, and the time it takes, in the
+	 * NetworkMetrics from now on. Is enabled by the connections that enable metrics.
+	 * @param metrics the NetworkMetrics to count in, or null to stop counting
+	 * @see com.phoenixkahlo.networking.NetworkMetrics
+	 */
+	public void setMetrics(NetworkMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Finds the header of the registered type that accepts the Sendable.
+	 * @throws RuntimeException if the Sendable is not accepted by any of the registered types
+	 */
+	private int headerOf(Sendable<A, B> sendable) throws RuntimeException {
+		for (Map.Entry<Integer, SendableCoderEntry<A, B>> entry : entries.entrySet()) {
+			if (entry.getValue().isType(sendable))
+				return entry.getKey();
 		}
 		throw new RuntimeException("Sendable " + sendable + " not registered");
 	}
+	
+	/**
+	 * Sets the priority class of the type registered with the id. Types that have not been given a
+	 * priority are of priority NORMAL.
+	 * @param id the id of the registered type
+	 * @param priority the priority class of that type
+	 * @throws RuntimeException if no entry is registered with that id
+	 * @see com.phoenixkahlo.networking.SendablePriority
+	 */
+	public void setPriority(int id, SendablePriority priority) throws RuntimeException {
+		if (!entries.containsKey(id))
+			throw new RuntimeException("Header " + id + " not registered");
+		priorities.put(id, priority);
+	}
+	
+	/**
+	 * Returns the priority class of the Sendable's type.
+	 * @param sendable the Sendable to look up
+	 * @return the priority of the registered type that accepts the Sendable
+	 * @throws RuntimeException if the Sendable is not accepted by any of the registered types
+	 */
+	public SendablePriority getPriority(Sendable<A, B> sendable) throws RuntimeException {
+		if (sendable instanceof EncodedSendable)
+			return ((EncodedSendable<A, B>) sendable).getPriority();
+		SendablePriority priority = priorities.get(headerOf(sendable));
+		return priority == null ? SendablePriority.NORMAL : priority;
+	}
 
 	/**
 	 * Registers a type of Sendables using a class object. Sendables are of this type if their Class
@@ -118,6 +482,13 @@ public class SendableCoder<A, B> {
 	public void register(int id, Class<? extends Sendable<A, B>> clazz) throws RuntimeException {
 		try {
 			Constructor<? extends Sendable<A, B>> constructor = clazz.getConstructor(InputStream.class);
+			Constructor<? extends Sendable<A, B>> bufferConstructor;
+			try {
+				bufferConstructor = clazz.getConstructor(ByteBuffer.class);
+			} catch (NoSuchMethodException e) {
+				bufferConstructor = null;
+			}
+			Constructor<? extends Sendable<A, B>> nativeConstructor = bufferConstructor;
 			register(id, new SendableCoderEntry<A, B>() {
 				
 				@Override
@@ -150,6 +521,32 @@ public class SendableCoder<A, B> {
 					}
 				}
 				
+				@Override
+				public Sendable<A, B> create(ByteBuffer buffer) throws IOException, BadDataException {
+					if (nativeConstructor == null)
+						return create(new ByteBufferInputStream(buffer));
+					try {
+						return nativeConstructor.newInstance(buffer);
+					} catch (InvocationTargetException e) {
+						Throwable target = e.getTargetException();
+						if (target instanceof BadDataException)
+							throw (BadDataException) target;
+						if (target instanceof RuntimeException)
+							throw (RuntimeException) target;
+						if (target instanceof Error)
+							throw (Error) target;
+						throw (IOException) target;
+					} catch (InstantiationException | IllegalArgumentException | IllegalAccessException e) {
+						e.printStackTrace();
+						throw new RuntimeException("Sendable class invalidly designed for reflection SendableCoderEntry");
+					}
+				}
+				
+				@Override
+				public void write(ByteBuffer buffer, Sendable<A, B> sendable) throws IOException {
+					sendable.write(buffer);
+				}
+				
 			});
 		} catch (NoSuchMethodException e) {
 			e.printStackTrace();
@@ -178,8 +575,16 @@ public class SendableCoder<A, B> {
 				return singleton;
 			}
 
+			@Override
+			public Sendable<A, B> create(ByteBuffer buffer) {
+				return singleton;
+			}
+
 			@Override
 			public void write(OutputStream out, Sendable<A, B> sendable) throws IOException {}
+
+			@Override
+			public void write(ByteBuffer buffer, Sendable<A, B> sendable) {}
 			
 		});
 	}
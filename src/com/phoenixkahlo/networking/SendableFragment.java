@@ -0,0 +1,84 @@
+package com.phoenixkahlo.networking;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.phoenixkahlo.utils.StreamUtils;
+
+/**
+ * A piece of a frame that was too large to be written at once, carried in its own frame. The fragments of
+ * a frame are written in order through a single priority lane, and are reassembled by the receiving connection
+ * once the last fragment arrives. Fragments are never invoked.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of client that is expected to be invoked with on the client end.
+ * @param <B> The class of server that is expected to be invoked with on the server end.
+ * @see com.phoenixkahlo.networking.SendableCoder#FRAGMENT_HEADER
+ */
+class SendableFragment<A, B> implements Sendable<A, B> {
+
+	private int lane;
+	private boolean last;
+	private byte[] data;
+
+	SendableFragment(int lane, boolean last, byte[] data) {
+		this.lane = lane;
+		this.last = last;
+		this.data = data;
+	}
+
+	SendableFragment(InputStream in) throws IOException, BadDataException {
+		lane = in.read();
+		if (lane < 0 || lane >= SendablePriority.values().length)
+			throw new BadDataException("Invalid fragment lane " + lane);
+		last = StreamUtils.readBoolean(in);
+		int length = StreamUtils.readInt(in);
+		if (length < 0 || length > SendableUnpacker.MAX_FRAGMENTED_FRAME_BYTES)
+			throw new BadDataException("Invalid fragment length " + length);
+		data = new byte[length];
+		StreamUtils.readFully(data, in);
+	}
+
+	/**
+	 * Writes a fragment frame directly from a region of a larger frame, without copying it into a
+	 * SendableFragment first.
+	 */
+	static void write(OutputStream out, int lane, boolean last, byte[] frame, int offset, int length)
+			throws IOException {
+		StreamUtils.writeInt(SendableCoder.FRAGMENT_HEADER, out);
+		out.write(lane);
+		StreamUtils.writeBoolean(last, out);
+		StreamUtils.writeInt(length, out);
+		out.write(frame, offset, length);
+	}
+
+	@Override
+	public void write(OutputStream out) throws IOException {
+		out.write(lane);
+		StreamUtils.writeBoolean(last, out);
+		StreamUtils.writeByteArray(data, out);
+	}
+
+	@Override
+	public void effectClient(A connection) {
+		throw new UnsupportedOperationException("Fragments must be reassembled before being invoked");
+	}
+
+	@Override
+	public void effectServer(B connection) {
+		throw new UnsupportedOperationException("Fragments must be reassembled before being invoked");
+	}
+
+	int getLane() {
+		return lane;
+	}
+
+	boolean isLast() {
+		return last;
+	}
+
+	byte[] getData() {
+		return data;
+	}
+
+}
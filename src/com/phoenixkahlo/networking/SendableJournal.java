@@ -0,0 +1,281 @@
+package com.phoenixkahlo.networking;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * An append-only journal of the encoded frames that a Session has sent but that the other end has not yet
+ * acknowledged, kept in memory mapped segment files rather than on the heap, such that many Sessions whose
+ * clients are offline can each keep a large backlog. Appending a frame is a copy into the page cache, so
+ * that the journal is written at about the speed of sequential writes to the disk, and acknowledged frames
+ * are trimmed a whole segment at a time by deleting its file.
+ * <p>
+ * Each segment is named after the sequence number of its first frame, and is a header followed by records
+ * of an int length, a long sequence number and the frame, a length of zero marking the end. The segments are
+ * flushed to the disk by the operating system as it sees fit, or by flush. A journal belongs to one Session
+ * for the life of the process, and the segments left in its directory from a previous process are deleted
+ * when it is created.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @see com.phoenixkahlo.networking.Session#setJournal(SendableJournal)
+ */
+public class SendableJournal implements Closeable {
+
+	private static final int MAGIC = 0x504B534A;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 8;
+	private static final int RECORD_OVERHEAD = 12;
+
+	/**
+	 * The smallest size of a segment, which holds its header and the overhead of one record.
+	 */
+	static final int MIN_SEGMENT_BYTES = HEADER_BYTES + RECORD_OVERHEAD;
+
+	private static final String SUFFIX = ".journal";
+
+	/**
+	 * A frame read back from the journal.
+	 */
+	static class Entry {
+
+		final long sequence;
+		final byte[] frame;
+
+		Entry(long sequence, byte[] frame) {
+			this.sequence = sequence;
+			this.frame = frame;
+		}
+
+	}
+
+	private static class Segment {
+
+		Path file;
+		MappedByteBuffer buffer;
+		long lastSequence;
+
+		Segment(Path file, MappedByteBuffer buffer, long firstSequence) {
+			this.file = file;
+			this.buffer = buffer;
+			this.lastSequence = firstSequence - 1;
+		}
+
+	}
+
+	private Path directory;
+	private int segmentBytes;
+	private long maxBytes;
+	private Deque<Segment> segments = new ArrayDeque<Segment>();
+	private long bytes = 0;
+
+	/**
+	 * The sequence number of the earliest frame kept, those before it having been trimmed or dropped.
+	 */
+	private long first = 1;
+	private boolean closed = false;
+
+	/**
+	 * Creates a journal in the directory, in segments of 4 MiB, keeping at most 1 GiB.
+	 * @param directory the directory of the segment files, which is created if it doesn't exist
+	 * @throws IOException if the directory can't be created or cleared
+	 */
+	public SendableJournal(Path directory) throws IOException {
+		this(directory, 4 << 20, 1L << 30);
+	}
+
+	/**
+	 * Creates a journal in the directory. When the journal exceeds maxBytes, its earliest segments are deleted
+	 * even though they are unacknowledged, as a Session's retransmit buffer drops its earliest Sendables when
+	 * it overflows, in which case the Session can no longer be resumed.
+	 * @param directory the directory of the segment files, which is created if it doesn't exist
+	 * @param segmentBytes the size of each segment file, except those holding a larger frame
+	 * @param maxBytes the greatest size of all the segment files together
+	 * @throws IOException if the directory can't be created or cleared
+	 */
+	public SendableJournal(Path directory, int segmentBytes, long maxBytes) throws IOException {
+		if (segmentBytes < MIN_SEGMENT_BYTES)
+			throw new IllegalArgumentException("Invalid segment size " + segmentBytes);
+		if (maxBytes < segmentBytes)
+			throw new IllegalArgumentException("Invalid journal size " + maxBytes);
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.maxBytes = maxBytes;
+		Files.createDirectories(directory);
+		deleteSegments();
+	}
+
+	/**
+	 * Appends a frame, which must have a greater sequence number than any appended before.
+	 * @throws IOException if a segment file can't be created
+	 */
+	synchronized void append(long sequence, byte[] frame) throws IOException {
+		// once closed, the Session has expired, and nothing will be replayed
+		if (closed)
+			return;
+		Segment segment = segments.peekLast();
+		if (segment == null || segment.buffer.remaining() < RECORD_OVERHEAD + frame.length + 4) {
+			// the extra 4 bytes leave room for the length of zero that ends a segment
+			segment = createSegment(sequence, Math.max(segmentBytes, HEADER_BYTES + RECORD_OVERHEAD + frame.length
+					+ 4));
+			if (segments.isEmpty())
+				first = sequence;
+			segments.add(segment);
+			bytes += segment.buffer.capacity();
+			while (bytes > maxBytes && segments.size() > 1) {
+				drop();
+			}
+		}
+		segment.buffer.putInt(frame.length + 1);
+		segment.buffer.putLong(sequence);
+		segment.buffer.put(frame);
+		segment.lastSequence = sequence;
+	}
+
+	/**
+	 * Discards the frames up to and including the sequence number, deleting the segments that hold nothing else.
+	 */
+	synchronized void trim(long acknowledged) {
+		if (acknowledged < first)
+			return;
+		first = acknowledged + 1;
+		// the last segment too, so that a Session with nothing to replay holds no mapping
+		while (!segments.isEmpty() && segments.peek().lastSequence < first) {
+			drop();
+		}
+	}
+
+	/**
+	 * @return the frames after the sequence number, in order
+	 * @throws IOException if a segment is corrupt
+	 */
+	synchronized List<Entry> read(long after) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		for (Segment segment : segments) {
+			if (segment.lastSequence <= after)
+				continue;
+			ByteBuffer buffer = segment.buffer.duplicate();
+			buffer.flip();
+			buffer.position(HEADER_BYTES);
+			try {
+				while (buffer.hasRemaining()) {
+					int length = buffer.getInt() - 1;
+					long sequence = buffer.getLong();
+					if (length < 0)
+						throw new IOException("Corrupt journal segment " + segment.file);
+					if (sequence > after && sequence >= first) {
+						byte[] frame = new byte[length];
+						buffer.get(frame);
+						entries.add(new Entry(sequence, frame));
+					} else {
+						buffer.position(buffer.position() + length);
+					}
+				}
+			} catch (BufferUnderflowException | IllegalArgumentException e) {
+				throw new IOException("Corrupt journal segment " + segment.file, e);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * @return the sequence number of the earliest frame kept, or of the next frame if none are kept
+	 */
+	synchronized long first() {
+		return first;
+	}
+
+	/**
+	 * Discards every frame, such that the next frame appended may have any sequence number.
+	 */
+	synchronized void clear() {
+		while (!segments.isEmpty()) {
+			drop();
+		}
+		first = 1;
+	}
+
+	/**
+	 * @return the size of the segment files
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return the directory of the segment files
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Writes the segments to the disk, returning once they are written.
+	 */
+	public synchronized void flush() {
+		for (Segment segment : segments) {
+			segment.buffer.force();
+		}
+	}
+
+	/**
+	 * Closes the journal and deletes its segment files, and its directory if that is then empty.
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed)
+			return;
+		closed = true;
+		clear();
+		try {
+			Files.deleteIfExists(directory);
+		} catch (IOException e) {
+			// the directory holds other files
+		}
+	}
+
+	private Segment createSegment(long sequence, int size) throws IOException {
+		Path file = directory.resolve(String.format("%020d", sequence) + SUFFIX);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			// the mapping remains valid once the channel is closed
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			return new Segment(file, buffer, sequence);
+		}
+	}
+
+	/**
+	 * Deletes the earliest segment, moving first past it.
+	 */
+	private void drop() {
+		Segment segment = segments.poll();
+		bytes -= segment.buffer.capacity();
+		first = Math.max(first, segment.lastSequence + 1);
+		try {
+			Files.deleteIfExists(segment.file);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void deleteSegments() throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path file : stream) {
+				Files.delete(file);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,27 @@
+package com.phoenixkahlo.networking;
+
+/**
+ * The priority class of a type of Sendable, which determines the outbound lane it is written through when a
+ * connection has batching enabled. Higher priority lanes are always written first, and large frames in lower
+ * priority lanes are split into fragments so that higher priority Sendables can be interleaved between them.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @see com.phoenixkahlo.networking.SendableCoder#setPriority(int, SendablePriority)
+ */
+public enum SendablePriority {
+
+	/**
+	 * Latency-critical Sendables, such as input and heartbeats.
+	 */
+	CONTROL,
+	
+	/**
+	 * The priority of Sendables that have not been given one.
+	 */
+	NORMAL,
+	
+	/**
+	 * Large transfers that should not hold back anything else.
+	 */
+	BULK;
+	
+}
@@ -0,0 +1,157 @@
+package com.phoenixkahlo.networking;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads the Sendables of a connection from an InputStream, unpacking SendableBatches and reassembling
+ * SendableFragments, such that every Sendable is returned individually and in the order it was sent.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of clients that the Sendables are generic to
+ * @param <B> The class of servers that the Sendables are generic to
+ * @see com.phoenixkahlo.networking.SendableBatcher
+ */
+class SendableUnpacker<A, B> {
+
+	/**
+	 * The greatest number of bytes of a frame reassembled from fragments, beyond which the other side is
+	 * taken to be misbehaving rather than it being left to exhaust the heap.
+	 */
+	static final int MAX_FRAGMENTED_FRAME_BYTES = 64 << 20;
+
+	private SendableCoder<A, B> coder;
+	
+	/**
+	 * The Sendables that have been unpacked from a SendableBatch but not yet returned from read.
+	 */
+	private Deque<Sendable<A, B>> unpacked = new ArrayDeque<Sendable<A, B>>();
+	
+	/**
+	 * The fragments of the incomplete frame of each lane.
+	 */
+	private ByteArrayOutputStream[] fragments = new ByteArrayOutputStream[SendablePriority.values().length];
+	
+	/**
+	 * The dictionary of incoming Strings, the counters of the connection, and the recording of the bytes
+	 * received, each if enabled, and the number of times they have been set. They may be set from any thread,
+	 * and the reading thread rebuilds its wrappers when the number changes.
+	 */
+	private volatile StringDictionary.Decoder dictionary = null;
+	private volatile NetworkMetrics.ConnectionMetrics metrics = null;
+	private volatile WireRecorder.Stream capture = null;
+	private AtomicInteger changes = new AtomicInteger();
+	
+	/**
+	 * The InputStream last wrapped, its wrapper, whether it counts the bytes read, and the number of changes
+	 * it was wrapped with, used only by the reading thread.
+	 */
+	private InputStream source = null;
+	private InputStream wrapped = null;
+	private boolean counted = false;
+	private int wrappedChanges = -1;
+	
+	/**
+	 * The wrapper of the source that records what is read, once capture has been enabled, which is kept when
+	 * the wrappers are rebuilt so that the bytes it has buffered aren't lost.
+	 */
+	private WireRecorder.CapturingInputStream capturing = null;
+	
+	SendableUnpacker(SendableCoder<A, B> coder) {
+		this.coder = coder;
+	}
+	
+	/**
+	 * Decodes Strings read with StringDictionary.readString using the dictionary from now on.
+	 */
+	void setDictionary(StringDictionary.Decoder dictionary) {
+		this.dictionary = dictionary;
+		changes.incrementAndGet();
+	}
+	
+	/**
+	 * Counts the bytes and Sendables received in the ConnectionMetrics from now on.
+	 */
+	void setMetrics(NetworkMetrics.ConnectionMetrics metrics) {
+		this.metrics = metrics;
+		changes.incrementAndGet();
+	}
+	
+	/**
+	 * Records the raw bytes received as the WireRecorder.Stream from now on.
+	 */
+	void setCapture(WireRecorder.Stream capture) {
+		this.capture = capture;
+		changes.incrementAndGet();
+	}
+	
+	/**
+	 * Reads the next Sendable, reading from the InputStream only if none are left unpacked.
+	 * @param in the InputStream from which to read
+	 * @return the next Sendable sent
+	 * @throws IOException if the InputStream throws an IOException
+	 * @throws BadDataException if the SendableCoder throws a BadDataException
+	 */
+	Sendable<A, B> read(InputStream in) throws IOException, BadDataException {
+		// read before the settings, so that settings changed afterwards cause another rebuild
+		int changeCount = changes.get();
+		StringDictionary.Decoder dictionary = this.dictionary;
+		NetworkMetrics.ConnectionMetrics metrics = this.metrics;
+		// the bytes are counted for the decode event only while it is enabled
+		boolean count = metrics != null || new NetworkEvents.Decode().isEnabled();
+		if (in != source || count != counted || changeCount != wrappedChanges) {
+			if (in != source)
+				capturing = null;
+			source = in;
+			counted = count;
+			wrappedChanges = changeCount;
+			WireRecorder.Stream capture = this.capture;
+			if (capture != null && capturing == null)
+				capturing = new WireRecorder.CapturingInputStream(in);
+			if (capturing != null)
+				capturing.setStream(capture);
+			wrapped = capturing == null ? in : capturing;
+			if (metrics != null)
+				wrapped = metrics.count(wrapped);
+			else if (count)
+				wrapped = new CountingInputStream(wrapped, new LongAdder());
+			if (dictionary != null)
+				wrapped = dictionary.wrap(wrapped);
+		}
+		in = wrapped;
+		while (true) {
+			Sendable<A, B> sendable = unpacked.isEmpty() ? coder.read(in) : unpacked.poll();
+			if (sendable instanceof SendableBatch) {
+				List<Sendable<A, B>> contents = ((SendableBatch<A, B>) sendable).getSendables();
+				for (int i = contents.size() - 1; i >= 0; i--) {
+					unpacked.addFirst(contents.get(i));
+				}
+			} else if (sendable instanceof SendableFragment) {
+				SendableFragment<A, B> fragment = (SendableFragment<A, B>) sendable;
+				int lane = fragment.getLane();
+				if (fragments[lane] == null)
+					fragments[lane] = new ByteArrayOutputStream();
+				if ((long) fragments[lane].size() + fragment.getData().length > MAX_FRAGMENTED_FRAME_BYTES)
+					throw new BadDataException("Fragmented frame exceeds " + MAX_FRAGMENTED_FRAME_BYTES + " bytes");
+				fragments[lane].write(fragment.getData());
+				if (fragment.isLast()) {
+					byte[] frame = fragments[lane].toByteArray();
+					fragments[lane] = null;
+					InputStream frameIn = new ByteArrayInputStream(frame);
+					unpacked.addFirst(coder.read(dictionary == null ? frameIn : dictionary.wrap(frameIn)));
+				}
+			} else {
+				if (metrics != null)
+					metrics.received();
+				return sendable;
+			}
+		}
+	}
+	
+}
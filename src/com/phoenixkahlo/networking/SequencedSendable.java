@@ -0,0 +1,69 @@
+package com.phoenixkahlo.networking;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.phoenixkahlo.utils.StreamUtils;
+
+/**
+ * A Sendable sent through a Session, carrying its sequence number so that the receiver can acknowledge it
+ * and discard it if it is replayed more than once.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of client that is expected to be invoked with on the client end.
+ * @param <B> The class of server that is expected to be invoked with on the server end.
+ * @see com.phoenixkahlo.networking.Session
+ */
+class SequencedSendable<A, B> implements Sendable<A, B> {
+
+	private SendableCoder<A, B> coder;
+	private long sequence;
+	private Sendable<A, B> sendable;
+
+	/**
+	 * The Sendable as already encoded by the coder, if it was, such as when it is replayed from a journal.
+	 */
+	private byte[] frame;
+
+	SequencedSendable(SendableCoder<A, B> coder, long sequence, Sendable<A, B> sendable) {
+		this.coder = coder;
+		this.sequence = sequence;
+		this.sendable = sendable;
+	}
+
+	/**
+	 * Constructs a SequencedSendable of a Sendable that has already been encoded, which is written as is, and
+	 * which can't be invoked.
+	 */
+	SequencedSendable(long sequence, byte[] frame) {
+		this.sequence = sequence;
+		this.frame = frame;
+	}
+
+	@Override
+	public void write(OutputStream out) throws IOException {
+		StreamUtils.writeLong(sequence, out);
+		if (frame != null)
+			out.write(frame);
+		else
+			coder.write(out, sendable);
+	}
+
+	@Override
+	public void effectClient(A connection) {
+		sendable.effectClient(connection);
+	}
+
+	@Override
+	public void effectServer(B connection) {
+		sendable.effectServer(connection);
+	}
+
+	long getSequence() {
+		return sequence;
+	}
+
+	Sendable<A, B> getSendable() {
+		return sendable;
+	}
+
+}
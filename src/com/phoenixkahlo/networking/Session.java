@@ -0,0 +1,271 @@
+package com.phoenixkahlo.networking;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * One end of a connection that survives reconnects. Every Sendable sent through a Session is given a sequence
+ * number and kept in a bounded retransmit buffer until the other end acknowledges it, and every Sendable
+ * received is acknowledged. When the connection is reestablished, each end replays what the other has not
+ * received. If the retransmit buffer overflows while disconnected, the Session can no longer be resumed,
+ * and a new one is started instead. The retransmit buffer is kept on the heap, or in a SendableJournal if one
+ * is set.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of clients that the Sendables are generic to
+ * @param <B> The class of servers that the Sendables are generic to
+ * @see com.phoenixkahlo.networking.ResilientClientConnection
+ * @see com.phoenixkahlo.networking.SessionServerConnection
+ */
+public class Session<A, B> {
+
+	/**
+	 * The number of Sendables received after which an acknowledgement is sent, unless half the retransmit
+	 * buffer of the other end is fewer, and the least capacity of a Session.
+	 */
+	static final int ACK_INTERVAL = 32;
+
+	private String token;
+	private int capacity;
+	private long sent = 0;
+	private long received = 0;
+	private int unacknowledged = 0;
+	private Deque<SequencedSendable<A, B>> buffer = new ArrayDeque<SequencedSendable<A, B>>();
+
+	/**
+	 * The capacity of the other end, as told when the Session was established, such that it is acknowledged
+	 * before its retransmit buffer overflows.
+	 */
+	private int peerCapacity = 2 * ACK_INTERVAL;
+	private SendableJournal journal = null;
+
+	private volatile Object attachment;
+
+	/**
+	 * The connection that currently carries this session, used by SessionServerConnection.
+	 */
+	volatile Connection<A, B> connection;
+	int detachments = 0;
+
+	/**
+	 * @param token the token with which the client resumes this session
+	 * @param capacity the number of unacknowledged Sendables kept for replay, at least ACK_INTERVAL
+	 * @throws IllegalArgumentException if the capacity is less than ACK_INTERVAL, since the buffer would
+	 * overflow between acknowledgements
+	 */
+	Session(String token, int capacity) throws IllegalArgumentException {
+		if (capacity < ACK_INTERVAL)
+			throw new IllegalArgumentException("Capacity " + capacity + " less than " + ACK_INTERVAL);
+		this.token = token;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Gives the Sendable the next sequence number, and buffers it until it is acknowledged.
+	 */
+	synchronized SequencedSendable<A, B> sequence(SendableCoder<A, B> coder, Sendable<A, B> sendable) {
+		SequencedSendable<A, B> sequenced;
+		if (journal != null) {
+			// encoded once, for both the journal and the socket
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try {
+				coder.write(out, sendable);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to encode " + sendable, e);
+			}
+			byte[] frame = out.toByteArray();
+			try {
+				journal.append(sent + 1, frame);
+				return new SequencedSendable<A, B>(++sent, frame);
+			} catch (IOException e) {
+				// such as when the process has run out of mappings, in which case the heap will do
+				System.err.println("Failed to journal, keeping Session on the heap");
+				e.printStackTrace();
+				leaveJournal();
+			}
+			sequenced = new SequencedSendable<A, B>(++sent, frame);
+		} else {
+			sequenced = new SequencedSendable<A, B>(coder, ++sent, sendable);
+		}
+		buffer.add(sequenced);
+		if (buffer.size() > capacity)
+			buffer.poll();
+		return sequenced;
+	}
+
+	/**
+	 * Moves what the journal holds into the retransmit buffer on the heap, and closes the journal. Whatever
+	 * can't be read from it is lost, such that the Session can't be resumed by a client that is missing it.
+	 */
+	private void leaveJournal() {
+		try {
+			for (SendableJournal.Entry entry : journal.read(0)) {
+				buffer.add(new SequencedSendable<A, B>(entry.sequence, entry.frame));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		while (buffer.size() > capacity) {
+			buffer.poll();
+		}
+		journal.close();
+		journal = null;
+	}
+
+	/**
+	 * Records that the SequencedSendable was received.
+	 * @return false if it had already been received, and should be discarded
+	 */
+	synchronized boolean receive(SequencedSendable<A, B> sequenced) {
+		if (sequenced.getSequence() <= received)
+			return false;
+		received = sequenced.getSequence();
+		unacknowledged++;
+		return true;
+	}
+
+	/**
+	 * @return whether enough Sendables have been received since the last acknowledgement to send another
+	 */
+	synchronized boolean shouldAcknowledge() {
+		if (unacknowledged < Math.min(ACK_INTERVAL, Math.max(1, peerCapacity / 2)))
+			return false;
+		unacknowledged = 0;
+		return true;
+	}
+
+	/**
+	 * Discards the buffered Sendables that the other end has received.
+	 */
+	synchronized void acknowledge(long peerReceived) {
+		if (journal != null) {
+			journal.trim(peerReceived);
+			return;
+		}
+		while (!buffer.isEmpty() && buffer.peek().getSequence() <= peerReceived) {
+			buffer.poll();
+		}
+	}
+
+	/**
+	 * @return the Sendables that the other end has not received, in order
+	 */
+	synchronized List<SequencedSendable<A, B>> unacknowledged(long peerReceived) {
+		acknowledge(peerReceived);
+		if (journal != null) {
+			List<SequencedSendable<A, B>> unacknowledged = new ArrayList<SequencedSendable<A, B>>();
+			try {
+				for (SendableJournal.Entry entry : journal.read(peerReceived)) {
+					unacknowledged.add(new SequencedSendable<A, B>(entry.sequence, entry.frame));
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to read journal", e);
+			}
+			return unacknowledged;
+		}
+		return new ArrayList<SequencedSendable<A, B>>(buffer);
+	}
+
+	/**
+	 * @return the sequence number of the earliest Sendable that can still be replayed
+	 */
+	synchronized long firstBuffered() {
+		if (journal != null)
+			return journal.first();
+		return buffer.isEmpty() ? sent + 1 : buffer.peek().getSequence();
+	}
+
+	/**
+	 * @return whether both ends can replay everything that the other is missing
+	 */
+	synchronized boolean canResume(long peerReceived, long peerFirstBuffered) {
+		return peerFirstBuffered <= received + 1 && firstBuffered() <= peerReceived + 1 && peerReceived <= sent;
+	}
+
+	/**
+	 * Forgets everything sent and received, when a new session must be started.
+	 */
+	synchronized void reset(String token) {
+		this.token = token;
+		sent = 0;
+		received = 0;
+		unacknowledged = 0;
+		buffer.clear();
+		if (journal != null)
+			journal.clear();
+	}
+
+	/**
+	 * Sets the token of a Session that has not yet been accepted by the server, keeping what was sent.
+	 */
+	synchronized void setToken(String token) {
+		this.token = token;
+	}
+
+	/**
+	 * Keeps the retransmit buffer in the SendableJournal rather than on the heap, in which case the journal's
+	 * size rather than the capacity of the Session bounds it. Must be set before anything is sent through the
+	 * Session. The journal is not closed by the Session, unless appending to it fails, in which case the
+	 * Session moves its retransmit buffer back onto the heap.
+	 * @param journal the SendableJournal in which to keep unacknowledged Sendables
+	 * @throws IllegalStateException if something has already been sent
+	 * @see com.phoenixkahlo.networking.SendableJournal
+	 */
+	public synchronized void setJournal(SendableJournal journal) throws IllegalStateException {
+		if (sent > 0)
+			throw new IllegalStateException("Journal set after sending");
+		this.journal = journal;
+	}
+
+	/**
+	 * @return the SendableJournal of this Session, or null if its retransmit buffer is on the heap
+	 */
+	public synchronized SendableJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * @return the number of unacknowledged Sendables kept for replay
+	 */
+	int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the capacity of the other end, from the frame with which it established the Session.
+	 */
+	synchronized void setPeerCapacity(int peerCapacity) {
+		this.peerCapacity = peerCapacity;
+	}
+
+	synchronized long received() {
+		return received;
+	}
+
+	/**
+	 * @return the token with which the client resumes this session
+	 */
+	public synchronized String getToken() {
+		return token;
+	}
+
+	/**
+	 * @return the application state attached to this session
+	 */
+	public Object getAttachment() {
+		return attachment;
+	}
+
+	/**
+	 * Attaches application state to this session, such that it survives the client reconnecting.
+	 * @param attachment the state to attach
+	 */
+	public void setAttachment(Object attachment) {
+		this.attachment = attachment;
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.phoenixkahlo.networking;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.phoenixkahlo.utils.StreamUtils;
+
+/**
+ * The frames with which the two ends of a Session establish, resume and acknowledge it. Session frames are
+ * handled by the connections and never invoked.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of client that is expected to be invoked with on the client end.
+ * @param <B> The class of server that is expected to be invoked with on the server end.
+ * @see com.phoenixkahlo.networking.Session
+ */
+abstract class SessionFrame<A, B> implements Sendable<A, B> {
+
+	/**
+	 * Sent by the client upon connecting, to resume a session or start one.
+	 */
+	static class Hello<A, B> extends SessionFrame<A, B> {
+		
+		/**
+		 * The token of the session to resume, or the empty String to start a new one.
+		 */
+		String token;
+		long received;
+		long firstBuffered;
+		int capacity;
+		
+		Hello(String token, long received, long firstBuffered, int capacity) {
+			this.token = token;
+			this.received = received;
+			this.firstBuffered = firstBuffered;
+			this.capacity = capacity;
+		}
+		
+		Hello(InputStream in) throws IOException {
+			token = StreamUtils.readString(in);
+			received = StreamUtils.readLong(in);
+			firstBuffered = StreamUtils.readLong(in);
+			capacity = StreamUtils.readInt(in);
+		}
+		
+		@Override
+		public void write(OutputStream out) throws IOException {
+			StreamUtils.writeString(token, out);
+			StreamUtils.writeLong(received, out);
+			StreamUtils.writeLong(firstBuffered, out);
+			StreamUtils.writeInt(capacity, out);
+		}
+		
+	}
+	
+	/**
+	 * Sent by the server in response to a Hello.
+	 */
+	static class Welcome<A, B> extends SessionFrame<A, B> {
+		
+		String token;
+		long received;
+		boolean resumed;
+		int capacity;
+		
+		Welcome(String token, long received, boolean resumed, int capacity) {
+			this.token = token;
+			this.received = received;
+			this.resumed = resumed;
+			this.capacity = capacity;
+		}
+		
+		Welcome(InputStream in) throws IOException {
+			token = StreamUtils.readString(in);
+			received = StreamUtils.readLong(in);
+			resumed = StreamUtils.readBoolean(in);
+			capacity = StreamUtils.readInt(in);
+		}
+		
+		@Override
+		public void write(OutputStream out) throws IOException {
+			StreamUtils.writeString(token, out);
+			StreamUtils.writeLong(received, out);
+			StreamUtils.writeBoolean(resumed, out);
+			StreamUtils.writeInt(capacity, out);
+		}
+		
+	}
+	
+	/**
+	 * Acknowledges every SequencedSendable up to and including a sequence number.
+	 */
+	static class Ack<A, B> extends SessionFrame<A, B> {
+		
+		long received;
+		
+		Ack(long received) {
+			this.received = received;
+		}
+		
+		Ack(InputStream in) throws IOException {
+			received = StreamUtils.readLong(in);
+		}
+		
+		@Override
+		public void write(OutputStream out) throws IOException {
+			StreamUtils.writeLong(received, out);
+		}
+		
+	}
+	
+	@Override
+	public void effectClient(A connection) {}
+
+	@Override
+	public void effectServer(B connection) {}
+	
+}
@@ -0,0 +1,152 @@
+package com.phoenixkahlo.networking;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A ServerConnection that carries a Session, which a ResilientClientConnection can resume by reconnecting.
+ * The connection is accepted into a Session when the client's first frame arrives. Sendables sent before then
+ * are sent once it is. Application state that should survive reconnects should be attached to the Session,
+ * since each reconnect creates a new connection.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of clients that the Sendables are generic to.
+ * @param <B> The class of servers that the Sendables are generic to. <b>Any subclass of ServerConnection
+ * must extend ServerConnection with a type argument B that the subclass can be cast to. The compiler will not
+ * detect if this is not the case, and if this is not the case, unchecked casts will occur incorrectly.</b>
+ * @see com.phoenixkahlo.networking.Session
+ * @see com.phoenixkahlo.networking.ResilientClientConnection
+ */
+public class SessionServerConnection<A, B> extends ServerConnection<A, B> {
+
+	private SendableCoder<A, B> coder;
+	private SessionStore<A, B> store;
+	private volatile Session<A, B> session;
+	
+	/**
+	 * The Sendables sent before the Session was established, guarded by itself.
+	 */
+	private List<Sendable<A, B>> early = new ArrayList<Sendable<A, B>>();
+	
+	/**
+	 * Constructs the SessionServerConnection with the given arguments, but does not start it.
+	 * @param socket the socket that is connection to the client.
+	 * @param coder the SendableCoder with which to encode and decode Sendables.
+	 * @param store the SessionStore in which to find and keep Sessions.
+	 */
+	public SessionServerConnection(Socket socket, SendableCoder<A, B> coder, SessionStore<A, B> store) {
+		super(socket, coder);
+		this.coder = coder;
+		this.store = store;
+		addDisconnectListener(() -> {
+			Session<A, B> session = this.session;
+			if (session != null)
+				store.detach(session, this);
+		});
+	}
+	
+	@Override
+	protected Sendable<A, B> read(InputStream in) throws IOException, BadDataException {
+		while (true) {
+			Sendable<A, B> sendable = super.read(in);
+			if (sendable instanceof SessionFrame.Hello) {
+				establish((SessionFrame.Hello<A, B>) sendable);
+			} else if (sendable instanceof SessionFrame.Ack) {
+				if (session != null)
+					session.acknowledge(((SessionFrame.Ack<A, B>) sendable).received);
+			} else if (sendable instanceof SequencedSendable) {
+				if (session == null)
+					throw new BadDataException("Sendable received before session was established");
+				SequencedSendable<A, B> sequenced = (SequencedSendable<A, B>) sendable;
+				if (session.receive(sequenced)) {
+					if (session.shouldAcknowledge())
+						super.send(new SessionFrame.Ack<A, B>(session.received()));
+					return sequenced.getSendable();
+				}
+			} else {
+				return sendable;
+			}
+		}
+	}
+	
+	private void establish(SessionFrame.Hello<A, B> hello) throws BadDataException {
+		synchronized (early) {
+			if (session != null)
+				throw new BadDataException("Session established twice");
+			Session<A, B> session = hello.token.isEmpty() ? null : store.get(hello.token);
+			boolean resumed = session != null && session.canResume(hello.received, hello.firstBuffered);
+			if (!resumed)
+				session = store.create();
+			synchronized (session) {
+				store.attach(session, this);
+				this.session = session;
+				session.setPeerCapacity(hello.capacity);
+				super.send(new SessionFrame.Welcome<A, B>(session.getToken(), session.received(), resumed,
+						session.getCapacity()));
+				if (resumed) {
+					for (SequencedSendable<A, B> sequenced : session.unacknowledged(hello.received)) {
+						super.send(sequenced);
+					}
+				}
+				for (Sendable<A, B> sendable : early) {
+					send(sendable);
+				}
+				early.clear();
+			}
+			sessionEstablished(session, resumed);
+		}
+	}
+	
+	/**
+	 * Is called when the client has been accepted into a Session, before anything it sends is invoked. Does
+	 * nothing by default.
+	 * @param session the Session
+	 * @param resumed whether the Session was resumed, rather than started
+	 */
+	protected void sessionEstablished(Session<A, B> session, boolean resumed) {}
+	
+	/**
+	 * Sends the Sendable through the Session. If the client is currently reconnecting, the Sendable is
+	 * buffered, and is sent once the Session is resumed.
+	 * @param sendable the Sendable to send
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void send(Sendable<A, B> sendable) {
+		if (sendable instanceof Heartbeat) {
+			super.send(sendable);
+			return;
+		}
+		Session<A, B> session = this.session;
+		if (session == null) {
+			synchronized (early) {
+				session = this.session;
+				if (session == null) {
+					early.add(sendable);
+					return;
+				}
+			}
+		}
+		synchronized (session) {
+			SequencedSendable<A, B> sequenced = session.sequence(coder, sendable);
+			// after a reconnect, this connection may have been replaced by another
+			Connection<A, B> current = session.connection;
+			if (current instanceof SessionServerConnection)
+				((SessionServerConnection<A, B>) current).write(sequenced);
+		}
+	}
+	
+	private void write(SequencedSendable<A, B> sequenced) {
+		super.send(sequenced);
+	}
+	
+	/**
+	 * @return the Session of this connection, or null if it has not been established yet
+	 */
+	public Session<A, B> getSession() {
+		return session;
+	}
+	
+}
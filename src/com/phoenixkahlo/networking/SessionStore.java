@@ -0,0 +1,147 @@
+package com.phoenixkahlo.networking;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The server's Sessions, by token. A Session whose client has disconnected is kept for the expiry time, so
+ * that the client can resume it, and is then discarded.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of clients that the Sendables are generic to
+ * @param <B> The class of servers that the Sendables are generic to
+ * @see com.phoenixkahlo.networking.SessionServerConnection
+ */
+public class SessionStore<A, B> {
+
+	private static ScheduledExecutorService expirer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "SessionStore expiry thread");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	private static SecureRandom random = new SecureRandom();
+	
+	private Map<String, Session<A, B>> sessions = new ConcurrentHashMap<String, Session<A, B>>();
+	private long expiryMillis;
+	private int capacity;
+	
+	/**
+	 * The directory in which each Session's SendableJournal is created, and their sizes, if enabled.
+	 */
+	private volatile Path journalDirectory = null;
+	private int segmentBytes;
+	private long journalBytes;
+	
+	/**
+	 * @param expiryMillis the time for which a Session is kept after its client disconnects
+	 * @param capacity the number of unacknowledged Sendables each Session keeps for replay, at least 32
+	 * @throws IllegalArgumentException if the capacity is less than 32
+	 */
+	public SessionStore(long expiryMillis, int capacity) throws IllegalArgumentException {
+		if (capacity < Session.ACK_INTERVAL)
+			throw new IllegalArgumentException("Capacity " + capacity + " less than " + Session.ACK_INTERVAL);
+		this.expiryMillis = expiryMillis;
+		this.capacity = capacity;
+	}
+	
+	/**
+	 * @param token the token of a Session
+	 * @return the Session, or null if there is none with that token
+	 */
+	public Session<A, B> get(String token) {
+		return sessions.get(token);
+	}
+	
+	/**
+	 * @return the number of Sessions kept
+	 */
+	public int size() {
+		return sessions.size();
+	}
+	
+	/**
+	 * Keeps the retransmit buffer of each Session created from now on in a SendableJournal, in a directory
+	 * named after its token, rather than on the heap. A journal is deleted when its Session expires.
+	 * @param directory the directory in which to create the journals
+	 * @param segmentBytes the size of each segment file of a journal, at least 20
+	 * @param journalBytes the greatest size of a journal, beyond which its Session can no longer be resumed
+	 * @see com.phoenixkahlo.networking.SendableJournal
+	 */
+	public void enableJournals(Path directory, int segmentBytes, long journalBytes) {
+		if (segmentBytes < SendableJournal.MIN_SEGMENT_BYTES || journalBytes < segmentBytes)
+			throw new IllegalArgumentException("Invalid journal sizes");
+		this.segmentBytes = segmentBytes;
+		this.journalBytes = journalBytes;
+		this.journalDirectory = directory;
+	}
+	
+	/**
+	 * Creates and stores a new Session with a random token.
+	 */
+	Session<A, B> create() {
+		Session<A, B> session = new Session<A, B>(createToken(), capacity);
+		Path journalDirectory = this.journalDirectory;
+		if (journalDirectory != null) {
+			try {
+				session.setJournal(new SendableJournal(journalDirectory.resolve(session.getToken()), segmentBytes,
+						journalBytes));
+			} catch (IOException e) {
+				System.err.println("Failed to create journal, keeping Session on the heap");
+				e.printStackTrace();
+			}
+		}
+		sessions.put(session.getToken(), session);
+		return session;
+	}
+	
+	/**
+	 * Attaches the Session to the connection, disconnecting any connection that it was attached to before.
+	 */
+	void attach(Session<A, B> session, Connection<A, B> connection) {
+		Connection<A, B> previous;
+		synchronized (session) {
+			previous = session.connection;
+			session.connection = connection;
+		}
+		if (previous != null && previous != connection)
+			previous.disconnect();
+	}
+	
+	/**
+	 * Detaches the Session from the connection, if it is still attached to it, and discards the Session if
+	 * no connection attaches to it within the expiry time.
+	 */
+	void detach(Session<A, B> session, Connection<A, B> connection) {
+		int detachments;
+		synchronized (session) {
+			if (session.connection != connection)
+				return;
+			session.connection = null;
+			detachments = ++session.detachments;
+		}
+		expirer.schedule(() -> {
+			synchronized (session) {
+				if (session.connection == null && session.detachments == detachments
+						&& sessions.remove(session.getToken(), session)) {
+					SendableJournal journal = session.getJournal();
+					if (journal != null)
+						journal.close();
+				}
+			}
+		}, expiryMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	private static String createToken() {
+		byte[] bytes = new byte[18];
+		random.nextBytes(bytes);
+		return Base64.getUrlEncoder().encodeToString(bytes);
+	}
+	
+}
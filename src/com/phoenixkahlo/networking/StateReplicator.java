@@ -0,0 +1,202 @@
+package com.phoenixkahlo.networking;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import com.phoenixkahlo.utils.BitWriter;
+
+/**
+ * Replicates a ReplicatedState from a server to the connections it is sent to. Each tick records which fields
+ * changed since the last, and each connection is sent the fields changed since the last tick it acknowledged,
+ * bit-packed, or a snapshot of every field if it has acknowledged none, or none within the history kept.
+ * Finding and encoding what changed therefore costs in proportion to the number of fields changed, not to the
+ * size of the state, and the update for a baseline is encoded once per tick however many connections share it.
+ * <p>
+ * Since updates are deltas against acknowledged ticks rather than against the previous update, they remain
+ * correct when updates are lost or dropped, so long as acknowledgements eventually arrive.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of clients that the Sendables are generic to
+ * @param <B> The class of servers that the Sendables are generic to
+ * @see com.phoenixkahlo.networking.Replication#replicate(int, ReplicatedState, int)
+ */
+public class StateReplicator<A, B> {
+
+	private Replication<A, B> replication;
+	private int id;
+	private ReplicatedState state;
+	private int history;
+
+	/**
+	 * The current tick, and the fields changed in each of the last history ticks, by tick modulo history.
+	 */
+	private long tick = 0;
+	private int[][] changes;
+
+	/**
+	 * The last tick that each connection sent to has acknowledged, or -1 if none.
+	 */
+	private Map<Connection<A, B>, Long> acknowledged = new ConcurrentHashMap<Connection<A, B>, Long>();
+
+	/**
+	 * The updates of the current tick, by baseline, and the scratch space for finding the fields changed since
+	 * a baseline, guarded by this.
+	 */
+	private Map<Long, ReplicationFrame.Update<A, B>> updates = new HashMap<Long, ReplicationFrame.Update<A, B>>();
+	private int[] marks;
+	private int mark = 0;
+	private BitWriter writer = new BitWriter();
+
+	StateReplicator(Replication<A, B> replication, int id, ReplicatedState state, int history) {
+		if (history <= 0)
+			throw new IllegalArgumentException("Invalid history " + history);
+		this.replication = replication;
+		this.id = id;
+		this.state = state;
+		this.history = history;
+		this.changes = new int[history][];
+		this.marks = new int[state.getFieldCount()];
+		state.takeChanges();
+	}
+
+	/**
+	 * Ends the current tick, recording the fields changed during it. The state should not be changed between
+	 * a tick and the sends that follow it, since the values sent are those at the time of sending.
+	 */
+	public synchronized void tick() {
+		tick++;
+		changes[(int) (tick % history)] = state.takeChanges();
+		updates.clear();
+	}
+
+	/**
+	 * Sends the connection an update to the current tick, unless it has acknowledged the current tick.
+	 * @param connection the connection to send to
+	 * @return whether an update was sent
+	 */
+	public boolean send(Connection<A, B> connection) {
+		return send(connection, connection::send);
+	}
+
+	/**
+	 * Sends the connection of the UnreliableChannel an update to the current tick through the channel, unless
+	 * it has acknowledged the current tick, such that a lost update is superseded by the next rather than
+	 * delaying it. Acknowledgements still arrive through the connection. The channel should be flushed after
+	 * the updates of a tick have been sent.
+	 * @param channel the channel to send through
+	 * @return whether an update was sent
+	 */
+	public boolean send(UnreliableChannel<A, B> channel) {
+		return send(channel.getConnection(), channel::send);
+	}
+
+	/**
+	 * Passes the sender the update for the connection, by whose acknowledgements its baseline is tracked.
+	 */
+	private boolean send(Connection<A, B> connection, Consumer<Sendable<A, B>> sender) {
+		Long baseline = acknowledged.get(connection);
+		if (baseline == null) {
+			baseline = -1L;
+			if (acknowledged.putIfAbsent(connection, baseline) == null)
+				connection.addDisconnectListener(() -> acknowledged.remove(connection));
+		}
+		ReplicationFrame.Update<A, B> update;
+		synchronized (this) {
+			if (baseline == tick)
+				return false;
+			update = update(baseline);
+		}
+		sender.accept(update);
+		return true;
+	}
+
+	/**
+	 * Records that the connection has the tick.
+	 */
+	void acknowledge(Connection<A, B> connection, long acknowledgedTick) {
+		acknowledged.computeIfPresent(connection, (c, previous) -> Math.max(previous, acknowledgedTick));
+	}
+
+	/**
+	 * Forgets the connection, such that it would next be sent a snapshot.
+	 * @param connection the connection to forget
+	 */
+	public void remove(Connection<A, B> connection) {
+		acknowledged.remove(connection);
+	}
+
+	/**
+	 * @return the current tick
+	 */
+	public synchronized long getTick() {
+		return tick;
+	}
+
+	/**
+	 * @return the ReplicatedState replicated
+	 */
+	public ReplicatedState getState() {
+		return state;
+	}
+
+	/**
+	 * Returns the update from the baseline to the current tick, encoding it if it hasn't been this tick.
+	 */
+	private ReplicationFrame.Update<A, B> update(long baseline) {
+		// a baseline beyond the history, or ahead of the current tick, gets a snapshot
+		if (baseline < 0 || baseline > tick || tick - baseline > history)
+			baseline = -1;
+		long key = baseline;
+		ReplicationFrame.Update<A, B> update = updates.get(key);
+		if (update != null)
+			return update;
+		writer.reset();
+		int[] fields = baseline < 0 ? null : changedSince(baseline);
+		if (fields == null || fields.length >= state.getFieldCount()) {
+			// a delta of every field is no smaller than a snapshot
+			baseline = -1;
+			for (int field = 0; field < state.getFieldCount(); field++) {
+				state.writeField(field, writer);
+			}
+		} else {
+			writer.writeUnsigned(fields.length);
+			int previous = -1;
+			for (int field : fields) {
+				writer.writeUnsigned(field - previous - 1);
+				state.writeField(field, writer);
+				previous = field;
+			}
+		}
+		update = new ReplicationFrame.Update<A, B>(replication, id, tick, baseline, writer.toByteArray());
+		updates.put(key, update);
+		return update;
+	}
+
+	/**
+	 * @return the fields changed in the ticks after the baseline, in ascending order
+	 */
+	private int[] changedSince(long baseline) {
+		if (++mark == 0) {
+			Arrays.fill(marks, 0);
+			mark = 1;
+		}
+		int count = 0;
+		int[] fields = new int[16];
+		for (long t = baseline + 1; t <= tick; t++) {
+			for (int field : changes[(int) (t % history)]) {
+				if (marks[field] != mark) {
+					marks[field] = mark;
+					if (count == fields.length)
+						fields = Arrays.copyOf(fields, count * 2);
+					fields[count++] = field;
+				}
+			}
+		}
+		fields = Arrays.copyOf(fields, count);
+		Arrays.sort(fields);
+		return fields;
+	}
+
+}
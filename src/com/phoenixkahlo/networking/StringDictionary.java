@@ -0,0 +1,216 @@
+package com.phoenixkahlo.networking;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.phoenixkahlo.utils.StreamUtils;
+
+/**
+ * Writes and reads Strings that repeat on a connection, such as names and ids, as small tokens. Sendables opt in
+ * by writing such Strings with writeString and reading them with readString. When the connection has enabled a
+ * string dictionary, the first time a String is written it is sent along with the token it is assigned, and
+ * after that only the token is sent, which the other side decodes to the same String instance every time.
+ * Otherwise, or once the dictionary is full, the String is written in full.
+ * <p>
+ * Each connection has a dictionary of its own for each direction, so both sides must enable it before anything
+ * is sent. Since the lanes of a SendableBatcher may overtake each other, a String is only sent as a token in
+ * Sendables of the priority in which it was first sent, which keeps every token behind the frame defining it.
+ * <p>
+ * The encoding is a varint code: 0 for a String in full, 1 for a String in full preceded by the varint token it
+ * is assigned, and 2 or more for the token 2 less than the code.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ */
+public class StringDictionary {
+
+	/**
+	 * The longest String that is entered into a dictionary, so that its memory stays bounded.
+	 */
+	public static final int MAX_ENTRY_LENGTH = 256;
+
+	private static final int LITERAL = 0;
+	private static final int DEFINITION = 1;
+	private static final int REFERENCE = 2;
+
+	/**
+	 * Writes the String to the OutputStream, as a token if the OutputStream belongs to a connection whose
+	 * dictionary already has it.
+	 * Symmetrical to readString.
+	 * @param string the String to write to out
+	 * @param out the OutputStream to write to
+	 * @throws IOException if out throws an IOException
+	 * @see com.phoenixkahlo.networking.StringDictionary#readString(InputStream)
+	 */
+	public static void writeString(String string, OutputStream out) throws IOException {
+		if (out instanceof EncodingStream) {
+			EncodingStream encoding = (EncodingStream) out;
+			encoding.encoder.write(string, encoding.lane, out);
+		} else {
+			StreamUtils.writeVarInt(LITERAL, out);
+			StreamUtils.writeString(string, out);
+		}
+	}
+
+	/**
+	 * Reads a String from the InputStream, which may be a token if the InputStream belongs to a connection
+	 * that has enabled a string dictionary.
+	 * Symmetrical to writeString.
+	 * @param in the InputStream to read from
+	 * @return the String read from in
+	 * @throws IOException if in throws an IOException, or the String is a token not in the dictionary
+	 * @see com.phoenixkahlo.networking.StringDictionary#writeString(String, OutputStream)
+	 */
+	public static String readString(InputStream in) throws IOException {
+		Decoder decoder = in instanceof DecodingStream ? ((DecodingStream) in).decoder : null;
+		int code = StreamUtils.readVarInt(in);
+		if (code == LITERAL) {
+			return StreamUtils.readString(in);
+		} else if (code == DEFINITION) {
+			int token = StreamUtils.readVarInt(in);
+			String string = StreamUtils.readString(in);
+			return decoder == null ? string : decoder.define(token, string);
+		} else {
+			if (decoder == null)
+				throw new IOException("String token received without a string dictionary");
+			return decoder.lookup(code - REFERENCE);
+		}
+	}
+
+	/**
+	 * The dictionary of a connection's outgoing Strings. Encoding a frame with it must be synchronized on it,
+	 * together with queueing or writing the frame, so that frames are sent in the order they were encoded.
+	 */
+	static class Encoder {
+
+		/**
+		 * For each lane, the tokens of the Strings first sent in that lane.
+		 */
+		private List<Map<String, Integer>> lanes;
+		private int capacity;
+		private int nextToken = 0;
+
+		Encoder(int capacity) {
+			this.capacity = capacity;
+			lanes = new ArrayList<Map<String, Integer>>(SendablePriority.values().length);
+			for (int i = 0; i < SendablePriority.values().length; i++) {
+				lanes.add(new HashMap<String, Integer>());
+			}
+		}
+
+		/**
+		 * Wraps the OutputStream, such that Strings written to it with writeString use this dictionary.
+		 * @param lane the ordinal of the priority of the frame being encoded
+		 */
+		OutputStream wrap(OutputStream out, int lane) {
+			return new EncodingStream(out, this, lane);
+		}
+
+		private void write(String string, int lane, OutputStream out) throws IOException {
+			Integer token = lanes.get(lane).get(string);
+			if (token != null) {
+				StreamUtils.writeVarInt(token + REFERENCE, out);
+			} else if (nextToken < capacity && string.length() <= MAX_ENTRY_LENGTH) {
+				lanes.get(lane).put(string, nextToken);
+				StreamUtils.writeVarInt(DEFINITION, out);
+				StreamUtils.writeVarInt(nextToken++, out);
+				StreamUtils.writeString(string, out);
+			} else {
+				StreamUtils.writeVarInt(LITERAL, out);
+				StreamUtils.writeString(string, out);
+			}
+		}
+
+	}
+
+	/**
+	 * The dictionary of a connection's incoming Strings, used only by the thread that reads.
+	 */
+	static class Decoder {
+
+		private String[] strings;
+
+		Decoder(int capacity) {
+			strings = new String[capacity];
+		}
+
+		/**
+		 * Wraps the InputStream, such that Strings read from it with readString use this dictionary.
+		 */
+		InputStream wrap(InputStream in) {
+			return new DecodingStream(in, this);
+		}
+
+		private String define(int token, String string) throws IOException {
+			if (token >= strings.length || string.length() > MAX_ENTRY_LENGTH)
+				throw new IOException("String token " + token + " exceeds the string dictionary");
+			// not interned, since the peer could otherwise grow the JVM's string table without bound
+			strings[token] = string;
+			return string;
+		}
+
+		private String lookup(int token) throws IOException {
+			String string = token < strings.length ? strings[token] : null;
+			if (string == null)
+				throw new IOException("String token " + token + " not in the string dictionary");
+			return string;
+		}
+
+	}
+
+	/**
+	 * Returns the stream that a stream wrapped by a dictionary wraps, or null if the stream is not wrapped by a
+	 * dictionary.
+	 */
+	static Object unwrap(Object stream) {
+		if (stream instanceof EncodingStream)
+			return ((EncodingStream) stream).getOut();
+		else if (stream instanceof DecodingStream)
+			return ((DecodingStream) stream).getIn();
+		else
+			return null;
+	}
+
+	private static class EncodingStream extends FilterOutputStream {
+
+		private Encoder encoder;
+		private int lane;
+
+		EncodingStream(OutputStream out, Encoder encoder, int lane) {
+			super(out);
+			this.encoder = encoder;
+			this.lane = lane;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		OutputStream getOut() {
+			return out;
+		}
+
+	}
+
+	private static class DecodingStream extends FilterInputStream {
+
+		private Decoder decoder;
+
+		DecodingStream(InputStream in, Decoder decoder) {
+			super(in);
+			this.decoder = decoder;
+		}
+
+		InputStream getIn() {
+			return in;
+		}
+
+	}
+
+}
@@ -0,0 +1,260 @@
+package com.phoenixkahlo.networking;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Publishes Sendables to the connections subscribed to a topic. Each topic is indexed to the set of its
+ * subscribers, so that publishing costs a lookup and a send to each subscriber, however many other
+ * connections and topics there are, and the Sendable is encoded once however many subscribers it is sent to.
+ * <p>
+ * A subscription is to a topic, or, if it ends with '*', to every topic that begins with what precedes the
+ * '*', such as "rooms.*" to every room and "*" to everything. Prefix subscriptions are indexed by prefix, and
+ * publishing to a topic looks up the prefixes of the topic of each length that has been subscribed to. A
+ * connection subscribed to a topic in several ways receives what is published to it once. Connections are
+ * unsubscribed from everything when they disconnect.
+ * <p>
+ * Subscribing and publishing are thread safe and never block each other. Publishing sends to each subscriber
+ * in turn on the publishing thread, so publishing to a connection that is slow to write holds up the others
+ * unless batching is enabled on it.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of clients that the Sendables are generic to
+ * @param <B> The class of servers that the Sendables are generic to
+ */
+public class TopicBroker<A, B> {
+
+	private SendableCoder<A, B> coder;
+
+	/**
+	 * The subscribers of each topic, and of each prefix.
+	 */
+	private Map<String, Set<Connection<A, B>>> topics = new ConcurrentHashMap<String, Set<Connection<A, B>>>();
+	private Map<String, Set<Connection<A, B>>> prefixes = new ConcurrentHashMap<String, Set<Connection<A, B>>>();
+
+	/**
+	 * The number of prefixes subscribed to of each length.
+	 */
+	private Map<Integer, Integer> prefixLengths = new ConcurrentHashMap<Integer, Integer>();
+
+	/**
+	 * The subscriptions of each connection, so that they can be removed when it disconnects. A connection's set
+	 * is created when it first subscribes, together with its disconnect listener, and removed only when it
+	 * disconnects. Changes to the subscriptions of a connection are synchronized on its set, so that the
+	 * indexes stay consistent with it.
+	 */
+	private Map<Connection<A, B>, Set<String>> subscriptions = new ConcurrentHashMap<Connection<A, B>, Set<String>>();
+
+	/**
+	 * @param coder a SendableCoder with the same registrations as those of the connections, with which each
+	 * published Sendable is encoded once
+	 */
+	public TopicBroker(SendableCoder<A, B> coder) {
+		this.coder = coder;
+	}
+
+	/**
+	 * Subscribes the connection to a topic, or to every topic with a prefix if it ends with '*'.
+	 * @param connection the connection to subscribe
+	 * @param topic the topic or prefix
+	 * @return false if the connection was already subscribed to it, or has disconnected
+	 */
+	public boolean subscribe(Connection<A, B> connection, String topic) {
+		Set<String> subscribed = subscriptions.get(connection);
+		if (subscribed == null) {
+			Set<String> created = ConcurrentHashMap.newKeySet();
+			subscribed = subscriptions.putIfAbsent(connection, created);
+			if (subscribed == null) {
+				subscribed = created;
+				// run immediately, removing the set, if the connection has already disconnected
+				connection.addDisconnectListener(() -> disconnected(connection));
+			}
+		}
+		synchronized (subscribed) {
+			// the set is removed from the map only once the connection has disconnected
+			if (subscriptions.get(connection) != subscribed)
+				return false;
+			if (!subscribed.add(topic))
+				return false;
+			if (isPrefix(topic)) {
+				String prefix = topic.substring(0, topic.length() - 1);
+				if (index(prefixes, prefix, connection))
+					countPrefixLength(prefix.length(), 1);
+			} else {
+				index(topics, topic, connection);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Unsubscribes the connection from a topic or prefix that it subscribed to.
+	 * @param connection the connection to unsubscribe
+	 * @param topic the topic or prefix, as it was subscribed to
+	 * @return false if the connection was not subscribed to it
+	 */
+	public boolean unsubscribe(Connection<A, B> connection, String topic) {
+		Set<String> subscribed = subscriptions.get(connection);
+		if (subscribed == null)
+			return false;
+		synchronized (subscribed) {
+			if (!subscribed.remove(topic))
+				return false;
+			unindex(connection, topic);
+		}
+		return true;
+	}
+
+	/**
+	 * Unsubscribes the connection from everything.
+	 * @param connection the connection to unsubscribe
+	 */
+	public void unsubscribeAll(Connection<A, B> connection) {
+		Set<String> subscribed = subscriptions.get(connection);
+		if (subscribed == null)
+			return;
+		synchronized (subscribed) {
+			for (String topic : subscribed) {
+				unindex(connection, topic);
+			}
+			subscribed.clear();
+		}
+	}
+
+	/**
+	 * @param connection a connection
+	 * @return the topics and prefixes that the connection is subscribed to
+	 */
+	public Set<String> getSubscriptions(Connection<A, B> connection) {
+		Set<String> subscribed = subscriptions.get(connection);
+		return subscribed == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(subscribed);
+	}
+
+	/**
+	 * @return the number of topics and prefixes with subscribers
+	 */
+	public int getTopicCount() {
+		return topics.size() + prefixes.size();
+	}
+
+	/**
+	 * Sends the Sendable to every connection subscribed to the topic or to a prefix of it, encoding it once.
+	 * @param topic the topic to publish to, which is matched literally, even if it contains '*'
+	 * @param sendable the Sendable to publish, which should not be changed afterwards
+	 * @return the number of connections it was sent to
+	 * @throws UncheckedIOException if the Sendable fails to write itself
+	 */
+	public int publish(String topic, Sendable<A, B> sendable) {
+		List<Set<Connection<A, B>>> matched = new ArrayList<Set<Connection<A, B>>>(2);
+		Set<Connection<A, B>> exact = topics.get(topic);
+		if (exact != null)
+			matched.add(exact);
+		for (Map.Entry<Integer, Integer> length : prefixLengths.entrySet()) {
+			if (length.getValue() <= 0 || length.getKey() > topic.length())
+				continue;
+			Set<Connection<A, B>> set = prefixes.get(topic.substring(0, length.getKey()));
+			if (set != null)
+				matched.add(set);
+		}
+		if (matched.isEmpty())
+			return 0;
+		Sendable<A, B> encoded;
+		try {
+			encoded = coder.encode(sendable);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to encode " + sendable, e);
+		}
+		if (matched.size() == 1) {
+			int count = 0;
+			for (Connection<A, B> connection : matched.get(0)) {
+				connection.send(encoded);
+				count++;
+			}
+			return count;
+		}
+		Set<Connection<A, B>> sent = Collections.newSetFromMap(new IdentityHashMap<Connection<A, B>, Boolean>());
+		for (Set<Connection<A, B>> set : matched) {
+			for (Connection<A, B> connection : set) {
+				if (sent.add(connection))
+					connection.send(encoded);
+			}
+		}
+		return sent.size();
+	}
+
+	/**
+	 * Unsubscribes the connection from everything and forgets it, once it has disconnected.
+	 */
+	private void disconnected(Connection<A, B> connection) {
+		Set<String> subscribed = subscriptions.remove(connection);
+		if (subscribed == null)
+			return;
+		synchronized (subscribed) {
+			for (String topic : subscribed) {
+				unindex(connection, topic);
+			}
+			subscribed.clear();
+		}
+	}
+
+	private static boolean isPrefix(String topic) {
+		return topic.endsWith("*");
+	}
+
+	private void unindex(Connection<A, B> connection, String topic) {
+		if (isPrefix(topic)) {
+			String prefix = topic.substring(0, topic.length() - 1);
+			if (unindex(prefixes, prefix, connection))
+				countPrefixLength(prefix.length(), -1);
+		} else {
+			unindex(topics, topic, connection);
+		}
+	}
+
+	/**
+	 * Adds to the number of prefixes of the length, removing the length once there are none. Since the
+	 * addition and removal of a prefix's set may be counted in either order, the count may go negative.
+	 */
+	private void countPrefixLength(int length, int change) {
+		prefixLengths.merge(length, change, (count, added) -> count + added == 0 ? null : count + added);
+	}
+
+	/**
+	 * Adds the connection to the set of the key.
+	 * @return whether the set was created
+	 */
+	private boolean index(Map<String, Set<Connection<A, B>>> index, String key, Connection<A, B> connection) {
+		boolean[] created = new boolean[1];
+		// added within compute so that a concurrent unindex can't discard the set after it is found
+		index.compute(key, (k, set) -> {
+			if (set == null) {
+				set = ConcurrentHashMap.newKeySet();
+				created[0] = true;
+			}
+			set.add(connection);
+			return set;
+		});
+		return created[0];
+	}
+
+	/**
+	 * Removes the connection from the set of the key.
+	 * @return whether the set was discarded
+	 */
+	private boolean unindex(Map<String, Set<Connection<A, B>>> index, String key, Connection<A, B> connection) {
+		boolean[] discarded = new boolean[1];
+		index.computeIfPresent(key, (k, set) -> {
+			set.remove(connection);
+			discarded[0] = set.isEmpty();
+			return set.isEmpty() ? null : set;
+		});
+		return discarded[0];
+	}
+
+}
@@ -0,0 +1,247 @@
+package com.phoenixkahlo.networking;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * An unreliable, sequenced channel of Sendables paired with a connection, through a DatagramEndpoint. Sent
+ * Sendables are encoded into the current packet, which is sent when it has no room for the next one, or when
+ * flushed, such that several small Sendables share a packet. A Sendable too large for a packet of its own is
+ * sent through the connection instead. Sendables may be lost, but arrive at most once and never out of order
+ * relative to each other, so Sendables which supersede those before them, such as positions, can be applied
+ * as they arrive.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> The class of clients that the Sendables are generic to
+ * @param <B> The class of servers that the Sendables are generic to
+ * @see com.phoenixkahlo.networking.DatagramEndpoint
+ */
+public class UnreliableChannel<A, B> {
+
+	private DatagramEndpoint<A, B> endpoint;
+	private Connection<A, B> connection;
+	private boolean client;
+	private volatile long token;
+	private volatile boolean closed = false;
+
+	/**
+	 * The address of the other side, which a client knows from the start and a server learns from the hellos,
+	 * and whether anything has been received from it.
+	 */
+	private volatile SocketAddress remote;
+	private volatile boolean answered = false;
+	private volatile long lastHello = 0;
+
+	/**
+	 * The packet being filled, and the sequence number of the last packet sent, guarded by this.
+	 */
+	private ByteBuffer packet;
+	private int packetCount = 0;
+	private long sentSequence = 0;
+
+	/**
+	 * The sequence number of the last packet received, and the counts of the packets received and dropped,
+	 * written only by the thread of the DatagramEndpoint.
+	 */
+	private volatile long receivedSequence = 0;
+	private volatile long packetsReceived = 0;
+	private volatile long packetsDropped = 0;
+
+	UnreliableChannel(DatagramEndpoint<A, B> endpoint, Connection<A, B> connection, boolean client, long token,
+			SocketAddress remote) {
+		this.endpoint = endpoint;
+		this.connection = connection;
+		this.client = client;
+		this.token = token;
+		this.remote = remote;
+		packet = ByteBuffer.allocateDirect(endpoint.getMaxPacketBytes());
+		packet.position(DatagramEndpoint.HEADER_BYTES);
+	}
+
+	/**
+	 * Encodes the Sendable into the current packet, sending the packet first if it hasn't room. Nothing is
+	 * sent until the channel is paired, and anything sent before then is lost.
+	 * @param sendable the Sendable to send, which is registered with the SendableCoder of the DatagramEndpoint
+	 * @throws RuntimeException if the Sendable is not registered
+	 */
+	public synchronized void send(Sendable<A, B> sendable) throws RuntimeException {
+		if (closed)
+			return;
+		try {
+			if (append(sendable))
+				return;
+			flush();
+			if (append(sendable))
+				return;
+		} catch (IOException e) {
+			System.err.println("Failed to encode " + sendable + " for " + this);
+			e.printStackTrace();
+			return;
+		}
+		// too large for a packet of its own
+		connection.send(sendable);
+	}
+
+	/**
+	 * Sends the current packet, if anything has been encoded into it, such as at the end of a tick.
+	 */
+	public synchronized void flush() {
+		if (packetCount == 0)
+			return;
+		SocketAddress remote = this.remote;
+		if (remote != null && token != 0 && !closed) {
+			packet.putLong(0, token);
+			packet.putLong(8, ++sentSequence);
+			packet.flip();
+			try {
+				endpoint.send(packet, remote);
+			} catch (IOException e) {
+				System.err.println("Failed to send datagram for " + this);
+				e.printStackTrace();
+			}
+		}
+		packet.clear();
+		packet.position(DatagramEndpoint.HEADER_BYTES);
+		packetCount = 0;
+	}
+
+	/**
+	 * Encodes the Sendable into the current packet.
+	 * @return whether the packet had room for it
+	 */
+	private boolean append(Sendable<A, B> sendable) throws IOException {
+		int position = packet.position();
+		try {
+			endpoint.getCoder().write(packet, sendable);
+			packetCount++;
+			return true;
+		} catch (BufferOverflowException e) {
+			packet.position(position);
+			return false;
+		}
+	}
+
+	/**
+	 * @return the connection that this channel is paired with
+	 */
+	public Connection<A, B> getConnection() {
+		return connection;
+	}
+
+	/**
+	 * @return whether anything has been received from the other side, after which the channel is known to
+	 * work in both directions
+	 */
+	public boolean isAnswered() {
+		return answered;
+	}
+
+	/**
+	 * @return the number of packets received in sequence
+	 */
+	public long getPacketsReceived() {
+		return packetsReceived;
+	}
+
+	/**
+	 * @return the number of packets dropped for arriving out of order
+	 */
+	public long getPacketsDropped() {
+		return packetsDropped;
+	}
+
+	long getToken() {
+		return token;
+	}
+
+	void setToken(long token) {
+		this.token = token;
+	}
+
+	/**
+	 * Stops the channel from sending, once its connection has disconnected.
+	 */
+	void close() {
+		closed = true;
+	}
+
+	/**
+	 * Sends the server a hello, which is a packet of sequence number 0 and no Sendables.
+	 */
+	void hello() {
+		lastHello = System.currentTimeMillis();
+		sendEmpty();
+	}
+
+	/**
+	 * Sends the server another hello, if this is a client that has not heard from the server for an interval.
+	 */
+	void helloIfUnanswered() {
+		if (client && !answered && !closed
+				&& System.currentTimeMillis() - lastHello >= DatagramEndpoint.HELLO_INTERVAL_MILLIS)
+			hello();
+	}
+
+	/**
+	 * Is called by the DatagramEndpoint with a packet received for this channel, positioned after its header.
+	 * @throws BadDataException if the packet carries a reserved frame
+	 */
+	@SuppressWarnings("unchecked")
+	void received(ByteBuffer buffer, long sequence, SocketAddress source) throws IOException, BadDataException {
+		if (sequence == 0) {
+			// a hello, to which a server replies so that the client knows its hellos arrive
+			if (!client) {
+				remote = source;
+				answered = true;
+				sendEmpty();
+			} else {
+				answered = true;
+			}
+			return;
+		}
+		if (sequence <= receivedSequence) {
+			packetsDropped++;
+			return;
+		}
+		receivedSequence = sequence;
+		packetsReceived++;
+		answered = true;
+		if (!client)
+			// follows the client should its address change
+			remote = source;
+		while (buffer.hasRemaining()) {
+			// the reserved frames of connections, such as fragments and session frames, have no meaning here
+			if (buffer.remaining() >= 4 && buffer.getInt(buffer.position()) < 0)
+				throw new BadDataException("Reserved header " + buffer.getInt(buffer.position()) + " in datagram");
+			Sendable<A, B> sendable = endpoint.getCoder().read(buffer);
+			if (client)
+				sendable.effectClient((A) connection);
+			else
+				sendable.effectServer((B) connection);
+		}
+	}
+
+	/**
+	 * Sends a packet of sequence number 0 and no Sendables.
+	 */
+	private void sendEmpty() {
+		SocketAddress remote = this.remote;
+		if (remote == null || closed)
+			return;
+		ByteBuffer empty = ByteBuffer.allocate(DatagramEndpoint.HEADER_BYTES);
+		empty.putLong(token).putLong(0).flip();
+		try {
+			endpoint.send(empty, remote);
+		} catch (IOException e) {
+			System.err.println("Failed to send datagram for " + this);
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "UnreliableChannel of " + connection;
+	}
+
+}
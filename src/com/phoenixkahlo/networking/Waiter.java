@@ -41,6 +41,18 @@ public class Waiter extends Thread {
 	public void terminate() {
 		shouldContinueRunning = false;
 		interrupt();
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * @return the port that this Waiter is bound to, which is chosen by the system if it was created with port 0
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
 	}
 	
 	@Override
@@ -49,8 +61,10 @@ public class Waiter extends Thread {
 			try {
 				connectionFactory.createConnection(serverSocket.accept());
 			} catch (IOException e) {
-				System.err.println("Failed to accept socket");
-				e.printStackTrace();
+				if (shouldContinueRunning) {
+					System.err.println("Failed to accept socket");
+					e.printStackTrace();
+				}
 			}
 		}
 	}
@@ -0,0 +1,258 @@
+package com.phoenixkahlo.networking;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.phoenixkahlo.utils.StreamUtils;
+
+/**
+ * Records the raw bytes that connections receive, with the time they were received, into an append-only file,
+ * from which a WireReplayer can replay them. The file is written through memory mapped regions, so that
+ * recording a chunk costs a copy into the page cache rather than a system call, and the reading threads of the
+ * connections being recorded are held up only for that copy.
+ * <p>
+ * Each connection recorded is a stream, and the file is a header followed by a record of each chunk received
+ * in the order received, which is a varint stream id, the varint microseconds since the previous record, and
+ * the varint length of the chunk plus one followed by the chunk. A length of zero marks the end of a stream,
+ * and a stream id of zero the end of the recording, which is where a recording that was not closed ends since
+ * the rest of its last region is zeroed. Gaps of more than about 35 minutes are recorded as 35 minutes.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @see com.phoenixkahlo.networking.ServerConnection#enableWireCapture(WireRecorder)
+ * @see com.phoenixkahlo.networking.WireReplayer
+ */
+public class WireRecorder implements Closeable {
+
+	static final int MAGIC = 0x504B5752;
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 16;
+
+	/**
+	 * The most bytes that the varints of a record take.
+	 */
+	private static final int RECORD_OVERHEAD = 15;
+
+	/**
+	 * A connection being recorded.
+	 */
+	public class Stream {
+
+		private int id;
+		private boolean ended = false;
+
+		private Stream(int id) {
+			this.id = id;
+		}
+
+		/**
+		 * Records the end of the stream. Later bytes are not recorded.
+		 */
+		public void end() {
+			synchronized (WireRecorder.this) {
+				if (ended)
+					return;
+				ended = true;
+				append(id, null, 0, 0);
+			}
+		}
+
+		private void record(byte[] bytes, int offset, int length) {
+			synchronized (WireRecorder.this) {
+				if (!ended)
+					append(id, bytes, offset, length);
+			}
+		}
+
+	}
+
+	private FileChannel channel;
+	private int regionBytes;
+	private AtomicInteger nextStream = new AtomicInteger(1);
+
+	/**
+	 * The mapped region being written, the position in the file at which it starts, and the time of the last
+	 * record, guarded by this.
+	 */
+	private MappedByteBuffer region;
+	private long regionStart;
+	private long lastRecord;
+	private boolean closed = false;
+
+	/**
+	 * Creates a recording in the file, replacing it if it exists, mapped 16 MiB at a time.
+	 * @param file the path of the recording
+	 * @throws IOException if the file cannot be created and mapped
+	 */
+	public WireRecorder(Path file) throws IOException {
+		this(file, 16 << 20);
+	}
+
+	/**
+	 * Creates a recording in the file, replacing it if it exists.
+	 * @param file the path of the recording
+	 * @param regionBytes the size of each region of the file mapped at once
+	 * @throws IOException if the file cannot be created and mapped
+	 */
+	public WireRecorder(Path file, int regionBytes) throws IOException {
+		if (regionBytes < HEADER_BYTES + RECORD_OVERHEAD)
+			throw new IllegalArgumentException("Invalid region size " + regionBytes);
+		this.regionBytes = regionBytes;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		regionStart = 0;
+		region = channel.map(FileChannel.MapMode.READ_WRITE, 0, regionBytes);
+		region.putInt(MAGIC);
+		region.putInt(VERSION);
+		region.putLong(System.currentTimeMillis());
+		lastRecord = System.nanoTime();
+	}
+
+	/**
+	 * Starts recording a connection.
+	 * @return the Stream of the connection, which must be ended when it disconnects
+	 */
+	public Stream stream() {
+		return new Stream(nextStream.getAndIncrement());
+	}
+
+	/**
+	 * Appends a record, or does nothing if closed. Bytes of null records the end of the stream.
+	 */
+	private synchronized void append(int stream, byte[] bytes, int offset, int length) {
+		if (closed)
+			return;
+		try {
+			if (region.remaining() < RECORD_OVERHEAD + length) {
+				regionStart += region.position();
+				region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart,
+						Math.max(regionBytes, RECORD_OVERHEAD + length));
+			}
+			long now = System.nanoTime();
+			long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(now - lastRecord), Integer.MAX_VALUE);
+			// the time of the record is rounded down, so that the rounding doesn't accumulate
+			lastRecord += TimeUnit.MICROSECONDS.toNanos(micros);
+			StreamUtils.writeVarInt(stream, region);
+			StreamUtils.writeVarInt((int) micros, region);
+			if (bytes == null) {
+				StreamUtils.writeVarInt(0, region);
+			} else {
+				StreamUtils.writeVarInt(length + 1, region);
+				region.put(bytes, offset, length);
+			}
+		} catch (IOException e) {
+			System.err.println("Wire recording failed, and is being closed");
+			e.printStackTrace();
+			close();
+		}
+	}
+
+	/**
+	 * Ends the recording, flushing it to the file and truncating the file to its length. Connections that are
+	 * still being recorded are no longer recorded.
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			region.force();
+			long length = regionStart + region.position();
+			region = null;
+			channel.truncate(length);
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Buffers an InputStream, recording each chunk read into the buffer as a Stream, if set. Since the buffer
+	 * is filled by one read of whatever is available, a chunk is usually everything that arrived together,
+	 * and recording it takes the recorder's lock once, however many small reads the coder makes of it. The
+	 * Stream can be changed without losing what is buffered, so a connection keeps one for its socket.
+	 */
+	static class CapturingInputStream extends FilterInputStream {
+
+		private volatile Stream stream = null;
+		private byte[] buffer = new byte[8192];
+		private int position = 0;
+		private int limit = 0;
+
+		CapturingInputStream(InputStream in) {
+			super(in);
+		}
+
+		/**
+		 * Records the chunks read from now on as the Stream, or nothing if null.
+		 */
+		void setStream(Stream stream) {
+			this.stream = stream;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (position == limit && !fill())
+				return -1;
+			return buffer[position++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (position == limit && !fill())
+				return -1;
+			int n = Math.min(len, limit - position);
+			System.arraycopy(buffer, position, b, off, n);
+			position += n;
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			if (n <= 0)
+				return 0;
+			if (position == limit && !fill())
+				return 0;
+			int skipped = (int) Math.min(n, limit - position);
+			position += skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return limit - position + in.available();
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		/**
+		 * Reads whatever is available into the empty buffer, and records it.
+		 * @return false at the end of the stream
+		 */
+		private boolean fill() throws IOException {
+			int n = in.read(buffer, 0, buffer.length);
+			if (n <= 0)
+				return false;
+			position = 0;
+			limit = n;
+			Stream stream = this.stream;
+			if (stream != null)
+				stream.record(buffer, 0, n);
+			return true;
+		}
+
+	}
+
+}
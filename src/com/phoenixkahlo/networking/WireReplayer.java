@@ -0,0 +1,207 @@
+package com.phoenixkahlo.networking;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.phoenixkahlo.utils.StreamUtils;
+
+/**
+ * Replays a recording made by a WireRecorder, opening a socket to a server for each connection recorded and
+ * sending it the bytes that the connection received, in the order they were received across all connections.
+ * The server decodes and dispatches them with its SendableCoder as it did the original traffic, so that a
+ * problem seen in production can be reproduced, or a change benchmarked against real traffic. Anything the
+ * server sends back is read and discarded.
+ * <p>
+ * In real time, each chunk is sent as long after the start of the replay as it was received after the start of
+ * the recording, or as soon as possible if the replay has fallen behind. Otherwise the chunks are sent as fast
+ * as possible, in which case the server sees the same bytes in the same order, but not necessarily split into
+ * the same reads.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @see com.phoenixkahlo.networking.WireRecorder
+ */
+public class WireReplayer {
+
+	private Path recording;
+	private long records = 0;
+	private long bytes = 0;
+	private int streams = 0;
+
+	/**
+	 * @param recording the path of a recording made by a WireRecorder
+	 */
+	public WireReplayer(Path recording) {
+		this.recording = recording;
+	}
+
+	/**
+	 * Replays the recording to a server, returning once it is fully sent and every replayed connection is closed.
+	 * @param host the host of the server
+	 * @param port the port of the server
+	 * @param realTime whether to send at the speed recorded, or else as fast as possible
+	 * @throws IOException if the recording can't be read, or a socket to the server can't be opened or written
+	 * @throws BadDataException if the file is not a recording
+	 */
+	public void replay(String host, int port, boolean realTime) throws IOException, BadDataException {
+		records = 0;
+		bytes = 0;
+		streams = 0;
+		Map<Integer, Socket> sockets = new HashMap<Integer, Socket>();
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(recording), 1 << 16)) {
+			if (StreamUtils.readInt(in) != WireRecorder.MAGIC)
+				throw new BadDataException(recording + " is not a wire recording");
+			int version = StreamUtils.readInt(in);
+			if (version != WireRecorder.VERSION)
+				throw new BadDataException("Unsupported wire recording version " + version);
+			StreamUtils.readLong(in);
+			long start = System.nanoTime();
+			long recorded = 0;
+			while (true) {
+				int stream;
+				try {
+					stream = StreamUtils.readVarInt(in);
+				} catch (EOFException e) {
+					break;
+				}
+				if (stream == 0)
+					break;
+				recorded += TimeUnit.MICROSECONDS.toNanos(StreamUtils.readVarInt(in));
+				int length = StreamUtils.readVarInt(in) - 1;
+				byte[] chunk = null;
+				if (length >= 0) {
+					chunk = new byte[length];
+					StreamUtils.readFully(chunk, in);
+				}
+				if (realTime) {
+					long delay;
+					while ((delay = start + recorded - System.nanoTime()) > 0) {
+						LockSupport.parkNanos(delay);
+					}
+				}
+				Socket socket = sockets.get(stream);
+				if (chunk == null) {
+					if (socket != null)
+						socket.close();
+					sockets.remove(stream);
+				} else {
+					if (socket == null) {
+						socket = open(host, port);
+						sockets.put(stream, socket);
+						streams++;
+					}
+					socket.getOutputStream().write(chunk);
+					records++;
+					bytes += length;
+				}
+			}
+		} finally {
+			for (Socket socket : sockets.values()) {
+				socket.close();
+			}
+		}
+	}
+
+	/**
+	 * Replays the recording to connections made by the ConnectionFactory, accepted from a loopback socket for
+	 * the duration of the replay.
+	 * @param factory the ConnectionFactory with which to create the connections replayed to
+	 * @param realTime whether to send at the speed recorded, or else as fast as possible
+	 * @throws IOException if the recording can't be read
+	 * @throws BadDataException if the file is not a recording
+	 */
+	public void replay(ConnectionFactory factory, boolean realTime) throws IOException, BadDataException {
+		Semaphore accepted = new Semaphore(0);
+		Waiter waiter = new Waiter(socket -> {
+			try {
+				factory.createConnection(socket);
+			} finally {
+				accepted.release();
+			}
+		}, 0);
+		waiter.setDaemon(true);
+		waiter.start();
+		try {
+			replay("localhost", waiter.getPort(), realTime);
+			// the last sockets opened may not have been accepted yet, and would be lost with the server socket
+			accepted.acquireUninterruptibly(streams);
+		} finally {
+			waiter.terminate();
+		}
+	}
+
+	/**
+	 * Opens a socket to the server, and starts a thread to discard whatever the server sends on it.
+	 */
+	private Socket open(String host, int port) throws IOException {
+		Socket socket = new Socket(host, port);
+		socket.setTcpNoDelay(true);
+		InputStream in = socket.getInputStream();
+		Thread drain = new Thread(() -> {
+			byte[] discard = new byte[8192];
+			try {
+				while (in.read(discard) != -1)
+					;
+			} catch (IOException e) {
+				// the socket has been closed
+			}
+		}, "Wire replay drain thread");
+		drain.setDaemon(true);
+		drain.start();
+		return socket;
+	}
+
+	/**
+	 * @return the number of chunks sent by the last replay
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return the number of bytes sent by the last replay
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return the number of connections opened by the last replay
+	 */
+	public int getStreams() {
+		return streams;
+	}
+
+	/**
+	 * Replays a recording to a server.
+	 * @param args the path of the recording, the host and the port of the server, and optionally --fast to send as
+	 * fast as possible rather than in real time
+	 */
+	public static void main(String[] args) {
+		if (args.length < 3 || args.length > 4 || (args.length == 4 && !args[3].equals("--fast"))) {
+			System.err.println("Usage: WireReplayer <recording> <host> <port> [--fast]");
+			System.exit(1);
+		}
+		WireReplayer replayer = new WireReplayer(Paths.get(args[0]));
+		long start = System.nanoTime();
+		try {
+			replayer.replay(args[1], Integer.parseInt(args[2]), args.length < 4);
+		} catch (IOException | BadDataException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("Replayed %d connections, %d chunks and %d bytes in %.3f s%n", replayer.getStreams(),
+				replayer.getRecords(), replayer.getBytes(), seconds);
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.phoenixkahlo.testing;
+
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import com.phoenixkahlo.utils.BoundedBiMap;
+import com.phoenixkahlo.utils.EvictionPolicy;
+import com.phoenixkahlo.utils.LruEvictionPolicy;
+import com.phoenixkahlo.utils.TinyLfuEvictionPolicy;
+
+/**
+ * Links a random stream of keys, some used far more than others, into BoundedBiMaps of small and large
+ * capacities with each EvictionPolicy, and checks that every map stays within its capacity, that every
+ * link beyond it evicts exactly one pair, and that both sides still agree.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ */
+public class BoundedBiMapTester {
+
+	public static void main(String[] args) {
+		for (int capacity : new int[] {1, 2, 100}) {
+			test("LRU", capacity, c -> new LruEvictionPolicy<Integer>());
+			test("TinyLFU", capacity, TinyLfuEvictionPolicy::new);
+		}
+		System.out.println("All passed");
+	}
+
+	private static void test(String name, int capacity, IntFunction<? extends EvictionPolicy<Integer>> policy) {
+		BoundedBiMap<Integer, String> map = new BoundedBiMap<Integer, String>(capacity, policy);
+		int[] evictions = new int[1];
+		map.addEvictionListener((a, b) -> {
+			if (!b.equals("value " + a))
+				throw new RuntimeException(name + " evicted mismatched pair " + a + ", " + b);
+			evictions[0]++;
+		});
+		Random random = new Random(capacity);
+		int added = 0;
+		for (int i = 0; i < 100_000; i++) {
+			// a quarter of uses are of ten hot keys, the rest of a thousand cold ones
+			int key = random.nextInt(4) == 0 ? random.nextInt(10) : 10 + random.nextInt(1000);
+			if (random.nextInt(3) == 0) {
+				map.getB(key);
+				continue;
+			}
+			if (!map.containsA(key))
+				added++;
+			map.link(key, "value " + key);
+			if (map.size() > capacity)
+				throw new RuntimeException(name + " of capacity " + capacity + " holds " + map.size());
+			if (map.size() != added - evictions[0])
+				throw new RuntimeException(name + " of capacity " + capacity + " lost track of its pairs");
+			if (map.containsA(key) && !Integer.valueOf(key).equals(map.getA("value " + key)))
+				throw new RuntimeException(name + " of capacity " + capacity + " has unlinked sides");
+		}
+		System.out.println(name + " of capacity " + capacity + ": " + evictions[0] + " evictions, passed");
+	}
+
+}
@@ -7,8 +7,12 @@ import com.phoenixkahlo.networking.ClientConnection;
 
 public class ChatClient extends ClientConnection<ChatClient, ChatServer> {
 
+	private boolean interactive;
+	
 	public ChatClient() throws Exception {
 		super(new Socket("localhost", 4018), new ChatCoder());
+		interactive = true;
+		enableStringDictionary(1024);
 		start();
 		@SuppressWarnings("resource")
 		Scanner scanner = new Scanner(System.in);
@@ -18,8 +22,26 @@ public class ChatClient extends ClientConnection<ChatClient, ChatServer> {
 		}
 	}
 	
+	/**
+	 * Constructs and starts a ChatClient that sends nothing on its own, for driving programmatically.
+	 * Messages it receives are passed to received.
+	 */
+	public ChatClient(Socket socket) {
+		super(socket, new ChatCoder());
+		enableStringDictionary(1024);
+		start();
+	}
+	
 	public static void main(String[] args) throws Exception {
 		new ChatClient();
 	}
+	
+	/**
+	 * Is called with each message received, and prints it if interactive.
+	 */
+	protected void received(ChatMessage message) {
+		if (interactive)
+			System.out.println(message.getMessage());
+	}
 
 }
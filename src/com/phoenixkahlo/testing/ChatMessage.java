@@ -5,7 +5,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import com.phoenixkahlo.networking.Sendable;
-import com.phoenixkahlo.utils.StreamUtils;
+import com.phoenixkahlo.networking.StringDictionary;
 
 public class ChatMessage implements Sendable<ChatClient, ChatServer> {
 
@@ -16,22 +16,28 @@ public class ChatMessage implements Sendable<ChatClient, ChatServer> {
 	}
 	
 	public ChatMessage(InputStream in) throws IOException {
-		message = StreamUtils.readString(in);
+		message = StringDictionary.readString(in);
 	}
 	
 	@Override
 	public void write(OutputStream out) throws IOException {
-		StreamUtils.writeString(message, out);
+		StringDictionary.writeString(message, out);
 	}
 
 	@Override
 	public void effectClient(ChatClient connection) {
-		System.out.println(message);
+		connection.received(this);
 	}
 
 	@Override
 	public void effectServer(ChatServer connection) {
-		System.out.println(message);
+		if (connection.isInteractive())
+			System.out.println(message);
+		ChatServer.CONNECTIONS.forEach(server -> server.send(this));
+	}
+	
+	public String getMessage() {
+		return message;
 	}
 
 }
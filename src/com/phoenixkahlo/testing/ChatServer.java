@@ -2,13 +2,28 @@ package com.phoenixkahlo.testing;
 
 import java.net.Socket;
 
+import com.phoenixkahlo.networking.ConnectionRegistry;
 import com.phoenixkahlo.networking.ServerConnection;
 import com.phoenixkahlo.networking.Waiter;
 
 public class ChatServer extends ServerConnection<ChatClient, ChatServer> {
 
+	public static final ConnectionRegistry<ChatServer> CONNECTIONS = new ConnectionRegistry<ChatServer>();
+	
+	private boolean interactive;
+	
 	public ChatServer(Socket socket) {
+		this(socket, true);
+	}
+	
+	/**
+	 * @param interactive whether to print the messages relayed
+	 */
+	public ChatServer(Socket socket, boolean interactive) {
 		super(socket, new ChatCoder());
+		this.interactive = interactive;
+		enableStringDictionary(1024);
+		CONNECTIONS.add(this);
 		start();
 	}
 	
@@ -16,5 +31,9 @@ public class ChatServer extends ServerConnection<ChatClient, ChatServer> {
 		new Waiter(ChatServer::new, 4018).start();
 		System.out.println("waiting");
 	}
+	
+	public boolean isInteractive() {
+		return interactive;
+	}
 
 }
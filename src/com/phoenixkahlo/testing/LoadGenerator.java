@@ -0,0 +1,293 @@
+package com.phoenixkahlo.testing;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.phoenixkahlo.networking.ClientConnection;
+import com.phoenixkahlo.networking.Waiter;
+import com.phoenixkahlo.utils.LatencyHistogram;
+
+/**
+ * A headless load generator, which opens many QA or Chat clients to a server and drives them at a target
+ * throughput, reporting throughput and latency percentiles every second and in total.
+ * <p>
+ * In qa mode, each message is a QAQuestion that the server answers with a QAAnswer, and its latency is until
+ * the answer is received. In chat mode, each message is a ChatMessage that the server broadcasts to every
+ * client, and each delivery is measured separately, until it is received by that client.
+ * <p>
+ * Messages are sent on a fixed schedule, and latency is measured from when each was scheduled to be sent
+ * rather than from when it was sent. So when the server stalls and the senders fall behind, the messages
+ * held back by the stall count the time they were held back, rather than the stall being recorded once and
+ * hidden from the percentiles (the coordinated omission problem). Connections are opened on a fixed
+ * schedule likewise.
+ * <p>
+ * Usage: {@code LoadGenerator qa|chat [--host localhost] [--port 4018] [--connections 100]
+ * [--connect-rate 1000] [--rate 1000] [--duration 10] [--senders n] [--server]}, where rates are per second,
+ * the duration is in seconds, and --server starts a silent server of the mode in this process first.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ */
+public class LoadGenerator {
+
+	/**
+	 * How long to wait for messages in flight once sending ends, before counting them as lost.
+	 */
+	private static final long DRAIN_NANOS = 5_000_000_000L;
+
+	private boolean broadcast;
+	private String host;
+	private int port;
+	private int connections;
+	private double connectRate;
+	private double rate;
+	private long durationNanos;
+	private int senders;
+
+	private List<ClientConnection<?, ?>> clients = new ArrayList<ClientConnection<?, ?>>();
+	private LatencyHistogram connectLatency = new LatencyHistogram();
+	private LatencyHistogram latency = new LatencyHistogram();
+	private AtomicReference<LatencyHistogram> intervalLatency = new AtomicReference<LatencyHistogram>(
+			new LatencyHistogram());
+	private LongAdder sent = new LongAdder();
+	private LongAdder received = new LongAdder();
+	private LongAdder failures = new LongAdder();
+	private AtomicBoolean failureReported = new AtomicBoolean();
+
+	public LoadGenerator(boolean broadcast, String host, int port, int connections, double connectRate,
+			double rate, long durationNanos, int senders) {
+		this.broadcast = broadcast;
+		this.host = host;
+		this.port = port;
+		this.connections = connections;
+		this.connectRate = connectRate;
+		this.rate = rate;
+		this.durationNanos = durationNanos;
+		this.senders = senders;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0 || !(args[0].equals("qa") || args[0].equals("chat"))) {
+			System.err.println("Usage: LoadGenerator qa|chat [--host localhost] [--port 4018] [--connections 100] "
+					+ "[--connect-rate 1000] [--rate 1000] [--duration 10] [--senders n] [--server]");
+			System.exit(1);
+		}
+		boolean broadcast = args[0].equals("chat");
+		Map<String, String> options = new HashMap<String, String>();
+		for (int i = 1; i < args.length; i++) {
+			if (!args[i].startsWith("--"))
+				throw new IllegalArgumentException("Unexpected argument " + args[i]);
+			String name = args[i].substring(2);
+			if (name.equals("server"))
+				options.put(name, "true");
+			else if (i + 1 < args.length)
+				options.put(name, args[++i]);
+			else
+				throw new IllegalArgumentException("No value for " + args[i]);
+		}
+		int port = Integer.parseInt(options.getOrDefault("port", "4018"));
+		int connections = Integer.parseInt(options.getOrDefault("connections", "100"));
+		int senders = Integer.parseInt(options.getOrDefault("senders",
+				Integer.toString(Math.min(connections, Runtime.getRuntime().availableProcessors()))));
+		if (options.containsKey("server")) {
+			if (broadcast)
+				new Waiter(socket -> new ChatServer(noDelay(socket), false), port).start();
+			else
+				new Waiter(socket -> new QAServer(noDelay(socket), false), port).start();
+		}
+		LoadGenerator generator = new LoadGenerator(broadcast, options.getOrDefault("host", "localhost"), port,
+				connections, Double.parseDouble(options.getOrDefault("connect-rate", "1000")),
+				Double.parseDouble(options.getOrDefault("rate", "1000")),
+				(long) (Double.parseDouble(options.getOrDefault("duration", "10")) * 1_000_000_000L), senders);
+		generator.run();
+		// the clients' threads, and any server's, would keep the process alive
+		System.exit(0);
+	}
+
+	/**
+	 * Opens the connections, drives the traffic, and prints the results.
+	 */
+	public void run() throws InterruptedException {
+		connect();
+		System.out.println("Connected " + clients.size() + " of " + connections + ", connect latency (us) "
+				+ micros(connectLatency));
+		if (clients.isEmpty())
+			return;
+
+		long start = System.nanoTime() + 10_000_000;
+		long end = start + durationNanos;
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < senders; i++) {
+			int sender = i;
+			Thread thread = new Thread(() -> drive(sender, start, end), "LoadGenerator sender " + i);
+			thread.start();
+			threads.add(thread);
+		}
+		Thread reporter = new Thread(() -> report(start), "LoadGenerator reporter");
+		reporter.setDaemon(true);
+		reporter.start();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		long expected = sent.sum() * (broadcast ? clients.size() : 1);
+		long drainDeadline = System.nanoTime() + DRAIN_NANOS;
+		while (received.sum() < expected && System.nanoTime() < drainDeadline) {
+			Thread.sleep(10);
+		}
+		reporter.interrupt();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println();
+		System.out.println("Sent " + sent.sum() + ", received " + received.sum() + " of " + expected + ", lost "
+				+ (expected - received.sum()) + ", connection failures " + failures.sum());
+		System.out.printf("Throughput %.0f sent/s, %.0f received/s%n", sent.sum() / seconds,
+				received.sum() / seconds);
+		System.out.println("Latency (us) " + micros(latency));
+	}
+
+	/**
+	 * Opens the connections in order, each scheduled 1/connectRate after the last.
+	 */
+	private void connect() {
+		long start = System.nanoTime();
+		double period = 1e9 / connectRate;
+		for (int i = 0; i < connections; i++) {
+			long intended = start + (long) (i * period);
+			parkUntil(intended);
+			try {
+				Socket socket = noDelay(new Socket(host, port));
+				clients.add(broadcast ? new LoadChatClient(socket) : new LoadQAClient(socket));
+				connectLatency.record(System.nanoTime() - intended);
+			} catch (IOException e) {
+				failed(e);
+			}
+		}
+		clients = Collections.unmodifiableList(clients);
+	}
+
+	/**
+	 * Sends every senders-th message of the schedule, starting with the sender-th, round robin over the
+	 * clients.
+	 */
+	private void drive(int sender, long start, long end) {
+		double period = 1e9 / rate;
+		for (long i = sender;; i += senders) {
+			long intended = start + (long) (i * period);
+			if (intended - end >= 0)
+				return;
+			parkUntil(intended);
+			ClientConnection<?, ?> client = clients.get((int) (i % clients.size()));
+			if (broadcast)
+				((LoadChatClient) client).send(new ChatMessage("t" + intended));
+			else
+				((LoadQAClient) client).sendAndAwait(new QAQuestion("q"), reply -> received(intended));
+			sent.increment();
+		}
+	}
+
+	/**
+	 * Prints the throughput and latency of each second until interrupted.
+	 */
+	private void report(long start) {
+		long lastSent = 0;
+		long lastReceived = 0;
+		long next = start;
+		System.out.println("   time       sent/s   received/s     p50 (us)     p99 (us)    p999 (us)     max (us)");
+		while (!Thread.interrupted()) {
+			next += 1_000_000_000;
+			parkUntil(next);
+			LatencyHistogram interval = intervalLatency.getAndSet(new LatencyHistogram());
+			long sent = this.sent.sum();
+			long received = this.received.sum();
+			System.out.printf("%6ds %12d %12d %12d %12d %12d %12d%n", (next - start) / 1_000_000_000,
+					sent - lastSent, received - lastReceived, interval.getPercentile(50) / 1000,
+					interval.getPercentile(99) / 1000, interval.getPercentile(99.9) / 1000,
+					interval.getMax() / 1000);
+			lastSent = sent;
+			lastReceived = received;
+		}
+	}
+
+	private void received(long intended) {
+		long elapsed = System.nanoTime() - intended;
+		latency.record(elapsed);
+		intervalLatency.get().record(elapsed);
+		received.increment();
+	}
+
+	private void failed(Exception e) {
+		failures.increment();
+		if (failureReported.compareAndSet(false, true)) {
+			System.err.print("First connection failure: ");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Disables Nagle's algorithm on the socket, which would otherwise hold each small message back until
+	 * the last is acknowledged.
+	 */
+	private static Socket noDelay(Socket socket) {
+		try {
+			socket.setTcpNoDelay(true);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return socket;
+	}
+
+	private static void parkUntil(long deadline) {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+			LockSupport.parkNanos(remaining);
+		}
+	}
+
+	private static String micros(LatencyHistogram histogram) {
+		return "p50=" + histogram.getPercentile(50) / 1000 + " p99=" + histogram.getPercentile(99) / 1000
+				+ " p999=" + histogram.getPercentile(99.9) / 1000 + " max=" + histogram.getMax() / 1000;
+	}
+
+	private class LoadQAClient extends QAClient {
+
+		LoadQAClient(Socket socket) {
+			super(socket);
+		}
+
+		@Override
+		protected void connectionFailed(Exception e) {
+			failed(e);
+			disconnect();
+		}
+
+	}
+
+	private class LoadChatClient extends ChatClient {
+
+		LoadChatClient(Socket socket) {
+			super(socket);
+		}
+
+		@Override
+		protected void received(ChatMessage message) {
+			String text = message.getMessage();
+			if (text.startsWith("t"))
+				LoadGenerator.this.received(Long.parseLong(text.substring(1)));
+		}
+
+		@Override
+		protected void connectionFailed(Exception e) {
+			failed(e);
+			disconnect();
+		}
+
+	}
+
+}
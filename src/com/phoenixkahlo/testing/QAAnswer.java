@@ -28,7 +28,8 @@ public class QAAnswer extends SimpleReply<QAClient, QAServer> {
 	
 	@Override
 	public void effectClient(QAClient connection) {
-		System.out.println("Answer: " + answer);
+		if (connection.isInteractive())
+			System.out.println("Answer: " + answer);
 	}
 
 	@Override
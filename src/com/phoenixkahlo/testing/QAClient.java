@@ -7,8 +7,11 @@ import com.phoenixkahlo.networking.ReplyClientConnection;
 
 public class QAClient extends ReplyClientConnection<QAClient, QAServer> {
 
+	private boolean interactive;
+	
 	public QAClient() throws Exception {
 		super(new Socket("localhost", 4018), new QACoder());
+		interactive = true;
 		start();
 		Scanner scanner = new Scanner(System.in);
 		String question = scanner.nextLine();
@@ -18,9 +21,22 @@ public class QAClient extends ReplyClientConnection<QAClient, QAServer> {
 		sendAndAwait(sendable, reply -> System.out.println("reply received"));
 		System.out.println("sent");
 	}
+	
+	/**
+	 * Constructs and starts a QAClient that asks nothing on its own and prints nothing, for driving
+	 * programmatically.
+	 */
+	public QAClient(Socket socket) {
+		super(socket, new QACoder());
+		start();
+	}
 
 	public static void main(String[] args) throws Exception {
 		new QAClient();
 	}
 	
+	public boolean isInteractive() {
+		return interactive;
+	}
+	
 }
@@ -3,7 +3,6 @@ package com.phoenixkahlo.testing;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Scanner;
 
 import com.phoenixkahlo.networking.SimpleRepliable;
 import com.phoenixkahlo.utils.StreamUtils;
@@ -32,10 +31,7 @@ public class QAQuestion extends SimpleRepliable<QAClient, QAServer> {
 
 	@Override
 	public void effectServer(QAServer connection) {
-		System.out.println("Question: " + question);
-		Scanner scanner = new Scanner(System.in);
-		connection.sendReplyTo(new QAAnswer(scanner.nextLine()), this);
-		scanner.close();
+		connection.sendReplyTo(new QAAnswer(connection.answer(question)), this);
 	}
 
 }
@@ -3,6 +3,7 @@ package com.phoenixkahlo.testing;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
+import java.util.Scanner;
 
 import com.phoenixkahlo.networking.BadDataException;
 import com.phoenixkahlo.networking.ReplyServerConnection;
@@ -11,8 +12,18 @@ import com.phoenixkahlo.networking.Waiter;
 
 public class QAServer extends ReplyServerConnection<QAClient, QAServer> {
 
+	private boolean interactive;
+	
 	public QAServer(Socket socket) {
+		this(socket, true);
+	}
+	
+	/**
+	 * @param interactive whether to answer questions from System.in, or else echo them back silently
+	 */
+	public QAServer(Socket socket, boolean interactive) {
 		super(socket, new QACoder());
+		this.interactive = interactive;
 		start();
 	}
 	
@@ -24,8 +35,23 @@ public class QAServer extends ReplyServerConnection<QAClient, QAServer> {
 	@Override
 	protected Sendable<QAClient, QAServer> read(InputStream in) throws IOException, BadDataException {
 		Sendable<QAClient, QAServer> sendable = super.read(in);
-		System.out.println("Read " + sendable);
+		if (interactive)
+			System.out.println("Read " + sendable);
 		return sendable;
 	}
+	
+	public String answer(String question) {
+		if (!interactive)
+			return question;
+		System.out.println("Question: " + question);
+		Scanner scanner = new Scanner(System.in);
+		String answer = scanner.nextLine();
+		scanner.close();
+		return answer;
+	}
+	
+	public boolean isInteractive() {
+		return interactive;
+	}
 
 }
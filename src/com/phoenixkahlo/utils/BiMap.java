@@ -1,26 +1,19 @@
 package com.phoenixkahlo.utils;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * A bidirectional, symmetrical map in which lookups can be performed from either side.
+ * A bidirectional, symmetrical map in which lookups can be performed from either side. Is backed by a hash
+ * index in each direction, so lookups, links and removals from either side are expected O(1).
  * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
  * @param <A> the type for one side of the map
  * @param <B> the type for one side of the map
  */
 public class BiMap<A, B> {
 
-	private class Pair {
-		A a;
-		B b;
-		Pair(A a, B b) {
-			this.a = a;
-			this.b = b;
-		}
-	}
-	
-	private List<Pair> pairs = new ArrayList<Pair>();
+	private Map<A, B> aToB = new LinkedHashMap<A, B>();
+	private Map<B, A> bToA = new LinkedHashMap<B, A>();
 	
 	/**
 	 * Links a and b, such that getB(a) will return b and getA(b) will return a
@@ -30,36 +23,32 @@ public class BiMap<A, B> {
 	 * a and b both exist in the map and are not linked together
 	 */
 	public void link(A a, B b) throws RuntimeException {
-		for (Pair pair : pairs) {
-			if (pair.a.equals(a)) {
-				// a exists
-				if (pair.b.equals(b)) {
-					// a and b both exist and are linked together
-					return;
-				} else {
-					// a exists and is not linked to b, if b exists
-					for (Pair pair2 : pairs) {
-						if (pair2.b.equals(b)) {
-							// a and b both exist and are not linked together
-							throw new RuntimeException("Duplicate items");
-						}
-					}
-					// a exists and b does not exist
-					pair.b = b;
-					return;
-				}
-			}
-		}
-		// a does not exist
-		for (Pair pair : pairs) {
-			if (pair.b.equals(b)) {
-				// a does not exist but b does
-				pair.a = a;
+		B oldB = aToB.get(a);
+		A oldA = bToA.get(b);
+		if (oldB != null) {
+			// a exists
+			if (oldB.equals(b)) {
+				// a and b both exist and are linked together
 				return;
+			} else if (oldA != null) {
+				// a and b both exist and are not linked together
+				throw new RuntimeException("Duplicate items");
+			} else {
+				// a exists and b does not exist
+				bToA.remove(oldB);
+				aToB.put(a, b);
+				bToA.put(b, a);
 			}
+		} else if (oldA != null) {
+			// a does not exist but b does
+			aToB.remove(oldA);
+			aToB.put(a, b);
+			bToA.put(b, a);
+		} else {
+			// neither a nor b exist
+			aToB.put(a, b);
+			bToA.put(b, a);
 		}
-		// neither a nor b exist
-		pairs.add(new Pair(a, b));
 	}
 	
 	/**
@@ -68,10 +57,7 @@ public class BiMap<A, B> {
 	 * @return the A linked to b, or null if b is not present
 	 */
 	public A getA(B b) {
-		for (Pair pair : pairs) {
-			if (pair.b.equals(b)) return pair.a;
-		}
-		return null;
+		return bToA.get(b);
 	}
 	
 	/**
@@ -80,10 +66,7 @@ public class BiMap<A, B> {
 	 * @return the B linked to a, or null if a is not present
 	 */
 	public B getB(A a) {
-		for (Pair pair : pairs) {
-			if (pair.a.equals(a)) return pair.b;
-		}
-		return null;
+		return aToB.get(a);
 	}
 	
 	/**
@@ -92,10 +75,7 @@ public class BiMap<A, B> {
 	 * @return if a is present in the A side
 	 */
 	public boolean containsA(A a) {
-		for (Pair pair : pairs) {
-			if (pair.a.equals(a)) return true;
-		}
-		return false;
+		return aToB.containsKey(a);
 	}
 	
 	/**
@@ -104,21 +84,68 @@ public class BiMap<A, B> {
 	 * @return if b is present in the B side
 	 */
 	public boolean containsB(B b) {
-		for (Pair pair : pairs) {
-			if (pair.b.equals(b)) return true;
-		}
-		return false;
+		return bToA.containsKey(b);
+	}
+	
+	/**
+	 * Removes a and the B linked to it
+	 * @param a the A to remove
+	 * @return the B that was linked to a, or null if a was not present
+	 */
+	public B removeA(A a) {
+		B b = aToB.remove(a);
+		if (b != null)
+			bToA.remove(b);
+		return b;
+	}
+	
+	/**
+	 * Removes b and the A linked to it
+	 * @param b the B to remove
+	 * @return the A that was linked to b, or null if b was not present
+	 */
+	public A removeB(B b) {
+		A a = bToA.remove(b);
+		if (a != null)
+			aToB.remove(a);
+		return a;
+	}
+	
+	/**
+	 * Returns the number of linked pairs
+	 * @return the number of linked pairs
+	 */
+	public int size() {
+		return aToB.size();
+	}
+	
+	/**
+	 * Removes all linked pairs
+	 */
+	public void clear() {
+		aToB.clear();
+		bToA.clear();
+	}
+	
+	/**
+	 * Returns an immutable, compact copy of this map, for tables that are built once and then read often
+	 * @return a FrozenBiMap with the same links as this
+	 */
+	public FrozenBiMap<A, B> freeze() {
+		return FrozenBiMap.of(aToB);
 	}
 	
 	@Override
 	public String toString() {
-		String out = "[";
-		for (int i = 0; i < pairs.size(); i++) {
-			out += pairs.get(i).a + ":" + pairs.get(i).b;
-			if (i < pairs.size() - 1) out += ", ";
+		StringBuilder out = new StringBuilder("[");
+		boolean first = true;
+		for (Map.Entry<A, B> entry : aToB.entrySet()) {
+			if (!first) out.append(", ");
+			out.append(entry.getKey()).append(":").append(entry.getValue());
+			first = false;
 		}
-		out += "]";
-		return out;
+		out.append("]");
+		return out.toString();
 	}
 	
 }
@@ -0,0 +1,115 @@
+package com.phoenixkahlo.utils;
+
+import java.io.EOFException;
+
+/**
+ * Reads values packed into a byte array by a BitWriter.
+ * Each method is symmetrical to the corresponding method of BitWriter.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @see com.phoenixkahlo.utils.BitWriter
+ */
+public class BitReader {
+
+	private byte[] bytes;
+	private long bits;
+	private long limit;
+
+	/**
+	 * @param bytes the bytes written by a BitWriter
+	 */
+	public BitReader(byte[] bytes) {
+		this.bytes = bytes;
+		this.bits = 0;
+		this.limit = bytes.length * 8L;
+	}
+
+	public boolean readBoolean() throws EOFException {
+		if (bits >= limit)
+			throw new EOFException();
+		boolean b = (bytes[(int) (bits >>> 3)] & (0x80 >>> (bits & 7))) != 0;
+		bits++;
+		return b;
+	}
+
+	/**
+	 * Reads count bits as the lowest bits of a value whose other bits are zero.
+	 * @param count the number of bits to read, from 0 to 64
+	 */
+	public long readBits(int count) throws EOFException {
+		if (count < 0 || count > 64)
+			throw new IllegalArgumentException("Invalid bit count " + count);
+		if (bits + count > limit)
+			throw new EOFException();
+		long value = 0;
+		while (count > 0) {
+			int offset = (int) (bits & 7);
+			int chunk = Math.min(8 - offset, count);
+			int part = (bytes[(int) (bits >>> 3)] >>> (8 - offset - chunk)) & ((1 << chunk) - 1);
+			value = (value << chunk) | part;
+			bits += chunk;
+			count -= chunk;
+		}
+		return value;
+	}
+
+	public long readUnsigned() throws EOFException {
+		long value = readGamma();
+		if (value < 0)
+			throw new EOFException("Invalid unsigned value");
+		return value;
+	}
+
+	public long readSigned() throws EOFException {
+		long zigzag = readGamma();
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	public int readInt() throws EOFException {
+		return (int) readBits(32);
+	}
+
+	public long readLong() throws EOFException {
+		return readBits(64);
+	}
+
+	public float readFloat() throws EOFException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	public double readDouble() throws EOFException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	public String readString() throws EOFException {
+		long length = readUnsigned();
+		if (length > (limit - bits) / 8)
+			throw new EOFException();
+		byte[] encoded = new byte[(int) length];
+		for (int i = 0; i < encoded.length; i++) {
+			encoded[i] = (byte) readBits(8);
+		}
+		return StreamUtils.bytesToString(encoded);
+	}
+
+	/**
+	 * Reads a value written by BitWriter.writeGamma, as unsigned.
+	 */
+	private long readGamma() throws EOFException {
+		int length = 0;
+		while (!readBoolean()) {
+			if (++length > 64)
+				throw new EOFException("Invalid gamma code");
+		}
+		// the leading one, which is bit 64 and overflows to zero when length is 64
+		long coded = length == 64 ? 0 : 1L << length;
+		return (coded | readBits(length)) - 1;
+	}
+
+	/**
+	 * @return the number of bits read
+	 */
+	public long getBitCount() {
+		return bits;
+	}
+
+}
@@ -0,0 +1,139 @@
+package com.phoenixkahlo.utils;
+
+import java.util.Arrays;
+
+/**
+ * Packs values into a growing byte array using exactly as many bits as each needs, most significant bit
+ * first, such that a boolean costs a bit and a value known to be below 1024 costs ten.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @see com.phoenixkahlo.utils.BitReader
+ */
+public class BitWriter {
+
+	private byte[] bytes;
+	private long bits = 0;
+
+	public BitWriter() {
+		this(64);
+	}
+
+	/**
+	 * @param capacity the number of bytes initially allocated
+	 */
+	public BitWriter(int capacity) {
+		bytes = new byte[Math.max(capacity, 1)];
+	}
+
+	public void writeBoolean(boolean b) {
+		ensureCapacity(1);
+		if (b)
+			bytes[(int) (bits >>> 3)] |= 0x80 >>> (bits & 7);
+		bits++;
+	}
+
+	/**
+	 * Writes the lowest count bits of the value.
+	 * @param value the value to write
+	 * @param count the number of bits to write, from 0 to 64
+	 */
+	public void writeBits(long value, int count) {
+		if (count < 0 || count > 64)
+			throw new IllegalArgumentException("Invalid bit count " + count);
+		ensureCapacity(count);
+		while (count > 0) {
+			int offset = (int) (bits & 7);
+			int chunk = Math.min(8 - offset, count);
+			int part = (int) (value >>> (count - chunk)) & ((1 << chunk) - 1);
+			bytes[(int) (bits >>> 3)] |= part << (8 - offset - chunk);
+			bits += chunk;
+			count -= chunk;
+		}
+	}
+
+	/**
+	 * Writes a non-negative value in a number of bits that grows with its magnitude: a value below 2^k costs
+	 * about 2k + 1 bits, so that small values such as the gaps between sorted indices cost a few bits each.
+	 * @param value the non-negative value to write
+	 */
+	public void writeUnsigned(long value) {
+		if (value < 0)
+			throw new IllegalArgumentException("Negative value " + value);
+		writeGamma(value);
+	}
+
+	/**
+	 * Writes a value in a number of bits that grows with its distance from zero, zigzag encoded.
+	 */
+	public void writeSigned(long value) {
+		writeGamma((value << 1) ^ (value >> 63));
+	}
+
+	public void writeInt(int n) {
+		writeBits(n, 32);
+	}
+
+	public void writeLong(long n) {
+		writeBits(n, 64);
+	}
+
+	public void writeFloat(float n) {
+		writeBits(Float.floatToIntBits(n), 32);
+	}
+
+	public void writeDouble(double n) {
+		writeBits(Double.doubleToLongBits(n), 64);
+	}
+
+	/**
+	 * Writes the String as its length followed by its UTF-8 bytes.
+	 */
+	public void writeString(String string) {
+		byte[] encoded = StreamUtils.stringToBytes(string);
+		writeUnsigned(encoded.length);
+		for (byte b : encoded) {
+			writeBits(b, 8);
+		}
+	}
+
+	/**
+	 * @return the number of bits written
+	 */
+	public long getBitCount() {
+		return bits;
+	}
+
+	/**
+	 * @return the bits written, padded with zeros to a whole number of bytes
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(bytes, (int) ((bits + 7) >>> 3));
+	}
+
+	/**
+	 * Discards everything written, so that the BitWriter can be reused.
+	 */
+	public void reset() {
+		Arrays.fill(bytes, 0, (int) Math.min(bytes.length, (bits + 7) >>> 3), (byte) 0);
+		bits = 0;
+	}
+
+	/**
+	 * Writes the Elias gamma code of the value + 1, taking the value as unsigned: the length of the code in
+	 * unary, then the code after its leading one. The code of 2^64 - 1 is 65 bits long, and written as 64
+	 * zeros, a one, and 64 zeros.
+	 */
+	private void writeGamma(long value) {
+		long coded = value + 1;
+		int length = coded == 0 ? 64 : 63 - Long.numberOfLeadingZeros(coded);
+		writeBits(0, length);
+		writeBoolean(true);
+		writeBits(coded, length);
+	}
+
+	private void ensureCapacity(int moreBits) {
+		long needed = (bits + moreBits + 7) >>> 3;
+		if (needed > bytes.length)
+			bytes = Arrays.copyOf(bytes, (int) Math.max(needed, bytes.length * 2L));
+	}
+
+}
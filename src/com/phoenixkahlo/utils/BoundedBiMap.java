@@ -0,0 +1,172 @@
+package com.phoenixkahlo.utils;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * A BiMap with a capacity, such as a per-connection dictionary or a cache of sessions, which evicts pairs
+ * chosen by an EvictionPolicy once it holds more than its capacity. Lookups from either side count as use
+ * of the pair. Links, lookups and removals from either side are O(1) if the policy's operations are.
+ * <p>
+ * Like BiMap, is not thread-safe. Null items are not supported.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> the type for one side of the map, by which the policy tracks pairs
+ * @param <B> the type for one side of the map
+ * @see com.phoenixkahlo.utils.LruEvictionPolicy
+ * @see com.phoenixkahlo.utils.TinyLfuEvictionPolicy
+ */
+public class BoundedBiMap<A, B> {
+
+	private BiMap<A, B> map = new BiMap<A, B>();
+	private int capacity;
+	private EvictionPolicy<A> policy;
+	private CopyOnWriteArrayList<BiConsumer<? super A, ? super B>> evictionListeners =
+			new CopyOnWriteArrayList<BiConsumer<? super A, ? super B>>();
+
+	/**
+	 * Constructs a BoundedBiMap which evicts the least recently used pair.
+	 * @param capacity the greatest number of pairs it will hold
+	 */
+	public BoundedBiMap(int capacity) {
+		this(capacity, c -> new LruEvictionPolicy<A>());
+	}
+
+	/**
+	 * Constructs a BoundedBiMap with a policy of its own, created for its capacity, such as with
+	 * {@code TinyLfuEvictionPolicy::new}.
+	 * @param capacity the greatest number of pairs it will hold
+	 * @param policyFactory creates the policy, tracking pairs by their A, given the capacity
+	 */
+	public BoundedBiMap(int capacity, IntFunction<? extends EvictionPolicy<A>> policyFactory) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity " + capacity + " less than 1");
+		this.capacity = capacity;
+		this.policy = policyFactory.apply(capacity);
+	}
+
+	/**
+	 * Adds a listener to be called with each pair that is evicted, but not with pairs that are removed or
+	 * replaced by a link.
+	 */
+	public void addEvictionListener(BiConsumer<? super A, ? super B> listener) {
+		evictionListeners.add(listener);
+	}
+
+	/**
+	 * Links a and b, such that getB(a) will return b and getA(b) will return a, and then evicts pairs until
+	 * there are no more than the capacity. The policy may choose to evict the new pair itself.
+	 * @param a the object to link to b
+	 * @param b the object to link to a
+	 * @throws RuntimeException if the linkage would force an invalid state, eg. if objects equal to
+	 * a and b both exist in the map and are not linked together
+	 */
+	public void link(A a, B b) throws RuntimeException {
+		B oldB = map.getB(a);
+		A oldA = map.getA(b);
+		map.link(a, b);
+		if (oldB != null) {
+			// a exists, and either was linked to b or has been relinked
+			policy.accessed(a);
+			return;
+		}
+		if (oldA != null)
+			// b was linked to another A, which has been replaced
+			policy.removed(oldA);
+		policy.added(a);
+		while (map.size() > capacity) {
+			A victim = policy.victim();
+			B evicted = map.removeA(victim);
+			for (BiConsumer<? super A, ? super B> listener : evictionListeners) {
+				listener.accept(victim, evicted);
+			}
+		}
+	}
+
+	/**
+	 * Looks up the A linked to b, counting as use of the pair
+	 * @param b the item by which to look up the A
+	 * @return the A linked to b, or null if b is not present
+	 */
+	public A getA(B b) {
+		A a = map.getA(b);
+		if (a != null)
+			policy.accessed(a);
+		return a;
+	}
+
+	/**
+	 * Looks up the B linked to a, counting as use of the pair
+	 * @param a the item by which to look up the B
+	 * @return the B linked to a, or null if a is not present
+	 */
+	public B getB(A a) {
+		B b = map.getB(a);
+		if (b != null)
+			policy.accessed(a);
+		return b;
+	}
+
+	/**
+	 * Returns if contains the A value, without counting as use of the pair
+	 * @param a the value to look for
+	 * @return if a is present in the A side
+	 */
+	public boolean containsA(A a) {
+		return map.containsA(a);
+	}
+
+	/**
+	 * Returns if contains the B value, without counting as use of the pair
+	 * @param b the value to look for
+	 * @return if b is present in the B side
+	 */
+	public boolean containsB(B b) {
+		return map.containsB(b);
+	}
+
+	/**
+	 * Removes a and the B linked to it
+	 * @param a the A to remove
+	 * @return the B that was linked to a, or null if a was not present
+	 */
+	public B removeA(A a) {
+		B b = map.removeA(a);
+		if (b != null)
+			policy.removed(a);
+		return b;
+	}
+
+	/**
+	 * Removes b and the A linked to it
+	 * @param b the B to remove
+	 * @return the A that was linked to b, or null if b was not present
+	 */
+	public A removeB(B b) {
+		A a = map.removeB(b);
+		if (a != null)
+			policy.removed(a);
+		return a;
+	}
+
+	/**
+	 * Returns the number of linked pairs
+	 * @return the number of linked pairs
+	 */
+	public int size() {
+		return map.size();
+	}
+
+	/**
+	 * @return the greatest number of pairs this will hold
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public String toString() {
+		return map.toString();
+	}
+
+}
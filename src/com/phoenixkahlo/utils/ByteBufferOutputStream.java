@@ -0,0 +1,48 @@
+package com.phoenixkahlo.utils;
+
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * An OutputStream that writes into a ByteBuffer, advancing its position, so that code written against
+ * streams can encode into a send buffer or direct buffer without copying. StreamUtils encodes Strings
+ * straight into the ByteBuffer when given one of these.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @see com.phoenixkahlo.utils.ByteBufferInputStream
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+	private ByteBuffer buffer;
+
+	/**
+	 * @param buffer the ByteBuffer to write into, from its position up to its limit
+	 */
+	public ByteBufferOutputStream(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * @return the ByteBuffer written into, whose position is after the last byte written
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * @throws BufferOverflowException if the ByteBuffer is full
+	 */
+	@Override
+	public void write(int b) throws BufferOverflowException {
+		buffer.put((byte) b);
+	}
+
+	/**
+	 * @throws BufferOverflowException if the ByteBuffer hasn't room for len bytes
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) throws BufferOverflowException {
+		buffer.put(b, off, len);
+	}
+
+}
@@ -0,0 +1,296 @@
+package com.phoenixkahlo.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe BiMap, whose reads never block and whose updates are atomic across both directions. Once
+ * a read has returned a linked to b, any subsequent read will find b linked to a until another update.
+ * <p>
+ * Each item hashes to one of a number of stripes, each with a lock and a version. An update locks the stripes
+ * of every item it changes, in order, and makes the version of each odd while it changes the two directions.
+ * A read takes no lock: it rereads if the version of its item's stripe was odd or changed during the read,
+ * which only happens when an update to an item of the same stripe was in progress. Updates to items of
+ * different stripes proceed in parallel.
+ * <p>
+ * Null items are not supported.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> the type for one side of the map
+ * @param <B> the type for one side of the map
+ * @see com.phoenixkahlo.utils.BiMap
+ */
+public class ConcurrentBiMap<A, B> {
+
+	private Map<A, B> aToB = new ConcurrentHashMap<A, B>();
+	private Map<B, A> bToA = new ConcurrentHashMap<B, A>();
+
+	private ReentrantLock[] locks;
+	private AtomicLongArray versions;
+	private int mask;
+
+	/**
+	 * Constructs a ConcurrentBiMap with four stripes per available processor.
+	 */
+	public ConcurrentBiMap() {
+		this(Runtime.getRuntime().availableProcessors() * 4);
+	}
+
+	/**
+	 * Constructs a ConcurrentBiMap.
+	 * @param stripes the number of stripes, which is rounded up to a power of two
+	 */
+	public ConcurrentBiMap(int stripes) {
+		int count = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+		locks = new ReentrantLock[count];
+		for (int i = 0; i < count; i++) {
+			locks[i] = new ReentrantLock();
+		}
+		versions = new AtomicLongArray(count);
+		mask = count - 1;
+	}
+
+	/**
+	 * Links a and b, such that getB(a) will return b and getA(b) will return a
+	 * @param a the object to link to b
+	 * @param b the object to link to a
+	 * @throws RuntimeException if the linkage would force an invalid state, eg. if objects equal to
+	 * a and b both exist in the map and are not linked together
+	 */
+	public void link(A a, B b) throws RuntimeException {
+		while (true) {
+			B oldB = aToB.get(a);
+			A oldA = bToA.get(b);
+			int[] stripes = stripesOf(a, b, oldA, oldB);
+			lock(stripes);
+			try {
+				if (aToB.get(a) != oldB || bToA.get(b) != oldA)
+					// changed before the locks were acquired
+					continue;
+				if (oldB != null && oldB.equals(b))
+					// a and b both exist and are linked together
+					return;
+				if (oldB != null && oldA != null)
+					// a and b both exist and are not linked together
+					throw new RuntimeException("Duplicate items");
+				beginWrite(stripes);
+				try {
+					if (oldB != null)
+						// a exists and b does not exist
+						bToA.remove(oldB);
+					if (oldA != null)
+						// a does not exist but b does
+						aToB.remove(oldA);
+					aToB.put(a, b);
+					bToA.put(b, a);
+				} finally {
+					endWrite(stripes);
+				}
+				return;
+			} finally {
+				unlock(stripes);
+			}
+		}
+	}
+
+	/**
+	 * Looks up the A linked to b. Takes no lock.
+	 * @param b the item by which to look up the A
+	 * @return the A linked to b, or null if b is not present
+	 */
+	public A getA(B b) {
+		int stripe = stripeOf(b);
+		while (true) {
+			long version = versions.get(stripe);
+			if ((version & 1) == 0) {
+				A a = bToA.get(b);
+				if (versions.get(stripe) == version)
+					return a;
+			}
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Looks up the B linked to a. Takes no lock.
+	 * @param a the item by which to look up the B
+	 * @return the B linked to a, or null if a is not present
+	 */
+	public B getB(A a) {
+		int stripe = stripeOf(a);
+		while (true) {
+			long version = versions.get(stripe);
+			if ((version & 1) == 0) {
+				B b = aToB.get(a);
+				if (versions.get(stripe) == version)
+					return b;
+			}
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Returns if contains the A value
+	 * @param a the value to look for
+	 * @return if a is present in the A side
+	 */
+	public boolean containsA(A a) {
+		return getB(a) != null;
+	}
+
+	/**
+	 * Returns if contains the B value
+	 * @param b the value to look for
+	 * @return if b is present in the B side
+	 */
+	public boolean containsB(B b) {
+		return getA(b) != null;
+	}
+
+	/**
+	 * Removes a and the B linked to it
+	 * @param a the A to remove
+	 * @return the B that was linked to a, or null if a was not present
+	 */
+	public B removeA(A a) {
+		while (true) {
+			B b = aToB.get(a);
+			if (b == null)
+				return null;
+			int[] stripes = stripesOf(a, b, null, null);
+			lock(stripes);
+			try {
+				if (aToB.get(a) != b)
+					continue;
+				beginWrite(stripes);
+				try {
+					aToB.remove(a);
+					bToA.remove(b);
+				} finally {
+					endWrite(stripes);
+				}
+				return b;
+			} finally {
+				unlock(stripes);
+			}
+		}
+	}
+
+	/**
+	 * Removes b and the A linked to it
+	 * @param b the B to remove
+	 * @return the A that was linked to b, or null if b was not present
+	 */
+	public A removeB(B b) {
+		while (true) {
+			A a = bToA.get(b);
+			if (a == null)
+				return null;
+			int[] stripes = stripesOf(a, b, null, null);
+			lock(stripes);
+			try {
+				if (bToA.get(b) != a)
+					continue;
+				beginWrite(stripes);
+				try {
+					aToB.remove(a);
+					bToA.remove(b);
+				} finally {
+					endWrite(stripes);
+				}
+				return a;
+			} finally {
+				unlock(stripes);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of linked pairs, which may be momentarily inaccurate while updates are in progress
+	 * @return the number of linked pairs
+	 */
+	public int size() {
+		return aToB.size();
+	}
+
+	/**
+	 * Returns a consistent copy of this map, taken while holding every stripe's lock
+	 * @return a BiMap with the same links as this
+	 */
+	public BiMap<A, B> copy() {
+		int[] stripes = new int[locks.length];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = i;
+		}
+		lock(stripes);
+		try {
+			BiMap<A, B> copy = new BiMap<A, B>();
+			for (Map.Entry<A, B> entry : aToB.entrySet()) {
+				copy.link(entry.getKey(), entry.getValue());
+			}
+			return copy;
+		} finally {
+			unlock(stripes);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return copy().toString();
+	}
+
+	private int stripeOf(Object item) {
+		int h = item.hashCode();
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Returns the distinct stripes of the non-null items, in ascending order so that locking them in that
+	 * order cannot deadlock.
+	 */
+	private int[] stripesOf(Object a, Object b, Object oldA, Object oldB) {
+		int[] stripes = new int[4];
+		int count = 0;
+		for (Object item : new Object[] {a, b, oldA, oldB}) {
+			if (item == null)
+				continue;
+			int stripe = stripeOf(item);
+			boolean present = false;
+			for (int i = 0; i < count; i++) {
+				present |= stripes[i] == stripe;
+			}
+			if (!present)
+				stripes[count++] = stripe;
+		}
+		int[] distinct = Arrays.copyOf(stripes, count);
+		Arrays.sort(distinct);
+		return distinct;
+	}
+
+	private void lock(int[] stripes) {
+		for (int stripe : stripes) {
+			locks[stripe].lock();
+		}
+	}
+
+	private void unlock(int[] stripes) {
+		for (int i = stripes.length - 1; i >= 0; i--) {
+			locks[stripes[i]].unlock();
+		}
+	}
+
+	private void beginWrite(int[] stripes) {
+		for (int stripe : stripes) {
+			versions.incrementAndGet(stripe);
+		}
+	}
+
+	private void endWrite(int[] stripes) {
+		for (int stripe : stripes) {
+			versions.incrementAndGet(stripe);
+		}
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.phoenixkahlo.utils;
+
+/**
+ * A thread-safe BiMap for read-mostly tables, whose reads go to an immutable FrozenBiMap without any
+ * synchronization, and whose updates replace that snapshot with an updated copy. Updates cost time
+ * proportional to the size of the map, so should be rare.
+ * <p>
+ * Null items are not supported.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> the type for one side of the map
+ * @param <B> the type for one side of the map
+ * @see com.phoenixkahlo.utils.FrozenBiMap
+ */
+public class CopyOnWriteBiMap<A, B> {
+
+	private volatile FrozenBiMap<A, B> snapshot;
+
+	public CopyOnWriteBiMap() {
+		this(FrozenBiMap.<A, B>empty());
+	}
+
+	public CopyOnWriteBiMap(FrozenBiMap<A, B> snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Links a and b, such that getB(a) will return b and getA(b) will return a
+	 * @param a the object to link to b
+	 * @param b the object to link to a
+	 * @throws RuntimeException if the linkage would force an invalid state, eg. if objects equal to
+	 * a and b both exist in the map and are not linked together
+	 */
+	public synchronized void link(A a, B b) throws RuntimeException {
+		snapshot = snapshot.withLink(a, b);
+	}
+
+	/**
+	 * Looks up the A linked to b
+	 * @param b the item by which to look up the A
+	 * @return the A linked to b, or null if b is not present
+	 */
+	public A getA(B b) {
+		return snapshot.getA(b);
+	}
+
+	/**
+	 * Looks up the B linked to a
+	 * @param a the item by which to look up the B
+	 * @return the B linked to a, or null if a is not present
+	 */
+	public B getB(A a) {
+		return snapshot.getB(a);
+	}
+
+	/**
+	 * Returns if contains the A value
+	 * @param a the value to look for
+	 * @return if a is present in the A side
+	 */
+	public boolean containsA(A a) {
+		return snapshot.containsA(a);
+	}
+
+	/**
+	 * Returns if contains the B value
+	 * @param b the value to look for
+	 * @return if b is present in the B side
+	 */
+	public boolean containsB(B b) {
+		return snapshot.containsB(b);
+	}
+
+	/**
+	 * Removes a and the B linked to it
+	 * @param a the A to remove
+	 * @return the B that was linked to a, or null if a was not present
+	 */
+	public synchronized B removeA(A a) {
+		B b = snapshot.getB(a);
+		snapshot = snapshot.withoutA(a);
+		return b;
+	}
+
+	/**
+	 * Removes b and the A linked to it
+	 * @param b the B to remove
+	 * @return the A that was linked to b, or null if b was not present
+	 */
+	public synchronized A removeB(B b) {
+		A a = snapshot.getA(b);
+		snapshot = snapshot.withoutB(b);
+		return a;
+	}
+
+	/**
+	 * Returns the number of linked pairs
+	 * @return the number of linked pairs
+	 */
+	public int size() {
+		return snapshot.size();
+	}
+
+	/**
+	 * @return the current immutable state of this map
+	 */
+	public FrozenBiMap<A, B> snapshot() {
+		return snapshot;
+	}
+
+	@Override
+	public String toString() {
+		return snapshot.toString();
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.phoenixkahlo.utils;
+
+/**
+ * Decides which keys a bounded cache evicts. The cache tells the policy of each key it adds, accesses and
+ * removes, and asks it for a victim whenever it holds more keys than its capacity. Every operation should
+ * be O(1).
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <K> the type of keys
+ * @see com.phoenixkahlo.utils.BoundedBiMap
+ */
+public interface EvictionPolicy<K> {
+
+	/**
+	 * Records that the key was added to the cache.
+	 */
+	void added(K key);
+
+	/**
+	 * Records that the key, which is in the cache, was read.
+	 */
+	void accessed(K key);
+
+	/**
+	 * Records that the key was removed from the cache other than by being chosen as a victim.
+	 */
+	void removed(K key);
+
+	/**
+	 * Chooses a key to evict, and forgets it. May choose the key that was just added, if the policy judges
+	 * it less worth keeping than any other.
+	 * @return the key to evict
+	 */
+	K victim();
+
+}
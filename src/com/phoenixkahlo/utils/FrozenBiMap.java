@@ -0,0 +1,318 @@
+package com.phoenixkahlo.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An immutable BiMap, such as a table of protocol ids and names that is built once and then read on every
+ * message. The pairs are kept in two arrays, and each side is indexed by an open addressing table of
+ * positions in those arrays, so there are no per-entry objects and a lookup touches only a few contiguous
+ * arrays. Being immutable, it is safe to share between threads without synchronization.
+ * <p>
+ * The with and without methods return an updated copy rather than changing this, copying the arrays and
+ * tables directly rather than rehashing every pair.
+ * <p>
+ * Null items are not supported.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <A> the type for one side of the map
+ * @param <B> the type for one side of the map
+ * @see com.phoenixkahlo.utils.BiMap#freeze()
+ * @see com.phoenixkahlo.utils.CopyOnWriteBiMap
+ */
+public final class FrozenBiMap<A, B> {
+
+	private static final FrozenBiMap<?, ?> EMPTY = new FrozenBiMap<Object, Object>(new Table(0));
+
+	/**
+	 * @return the FrozenBiMap with no pairs
+	 */
+	@SuppressWarnings("unchecked")
+	public static <A, B> FrozenBiMap<A, B> empty() {
+		return (FrozenBiMap<A, B>) EMPTY;
+	}
+
+	/**
+	 * @return a FrozenBiMap of the pairs of the Map, whose values are distinct
+	 */
+	static <A, B> FrozenBiMap<A, B> of(Map<A, B> pairs) {
+		Table table = new Table(pairs.size());
+		for (Map.Entry<A, B> entry : pairs.entrySet()) {
+			table.put(entry.getKey(), entry.getValue());
+		}
+		return new FrozenBiMap<A, B>(table);
+	}
+
+	/**
+	 * The fields are final, and assigned only once their contents are complete, so that a FrozenBiMap
+	 * published through a data race is still seen whole.
+	 */
+	private final Object[] as;
+	private final Object[] bs;
+	private final int size;
+
+	/**
+	 * For each side, the position of each item in its array plus one, or zero for an empty slot.
+	 */
+	private final int[] aSlots;
+	private final int[] bSlots;
+
+	/**
+	 * Constructs a FrozenBiMap of the Table, which must not be changed afterwards.
+	 */
+	private FrozenBiMap(Table table) {
+		as = table.as;
+		bs = table.bs;
+		size = table.size;
+		aSlots = table.aSlots;
+		bSlots = table.bSlots;
+	}
+
+	/**
+	 * Looks up the A linked to b
+	 * @param b the item by which to look up the A
+	 * @return the A linked to b, or null if b is not present
+	 */
+	@SuppressWarnings("unchecked")
+	public A getA(B b) {
+		int slot = find(bSlots, bs, b);
+		return slot >= 0 ? (A) as[bSlots[slot] - 1] : null;
+	}
+
+	/**
+	 * Looks up the B linked to a
+	 * @param a the item by which to look up the B
+	 * @return the B linked to a, or null if a is not present
+	 */
+	@SuppressWarnings("unchecked")
+	public B getB(A a) {
+		int slot = find(aSlots, as, a);
+		return slot >= 0 ? (B) bs[aSlots[slot] - 1] : null;
+	}
+
+	/**
+	 * Returns if contains the A value
+	 * @param a the value to look for
+	 * @return if a is present in the A side
+	 */
+	public boolean containsA(A a) {
+		return find(aSlots, as, a) >= 0;
+	}
+
+	/**
+	 * Returns if contains the B value
+	 * @param b the value to look for
+	 * @return if b is present in the B side
+	 */
+	public boolean containsB(B b) {
+		return find(bSlots, bs, b) >= 0;
+	}
+
+	/**
+	 * Returns the number of linked pairs
+	 * @return the number of linked pairs
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a copy of this in which a and b are linked, with the same semantics as BiMap.link
+	 * @param a the object to link to b
+	 * @param b the object to link to a
+	 * @return this, if a and b are already linked together, or else the updated copy
+	 * @throws RuntimeException if the linkage would force an invalid state, eg. if objects equal to
+	 * a and b both exist in the map and are not linked together
+	 */
+	public FrozenBiMap<A, B> withLink(A a, B b) throws RuntimeException {
+		B oldB = getB(a);
+		A oldA = getA(b);
+		if (oldB != null && oldB.equals(b))
+			// a and b both exist and are linked together
+			return this;
+		if (oldB != null && oldA != null)
+			// a and b both exist and are not linked together
+			throw new RuntimeException("Duplicate items");
+		Table copy = copy(size + 1);
+		if (oldB != null)
+			// a exists and b does not exist
+			copy.delete(find(copy.aSlots, copy.as, a));
+		else if (oldA != null)
+			// a does not exist but b does
+			copy.delete(find(copy.aSlots, copy.as, oldA));
+		copy.put(a, b);
+		return new FrozenBiMap<A, B>(copy);
+	}
+
+	/**
+	 * Returns a copy of this without a and the B linked to it
+	 * @param a the A to remove
+	 * @return this, if a is not present, or else the updated copy
+	 */
+	public FrozenBiMap<A, B> withoutA(A a) {
+		int slot = find(aSlots, as, a);
+		if (slot < 0)
+			return this;
+		Table copy = copy(size);
+		copy.delete(slot);
+		return new FrozenBiMap<A, B>(copy);
+	}
+
+	/**
+	 * Returns a copy of this without b and the A linked to it
+	 * @param b the B to remove
+	 * @return this, if b is not present, or else the updated copy
+	 */
+	public FrozenBiMap<A, B> withoutB(B b) {
+		A a = getA(b);
+		return a == null ? this : withoutA(a);
+	}
+
+	/**
+	 * @return a mutable BiMap with the same links as this
+	 */
+	@SuppressWarnings("unchecked")
+	public BiMap<A, B> thaw() {
+		BiMap<A, B> thawed = new BiMap<A, B>();
+		for (int i = 0; i < size; i++) {
+			thawed.link((A) as[i], (B) bs[i]);
+		}
+		return thawed;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder out = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) out.append(", ");
+			out.append(as[i]).append(":").append(bs[i]);
+		}
+		out.append("]");
+		return out.toString();
+	}
+
+	/**
+	 * Copies the pairs and slot tables of this into a Table with room for the number of pairs, copying the
+	 * slot tables as they are if they are large enough.
+	 */
+	private Table copy(int capacity) {
+		if (capacity * 2 > aSlots.length) {
+			Table copy = new Table(capacity);
+			for (int i = 0; i < size; i++) {
+				copy.put(as[i], bs[i]);
+			}
+			return copy;
+		}
+		return new Table(Arrays.copyOf(as, capacity), Arrays.copyOf(bs, capacity), size, aSlots.clone(),
+				bSlots.clone());
+	}
+
+	/**
+	 * The arrays of a FrozenBiMap while they are being filled, before it is constructed.
+	 */
+	private static final class Table {
+
+		Object[] as;
+		Object[] bs;
+		int size;
+		int[] aSlots;
+		int[] bSlots;
+
+		/**
+		 * Constructs an empty Table with room for the number of pairs.
+		 */
+		Table(int capacity) {
+			as = new Object[capacity];
+			bs = new Object[capacity];
+			int slots = 4;
+			while (slots < capacity * 2) {
+				slots <<= 1;
+			}
+			aSlots = new int[slots];
+			bSlots = new int[slots];
+		}
+
+		Table(Object[] as, Object[] bs, int size, int[] aSlots, int[] bSlots) {
+			this.as = as;
+			this.bs = bs;
+			this.size = size;
+			this.aSlots = aSlots;
+			this.bSlots = bSlots;
+		}
+
+		/**
+		 * Adds a pair neither item of which is present.
+		 */
+		void put(Object a, Object b) {
+			if (a == null || b == null)
+				throw new NullPointerException();
+			as[size] = a;
+			bs[size] = b;
+			size++;
+			aSlots[~find(aSlots, as, a)] = size;
+			bSlots[~find(bSlots, bs, b)] = size;
+		}
+
+		/**
+		 * Removes the pair at the A slot, moving the last pair into its position.
+		 */
+		void delete(int aSlot) {
+			int position = aSlots[aSlot] - 1;
+			Object a = as[position];
+			Object b = bs[position];
+			unslot(aSlots, as, find(aSlots, as, a));
+			unslot(bSlots, bs, find(bSlots, bs, b));
+			int last = size - 1;
+			if (position != last) {
+				aSlots[find(aSlots, as, as[last])] = position + 1;
+				bSlots[find(bSlots, bs, bs[last])] = position + 1;
+				as[position] = as[last];
+				bs[position] = bs[last];
+			}
+			as[last] = null;
+			bs[last] = null;
+			size--;
+		}
+
+	}
+
+	/**
+	 * Empties the slot, shifting back the slots that probed past it so that lookups need no tombstones.
+	 */
+	private static void unslot(int[] slots, Object[] items, int slot) {
+		int mask = slots.length - 1;
+		slots[slot] = 0;
+		int next = slot;
+		while (true) {
+			next = (next + 1) & mask;
+			if (slots[next] == 0)
+				return;
+			int home = hash(items[slots[next] - 1]) & mask;
+			// the slot at next can move to slot only if its home is not cyclically within (slot, next]
+			if (slot <= next ? (home <= slot || home > next) : (home <= slot && home > next)) {
+				slots[slot] = slots[next];
+				slots[next] = 0;
+				slot = next;
+			}
+		}
+	}
+
+	/**
+	 * @return the slot of the item, or the complement of the empty slot at which it would be inserted
+	 */
+	private static int find(int[] slots, Object[] items, Object item) {
+		int mask = slots.length - 1;
+		int slot = hash(item) & mask;
+		while (slots[slot] != 0) {
+			if (items[slots[slot] - 1].equals(item))
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return ~slot;
+	}
+
+	private static int hash(Object item) {
+		int h = item.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
@@ -0,0 +1,141 @@
+package com.phoenixkahlo.utils;
+
+/**
+ * An open addressing hash table from int to int, with linear probing and backward shift deletion, such
+ * that there are no per-entry objects and no tombstones.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @see com.phoenixkahlo.utils.IntIntBiMap
+ */
+class IntIntTable {
+
+	private static final double LOAD_FACTOR = 0.6;
+
+	private int[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int mask;
+	private int size = 0;
+	private int threshold;
+
+	IntIntTable(int expected) {
+		int capacity = 8;
+		while (capacity * LOAD_FACTOR < expected) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new int[capacity];
+		used = new boolean[capacity];
+		mask = capacity - 1;
+		threshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+	/**
+	 * @return the slot of the key, or the complement of the empty slot at which it would be inserted
+	 */
+	private int find(int key) {
+		int slot = hash(key) & mask;
+		while (used[slot]) {
+			if (keys[slot] == key)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return ~slot;
+	}
+
+	boolean contains(int key) {
+		return find(key) >= 0;
+	}
+
+	/**
+	 * @return the value of the key, or missing if the key is not present
+	 */
+	int get(int key, int missing) {
+		int slot = find(key);
+		return slot >= 0 ? values[slot] : missing;
+	}
+
+	/**
+	 * Sets the value of the key, whether or not the key is already present.
+	 */
+	void put(int key, int value) {
+		int slot = find(key);
+		if (slot < 0) {
+			if (size >= threshold) {
+				grow();
+				slot = find(key);
+			}
+			slot = ~slot;
+			size++;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		used[slot] = true;
+	}
+
+	/**
+	 * Removes the key, shifting back the entries that probed past it so that lookups need no tombstones.
+	 * @return whether the key was present
+	 */
+	boolean remove(int key) {
+		int slot = find(key);
+		if (slot < 0)
+			return false;
+		used[slot] = false;
+		size--;
+		int next = slot;
+		while (true) {
+			next = (next + 1) & mask;
+			if (!used[next])
+				return true;
+			int home = hash(keys[next]) & mask;
+			// the entry at next can move to slot only if its home is not cyclically within (slot, next]
+			if (slot <= next ? (home <= slot || home > next) : (home <= slot && home > next)) {
+				keys[slot] = keys[next];
+				values[slot] = values[next];
+				used[slot] = true;
+				used[next] = false;
+				slot = next;
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Calls the visitor with each key and value.
+	 */
+	void forEach(Visitor visitor) {
+		for (int slot = 0; slot <= mask; slot++) {
+			if (used[slot])
+				visitor.visit(keys[slot], values[slot]);
+		}
+	}
+
+	static interface Visitor {
+		void visit(int key, int value);
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+		allocate(oldKeys.length * 2);
+		size = 0;
+		for (int slot = 0; slot < oldKeys.length; slot++) {
+			if (oldUsed[slot])
+				put(oldKeys[slot], oldValues[slot]);
+		}
+	}
+
+	static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
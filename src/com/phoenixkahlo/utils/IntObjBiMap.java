@@ -0,0 +1,159 @@
+package com.phoenixkahlo.utils;
+
+/**
+ * A BiMap from int to object, backed by an open addressing table in each direction, such that the ints are
+ * not boxed and there are no per-entry objects. Suited to mapping ids to objects, such as in SendableCoder.
+ * Since lookups of A return a primitive, a missing value chosen at construction is returned for items that
+ * are not present, and cannot itself be linked. Null B items are not supported.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <B> the type for the object side of the map
+ * @see com.phoenixkahlo.utils.BiMap
+ */
+public class IntObjBiMap<B> {
+
+	private IntObjTable<B> aToB;
+	private ObjIntTable<B> bToA;
+	private int missing;
+
+	/**
+	 * Constructs an IntObjBiMap with a missing value of -1.
+	 */
+	public IntObjBiMap() {
+		this(8, -1);
+	}
+
+	/**
+	 * @param expected the number of pairs for which to presize the tables
+	 * @param missing the value returned by lookups of A for items that are not present
+	 */
+	public IntObjBiMap(int expected, int missing) {
+		aToB = new IntObjTable<B>(expected);
+		bToA = new ObjIntTable<B>(expected);
+		this.missing = missing;
+	}
+
+	/**
+	 * Links a and b, such that getB(a) will return b and getA(b) will return a
+	 * @param a the int to link to b
+	 * @param b the object to link to a
+	 * @throws RuntimeException if the linkage would force an invalid state, eg. if a and an object equal to
+	 * b both exist in the map and are not linked together
+	 */
+	public void link(int a, B b) throws RuntimeException {
+		if (a == missing)
+			throw new IllegalArgumentException("Cannot link the missing value " + missing);
+		if (b == null)
+			throw new NullPointerException();
+		B oldB = aToB.get(a);
+		int oldA = bToA.get(b, missing);
+		if (oldB != null) {
+			// a exists
+			if (oldB.equals(b)) {
+				// a and b both exist and are linked together
+				return;
+			} else if (oldA != missing) {
+				// a and b both exist and are not linked together
+				throw new RuntimeException("Duplicate items");
+			} else {
+				// a exists and b does not exist
+				bToA.remove(oldB);
+			}
+		} else if (oldA != missing) {
+			// a does not exist but b does
+			aToB.remove(oldA);
+		}
+		aToB.put(a, b);
+		bToA.put(b, a);
+	}
+
+	/**
+	 * Looks up the A linked to b
+	 * @param b the item by which to look up the A
+	 * @return the A linked to b, or the missing value if b is not present
+	 */
+	public int getA(B b) {
+		return bToA.get(b, missing);
+	}
+
+	/**
+	 * Looks up the B linked to a
+	 * @param a the item by which to look up the B
+	 * @return the B linked to a, or null if a is not present
+	 */
+	public B getB(int a) {
+		return aToB.get(a);
+	}
+
+	/**
+	 * Returns if contains the A value
+	 * @param a the value to look for
+	 * @return if a is present in the A side
+	 */
+	public boolean containsA(int a) {
+		return aToB.contains(a);
+	}
+
+	/**
+	 * Returns if contains the B value
+	 * @param b the value to look for
+	 * @return if b is present in the B side
+	 */
+	public boolean containsB(B b) {
+		return bToA.contains(b);
+	}
+
+	/**
+	 * Removes a and the B linked to it
+	 * @param a the A to remove
+	 * @return the B that was linked to a, or null if a was not present
+	 */
+	public B removeA(int a) {
+		B b = aToB.get(a);
+		if (b != null) {
+			aToB.remove(a);
+			bToA.remove(b);
+		}
+		return b;
+	}
+
+	/**
+	 * Removes b and the A linked to it
+	 * @param b the B to remove
+	 * @return the A that was linked to b, or the missing value if b was not present
+	 */
+	public int removeB(B b) {
+		int a = bToA.get(b, missing);
+		if (a != missing) {
+			aToB.remove(a);
+			bToA.remove(b);
+		}
+		return a;
+	}
+
+	/**
+	 * Returns the number of linked pairs
+	 * @return the number of linked pairs
+	 */
+	public int size() {
+		return aToB.size();
+	}
+
+	/**
+	 * @return the value returned by lookups of A for items that are not present
+	 */
+	public int getMissing() {
+		return missing;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder out = new StringBuilder("[");
+		aToB.forEach((a, b) -> {
+			if (out.length() > 1) out.append(", ");
+			out.append(a).append(":").append(b);
+		});
+		out.append("]");
+		return out.toString();
+	}
+
+}
@@ -0,0 +1,135 @@
+package com.phoenixkahlo.utils;
+
+/**
+ * An open addressing hash table from int to object, with linear probing and backward shift deletion, such
+ * that there are no per-entry objects and no tombstones. Null values are not supported.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <V> the type of values
+ * @see com.phoenixkahlo.utils.IntObjBiMap
+ */
+class IntObjTable<V> {
+
+	private static final double LOAD_FACTOR = 0.6;
+
+	private int[] keys;
+	private Object[] values;
+	private int mask;
+	private int size = 0;
+	private int threshold;
+
+	IntObjTable(int expected) {
+		int capacity = 8;
+		while (capacity * LOAD_FACTOR < expected) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		threshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+	/**
+	 * @return the slot of the key, or the complement of the empty slot at which it would be inserted
+	 */
+	private int find(int key) {
+		int slot = IntIntTable.hash(key) & mask;
+		while (values[slot] != null) {
+			if (keys[slot] == key)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return ~slot;
+	}
+
+	boolean contains(int key) {
+		return find(key) >= 0;
+	}
+
+	/**
+	 * @return the value of the key, or null if the key is not present
+	 */
+	@SuppressWarnings("unchecked")
+	V get(int key) {
+		int slot = find(key);
+		return slot >= 0 ? (V) values[slot] : null;
+	}
+
+	/**
+	 * Sets the value of the key, whether or not the key is already present.
+	 */
+	void put(int key, V value) {
+		int slot = find(key);
+		if (slot < 0) {
+			if (size >= threshold) {
+				grow();
+				slot = find(key);
+			}
+			slot = ~slot;
+			size++;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+	}
+
+	/**
+	 * Removes the key, shifting back the entries that probed past it so that lookups need no tombstones.
+	 * @return whether the key was present
+	 */
+	boolean remove(int key) {
+		int slot = find(key);
+		if (slot < 0)
+			return false;
+		values[slot] = null;
+		size--;
+		int next = slot;
+		while (true) {
+			next = (next + 1) & mask;
+			if (values[next] == null)
+				return true;
+			int home = IntIntTable.hash(keys[next]) & mask;
+			// the entry at next can move to slot only if its home is not cyclically within (slot, next]
+			if (slot <= next ? (home <= slot || home > next) : (home <= slot && home > next)) {
+				keys[slot] = keys[next];
+				values[slot] = values[next];
+				values[next] = null;
+				slot = next;
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Calls the visitor with each key and value.
+	 */
+	@SuppressWarnings("unchecked")
+	void forEach(Visitor<V> visitor) {
+		for (int slot = 0; slot <= mask; slot++) {
+			if (values[slot] != null)
+				visitor.visit(keys[slot], (V) values[slot]);
+		}
+	}
+
+	static interface Visitor<V> {
+		void visit(int key, V value);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void grow() {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(oldKeys.length * 2);
+		size = 0;
+		for (int slot = 0; slot < oldKeys.length; slot++) {
+			if (oldValues[slot] != null)
+				put(oldKeys[slot], (V) oldValues[slot]);
+		}
+	}
+
+}
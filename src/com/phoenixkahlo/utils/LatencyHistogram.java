@@ -0,0 +1,138 @@
+package com.phoenixkahlo.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values, such as latencies in nanoseconds, which any number of threads can
+ * record into without locking. Values below 128 are counted exactly, and larger values are counted in
+ * buckets of 128 per power of two, such that any percentile is reported to within one percent of the value
+ * recorded. Its memory is fixed at about 57 kilobytes, whatever the range of values.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private LongAdder count = new LongAdder();
+	private LongAdder sum = new LongAdder();
+	private AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records the value once.
+	 * @param value the value to record, which is recorded as 0 if negative
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		counts.incrementAndGet(indexOf(value));
+		count.increment();
+		sum.add(value);
+		long previous;
+		while (value > (previous = max.get()) && !max.compareAndSet(previous, value)) {}
+	}
+
+	/**
+	 * @return the number of values recorded
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return the largest value recorded, exactly, or 0 if none have been
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return the mean of the values recorded, or 0 if none have been
+	 */
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * Returns the value below or at which the given percentage of the recorded values fall. While values are
+	 * being recorded, the result reflects some of them.
+	 * @param percentile the percentage, between 0 and 100
+	 * @return the percentile, or 0 if no values have been recorded
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += counts.get(i);
+		}
+		if (total == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank)
+				return Math.min(highestValueOf(i), max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	 * Adds the values recorded by another histogram to this one.
+	 * @param other the histogram whose values to add
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long n = other.counts.get(i);
+			if (n != 0)
+				counts.addAndGet(i, n);
+		}
+		count.add(other.count.sum());
+		sum.add(other.sum.sum());
+		long otherMax = other.max.get();
+		long previous;
+		while (otherMax > (previous = max.get()) && !max.compareAndSet(previous, otherMax)) {}
+	}
+
+	/**
+	 * Forgets every value recorded. Values recorded concurrently may be partly forgotten.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + " mean=" + (long) getMean() + " p50=" + getPercentile(50) + " p99="
+				+ getPercentile(99) + " p999=" + getPercentile(99.9) + " max=" + getMax();
+	}
+
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	/**
+	 * Returns the greatest value that is counted in the bucket.
+	 */
+	private static long highestValueOf(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		long lowest = (long) (SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+}
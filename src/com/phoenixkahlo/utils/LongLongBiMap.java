@@ -0,0 +1,173 @@
+package com.phoenixkahlo.utils;
+
+/**
+ * A BiMap from long to long, backed by an open addressing table in each direction, such that items are not
+ * boxed and there are no per-entry objects. Since lookups return a primitive, a missing value chosen at
+ * construction is returned for items that are not present, and cannot itself be linked.
+ * <p>
+ * An off heap LongLongBiMap keeps its tables in direct memory, so that a map of millions of pairs adds
+ * nothing for the garbage collector to scan or copy. Its memory is freed when it is garbage collected.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @see com.phoenixkahlo.utils.BiMap
+ */
+public class LongLongBiMap {
+
+	/**
+	 * Constructs a LongLongBiMap whose tables are kept in direct memory.
+	 * @param expected the number of pairs for which to presize the tables
+	 * @param missing the value returned by lookups of items that are not present
+	 */
+	public static LongLongBiMap offHeap(int expected, long missing) {
+		return new LongLongBiMap(new LongLongTable.OffHeap(expected), new LongLongTable.OffHeap(expected), missing);
+	}
+
+	private LongLongTable aToB;
+	private LongLongTable bToA;
+	private long missing;
+
+	/**
+	 * Constructs a LongLongBiMap with a missing value of -1.
+	 */
+	public LongLongBiMap() {
+		this(8, -1);
+	}
+
+	/**
+	 * @param expected the number of pairs for which to presize the tables
+	 * @param missing the value returned by lookups of items that are not present
+	 */
+	public LongLongBiMap(int expected, long missing) {
+		this(new LongLongTable.Heap(expected), new LongLongTable.Heap(expected), missing);
+	}
+
+	private LongLongBiMap(LongLongTable aToB, LongLongTable bToA, long missing) {
+		this.aToB = aToB;
+		this.bToA = bToA;
+		this.missing = missing;
+	}
+
+	/**
+	 * Links a and b, such that getB(a) will return b and getA(b) will return a
+	 * @param a the long to link to b
+	 * @param b the long to link to a
+	 * @throws RuntimeException if the linkage would force an invalid state, eg. if a and b both exist in the
+	 * map and are not linked together
+	 */
+	public void link(long a, long b) throws RuntimeException {
+		if (a == missing || b == missing)
+			throw new IllegalArgumentException("Cannot link the missing value " + missing);
+		long oldB = aToB.get(a, missing);
+		long oldA = bToA.get(b, missing);
+		if (oldB != missing) {
+			// a exists
+			if (oldB == b) {
+				// a and b both exist and are linked together
+				return;
+			} else if (oldA != missing) {
+				// a and b both exist and are not linked together
+				throw new RuntimeException("Duplicate items");
+			} else {
+				// a exists and b does not exist
+				bToA.remove(oldB);
+			}
+		} else if (oldA != missing) {
+			// a does not exist but b does
+			aToB.remove(oldA);
+		}
+		aToB.put(a, b);
+		bToA.put(b, a);
+	}
+
+	/**
+	 * Looks up the A linked to b
+	 * @param b the item by which to look up the A
+	 * @return the A linked to b, or the missing value if b is not present
+	 */
+	public long getA(long b) {
+		return bToA.get(b, missing);
+	}
+
+	/**
+	 * Looks up the B linked to a
+	 * @param a the item by which to look up the B
+	 * @return the B linked to a, or the missing value if a is not present
+	 */
+	public long getB(long a) {
+		return aToB.get(a, missing);
+	}
+
+	/**
+	 * Returns if contains the A value
+	 * @param a the value to look for
+	 * @return if a is present in the A side
+	 */
+	public boolean containsA(long a) {
+		return aToB.contains(a);
+	}
+
+	/**
+	 * Returns if contains the B value
+	 * @param b the value to look for
+	 * @return if b is present in the B side
+	 */
+	public boolean containsB(long b) {
+		return bToA.contains(b);
+	}
+
+	/**
+	 * Removes a and the B linked to it
+	 * @param a the A to remove
+	 * @return the B that was linked to a, or the missing value if a was not present
+	 */
+	public long removeA(long a) {
+		long b = aToB.get(a, missing);
+		if (b != missing) {
+			aToB.remove(a);
+			bToA.remove(b);
+		}
+		return b;
+	}
+
+	/**
+	 * Removes b and the A linked to it
+	 * @param b the B to remove
+	 * @return the A that was linked to b, or the missing value if b was not present
+	 */
+	public long removeB(long b) {
+		long a = bToA.get(b, missing);
+		if (a != missing) {
+			aToB.remove(a);
+			bToA.remove(b);
+		}
+		return a;
+	}
+
+	/**
+	 * Returns the number of linked pairs
+	 * @return the number of linked pairs
+	 */
+	public int size() {
+		return aToB.size();
+	}
+
+	/**
+	 * @return the value returned by lookups of items that are not present
+	 */
+	public long getMissing() {
+		return missing;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder out = new StringBuilder("[");
+		for (int slot = 0; slot < aToB.capacity(); slot++) {
+			if (!aToB.used(slot))
+				continue;
+			if (out.length() > 1) out.append(", ");
+			out.append(aToB.key(slot)).append(":").append(aToB.value(slot));
+		}
+		out.append("]");
+		return out.toString();
+	}
+
+}
@@ -0,0 +1,265 @@
+package com.phoenixkahlo.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An open addressing hash table from long to long, with linear probing and backward shift deletion, such
+ * that there are no per-entry objects and no tombstones. The slots are kept either in heap arrays or in
+ * direct memory, which the garbage collector doesn't scan.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @see com.phoenixkahlo.utils.LongLongBiMap
+ */
+abstract class LongLongTable {
+
+	private static final double LOAD_FACTOR = 0.6;
+
+	/**
+	 * A LongLongTable whose slots are kept in heap arrays.
+	 */
+	static class Heap extends LongLongTable {
+
+		private long[] keys;
+		private long[] values;
+		private boolean[] used;
+
+		Heap(int expected) {
+			super(expected);
+		}
+
+		@Override
+		void allocate(int capacity) {
+			keys = new long[capacity];
+			values = new long[capacity];
+			used = new boolean[capacity];
+		}
+
+		@Override
+		LongLongTable create(int expected) {
+			return new Heap(expected);
+		}
+
+		@Override
+		void takeStorage(LongLongTable other) {
+			Heap from = (Heap) other;
+			keys = from.keys;
+			values = from.values;
+			used = from.used;
+		}
+
+		@Override
+		boolean used(int slot) {
+			return used[slot];
+		}
+
+		@Override
+		long key(int slot) {
+			return keys[slot];
+		}
+
+		@Override
+		long value(int slot) {
+			return values[slot];
+		}
+
+		@Override
+		void set(int slot, long key, long value) {
+			keys[slot] = key;
+			values[slot] = value;
+			used[slot] = true;
+		}
+
+		@Override
+		void clear(int slot) {
+			used[slot] = false;
+		}
+
+	}
+
+	/**
+	 * A LongLongTable whose slots are kept in direct memory, which is freed when the table is garbage
+	 * collected. Each slot is 17 bytes: the key and value, and whether it is used.
+	 */
+	static class OffHeap extends LongLongTable {
+
+		private ByteBuffer entries;
+		private ByteBuffer used;
+
+		OffHeap(int expected) {
+			super(expected);
+		}
+
+		@Override
+		void allocate(int capacity) {
+			if (capacity > Integer.MAX_VALUE / 16)
+				throw new IllegalArgumentException("Capacity " + capacity + " too large for direct memory table");
+			entries = ByteBuffer.allocateDirect(capacity * 16);
+			used = ByteBuffer.allocateDirect(capacity);
+		}
+
+		@Override
+		LongLongTable create(int expected) {
+			return new OffHeap(expected);
+		}
+
+		@Override
+		void takeStorage(LongLongTable other) {
+			OffHeap from = (OffHeap) other;
+			entries = from.entries;
+			used = from.used;
+		}
+
+		@Override
+		boolean used(int slot) {
+			return used.get(slot) != 0;
+		}
+
+		@Override
+		long key(int slot) {
+			return entries.getLong(slot << 4);
+		}
+
+		@Override
+		long value(int slot) {
+			return entries.getLong((slot << 4) + 8);
+		}
+
+		@Override
+		void set(int slot, long key, long value) {
+			entries.putLong(slot << 4, key);
+			entries.putLong((slot << 4) + 8, value);
+			used.put(slot, (byte) 1);
+		}
+
+		@Override
+		void clear(int slot) {
+			used.put(slot, (byte) 0);
+		}
+
+	}
+
+	private int mask;
+	private int size = 0;
+	private int threshold;
+
+	LongLongTable(int expected) {
+		int capacity = 8;
+		while (capacity * LOAD_FACTOR < expected) {
+			capacity <<= 1;
+		}
+		mask = capacity - 1;
+		threshold = (int) (capacity * LOAD_FACTOR);
+		allocate(capacity);
+	}
+
+	abstract void allocate(int capacity);
+
+	abstract LongLongTable create(int expected);
+
+	/**
+	 * Replaces this table's storage with that of another table of the same class.
+	 */
+	abstract void takeStorage(LongLongTable other);
+
+	abstract boolean used(int slot);
+
+	abstract long key(int slot);
+
+	abstract long value(int slot);
+
+	abstract void set(int slot, long key, long value);
+
+	abstract void clear(int slot);
+
+	/**
+	 * @return the slot of the key, or the complement of the empty slot at which it would be inserted
+	 */
+	private int find(long key) {
+		int slot = hash(key) & mask;
+		while (used(slot)) {
+			if (key(slot) == key)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return ~slot;
+	}
+
+	boolean contains(long key) {
+		return find(key) >= 0;
+	}
+
+	/**
+	 * @return the value of the key, or missing if the key is not present
+	 */
+	long get(long key, long missing) {
+		int slot = find(key);
+		return slot >= 0 ? value(slot) : missing;
+	}
+
+	/**
+	 * Sets the value of the key, whether or not the key is already present.
+	 */
+	void put(long key, long value) {
+		int slot = find(key);
+		if (slot >= 0) {
+			set(slot, key, value);
+			return;
+		}
+		if (size >= threshold) {
+			grow();
+			slot = find(key);
+		}
+		set(~slot, key, value);
+		size++;
+	}
+
+	/**
+	 * Removes the key, shifting back the entries that probed past it so that lookups need no tombstones.
+	 * @return whether the key was present
+	 */
+	boolean remove(long key) {
+		int slot = find(key);
+		if (slot < 0)
+			return false;
+		clear(slot);
+		size--;
+		int next = slot;
+		while (true) {
+			next = (next + 1) & mask;
+			if (!used(next))
+				return true;
+			int home = hash(key(next)) & mask;
+			// the entry at next can move to slot only if its home is not cyclically within (slot, next]
+			boolean movable = slot <= next ? (home <= slot || home > next) : (home <= slot && home > next);
+			if (movable) {
+				set(slot, key(next), value(next));
+				clear(next);
+				slot = next;
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	int capacity() {
+		return mask + 1;
+	}
+
+	private void grow() {
+		LongLongTable larger = create(threshold * 2);
+		for (int slot = 0; slot <= mask; slot++) {
+			if (used(slot))
+				larger.put(key(slot), value(slot));
+		}
+		mask = larger.mask;
+		threshold = larger.threshold;
+		takeStorage(larger);
+	}
+
+	static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
@@ -0,0 +1,42 @@
+package com.phoenixkahlo.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An EvictionPolicy which evicts the least recently used key.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <K> the type of keys
+ */
+public class LruEvictionPolicy<K> implements EvictionPolicy<K> {
+
+	/**
+	 * The keys in order from least to most recently used.
+	 */
+	private Map<K, Boolean> order = new LinkedHashMap<K, Boolean>(16, 0.75f, true);
+
+	@Override
+	public void added(K key) {
+		order.put(key, Boolean.TRUE);
+	}
+
+	@Override
+	public void accessed(K key) {
+		order.get(key);
+	}
+
+	@Override
+	public void removed(K key) {
+		order.remove(key);
+	}
+
+	@Override
+	public K victim() {
+		Iterator<K> iterator = order.keySet().iterator();
+		K eldest = iterator.next();
+		iterator.remove();
+		return eldest;
+	}
+
+}
@@ -0,0 +1,119 @@
+package com.phoenixkahlo.utils;
+
+/**
+ * An open addressing hash table from object to int, with linear probing and backward shift deletion, such
+ * that there are no per-entry objects and no tombstones. Null keys are not supported.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <K> the type of keys
+ * @see com.phoenixkahlo.utils.IntObjBiMap
+ */
+class ObjIntTable<K> {
+
+	private static final double LOAD_FACTOR = 0.6;
+
+	private Object[] keys;
+	private int[] values;
+	private int mask;
+	private int size = 0;
+	private int threshold;
+
+	ObjIntTable(int expected) {
+		int capacity = 8;
+		while (capacity * LOAD_FACTOR < expected) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new Object[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+		threshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+	/**
+	 * @return the slot of the key, or the complement of the empty slot at which it would be inserted
+	 */
+	private int find(Object key) {
+		int slot = IntIntTable.hash(key.hashCode()) & mask;
+		while (keys[slot] != null) {
+			if (keys[slot].equals(key))
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return ~slot;
+	}
+
+	boolean contains(K key) {
+		return find(key) >= 0;
+	}
+
+	/**
+	 * @return the value of the key, or missing if the key is not present
+	 */
+	int get(K key, int missing) {
+		int slot = find(key);
+		return slot >= 0 ? values[slot] : missing;
+	}
+
+	/**
+	 * Sets the value of the key, whether or not the key is already present.
+	 */
+	void put(K key, int value) {
+		int slot = find(key);
+		if (slot < 0) {
+			if (size >= threshold) {
+				grow();
+				slot = find(key);
+			}
+			slot = ~slot;
+			size++;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+	}
+
+	/**
+	 * Removes the key, shifting back the entries that probed past it so that lookups need no tombstones.
+	 * @return whether the key was present
+	 */
+	boolean remove(K key) {
+		int slot = find(key);
+		if (slot < 0)
+			return false;
+		keys[slot] = null;
+		size--;
+		int next = slot;
+		while (true) {
+			next = (next + 1) & mask;
+			if (keys[next] == null)
+				return true;
+			int home = IntIntTable.hash(keys[next].hashCode()) & mask;
+			// the entry at next can move to slot only if its home is not cyclically within (slot, next]
+			if (slot <= next ? (home <= slot || home > next) : (home <= slot && home > next)) {
+				keys[slot] = keys[next];
+				values[slot] = values[next];
+				keys[next] = null;
+				slot = next;
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void grow() {
+		Object[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(oldKeys.length * 2);
+		size = 0;
+		for (int slot = 0; slot < oldKeys.length; slot++) {
+			if (oldKeys[slot] != null)
+				put((K) oldKeys[slot], oldValues[slot]);
+		}
+	}
+
+}
@@ -1,8 +1,10 @@
 package com.phoenixkahlo.utils;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
@@ -12,6 +14,32 @@ import java.nio.charset.StandardCharsets;
  */
 public class StreamUtils {
 
+	/**
+	 * The largest buffer that a thread keeps for reuse. Longer Strings are coded in a buffer of their own.
+	 */
+	private static final int MAX_SCRATCH_BYTES = 1 << 16;
+	
+	/**
+	 * The most bytes of an array copied at once by the bulk array methods.
+	 */
+	private static final int BLOCK_BYTES = 1 << 13;
+	
+	private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[256]);
+	
+	/**
+	 * Returns a buffer of at least the length, reused by the calling thread if the length is not too large.
+	 */
+	private static byte[] scratch(int length) {
+		if (length > MAX_SCRATCH_BYTES)
+			return new byte[length];
+		byte[] bytes = SCRATCH.get();
+		if (bytes.length < length) {
+			bytes = new byte[Math.max(length, Math.min(bytes.length * 2, MAX_SCRATCH_BYTES))];
+			SCRATCH.set(bytes);
+		}
+		return bytes;
+	}
+
 	/**
 	 * Writes the byte array to the OutputStream, preceded by an integer signifying the length of the array.
 	 * Symmetrical to readByteArray.
@@ -35,14 +63,46 @@ public class StreamUtils {
 	 */
 	public static byte[] readByteArray(InputStream in) throws IOException {
 		byte[] head = new byte[4];
-		in.read(head);
+		readFully(head, in);
 		byte[] body = new byte[bytesToInt(head)];
-		in.read(body);
+		readFully(body, in);
 		return body;
 	}
 	
+	/**
+	 * Reads from the InputStream until the array is full, since a single read may return fewer bytes than
+	 * requested, as sockets commonly do.
+	 * @param bytes the array to fill
+	 * @param in the InputStream to read from
+	 * @throws IOException if in throws an IOException
+	 * @throws EOFException if in ends before the array is full
+	 */
+	public static void readFully(byte[] bytes, InputStream in) throws IOException {
+		readFully(bytes, 0, bytes.length, in);
+	}
+	
+	/**
+	 * Reads from the InputStream until the range of the array is full.
+	 * @param bytes the array to fill
+	 * @param offset the position in bytes at which to start
+	 * @param length the number of bytes to read
+	 * @param in the InputStream to read from
+	 * @throws IOException if in throws an IOException
+	 * @throws EOFException if in ends before the range is full
+	 */
+	public static void readFully(byte[] bytes, int offset, int length, InputStream in) throws IOException {
+		int read = 0;
+		while (read < length) {
+			int n = in.read(bytes, offset + read, length - read);
+			if (n < 0)
+				throw new EOFException();
+			read += n;
+		}
+	}
+	
 	/**
 	 * Writes the String to the OutputStream, preceded by an integer signifying the length of the String in bytes.
+	 * Encodes into a buffer reused by the calling thread, and writes it in a single write.
 	 * Symmetrical to readString.
 	 * @param string the String to by written to out
 	 * @param out the OutputStream to be written to
@@ -50,11 +110,23 @@ public class StreamUtils {
 	 * @see com.phoenixkahlo.utils.StreamUtils#readString(InputStream)
 	 */
 	public static void writeString(String string, OutputStream out) throws IOException {
-		writeByteArray(stringToBytes(string), out);
+		if (out instanceof ByteBufferOutputStream) {
+			writeString(string, ((ByteBufferOutputStream) out).getBuffer());
+			return;
+		}
+		int length = Utf8.encodedLength(string);
+		byte[] bytes = scratch(4 + length);
+		bytes[0] = (byte) (length >> 24);
+		bytes[1] = (byte) (length >> 16);
+		bytes[2] = (byte) (length >> 8);
+		bytes[3] = (byte) length;
+		Utf8.encode(string, bytes, 4);
+		out.write(bytes, 0, 4 + length);
 	}
 	
 	/**
 	 * Reads a String from the InputStream, preceded by an integer signifying the length of the String in bytes.
+	 * Reads into a buffer reused by the calling thread, from which the String is decoded.
 	 * Symmetrical to writeString.
 	 * @param in in InputStream to read from
 	 * @return the String read from in
@@ -62,7 +134,51 @@ public class StreamUtils {
 	 * @see com.phoenixkahlo.utils.StreamUtils#writeString(String, OutputStream)
 	 */
 	public static String readString(InputStream in) throws IOException {
-		return bytesToString(readByteArray(in));
+		if (in instanceof ByteBufferInputStream)
+			return readString(((ByteBufferInputStream) in).getBuffer());
+		int length = readInt(in);
+		if (length < 0)
+			throw new IOException("Negative string length " + length);
+		byte[] bytes = scratch(length);
+		readFully(bytes, 0, length, in);
+		return Utf8.decode(bytes, 0, length);
+	}
+	
+	/**
+	 * Writes the String into the ByteBuffer in the same format as writeString to an OutputStream, encoding
+	 * it straight into the ByteBuffer.
+	 * Symmetrical to readString.
+	 * @param string the String to write
+	 * @param buffer the ByteBuffer to write into, which must be big-endian
+	 * @throws BufferOverflowException if buffer hasn't room for the String
+	 * @see com.phoenixkahlo.utils.StreamUtils#readString(ByteBuffer)
+	 */
+	public static void writeString(String string, ByteBuffer buffer) throws BufferOverflowException {
+		int length = Utf8.encodedLength(string);
+		if (buffer.remaining() < 4 + length)
+			throw new BufferOverflowException();
+		buffer.putInt(length);
+		Utf8.encode(string, buffer);
+	}
+	
+	/**
+	 * Reads a String from the ByteBuffer in the same format as readString from an InputStream, decoding it
+	 * straight from the ByteBuffer.
+	 * Symmetrical to writeString.
+	 * @param buffer the ByteBuffer to read from, which must be big-endian
+	 * @return the String read
+	 * @throws IOException if the length of the String is invalid or exceeds buffer
+	 * @see com.phoenixkahlo.utils.StreamUtils#writeString(String, ByteBuffer)
+	 */
+	public static String readString(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < 4)
+			throw new EOFException();
+		int length = buffer.getInt();
+		if (length < 0)
+			throw new IOException("Negative string length " + length);
+		if (buffer.remaining() < length)
+			throw new EOFException();
+		return Utf8.decode(buffer, length);
 	}
 	
 	/**
@@ -87,10 +203,95 @@ public class StreamUtils {
 	 */
 	public static int readInt(InputStream in) throws IOException {
 		byte[] bytes = new byte[4];
-		in.read(bytes);
+		readFully(bytes, in);
 		return bytesToInt(bytes);
 	}
 	
+	/**
+	 * Writes the non-negative int to the OutputStream in as few bytes as it needs, 7 bits per byte, such
+	 * that ints below 128 take a single byte.
+	 * Symmetrical to readVarInt.
+	 * @param n the non-negative int to write to out
+	 * @param out the OutputStream to write to
+	 * @throws IOException if out throws an IOException
+	 * @see com.phoenixkahlo.utils.StreamUtils#readVarInt(InputStream)
+	 */
+	public static void writeVarInt(int n, OutputStream out) throws IOException {
+		if (n < 0)
+			throw new IllegalArgumentException("Negative varint " + n);
+		while (n >= 0x80) {
+			out.write((n & 0x7F) | 0x80);
+			n >>>= 7;
+		}
+		out.write(n);
+	}
+	
+	/**
+	 * Reads the non-negative int from the InputStream, written in as few bytes as it needs.
+	 * Symmetrical to writeVarInt.
+	 * @param in the InputStream to read from
+	 * @return the int read from in
+	 * @throws IOException if in throws an IOException, or the varint is malformed
+	 * @see com.phoenixkahlo.utils.StreamUtils#writeVarInt(int, OutputStream)
+	 */
+	public static int readVarInt(InputStream in) throws IOException {
+		int n = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.read();
+			if (b < 0)
+				throw new EOFException();
+			n |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (n < 0)
+					throw new IOException("Malformed varint");
+				return n;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+	
+	/**
+	 * Writes the non-negative int into the ByteBuffer, in as few bytes as it needs.
+	 * Symmetrical to readVarInt.
+	 * @param n the non-negative int to write into buffer
+	 * @param buffer the ByteBuffer to write into
+	 * @throws BufferOverflowException if buffer hasn't room for the varint
+	 * @see com.phoenixkahlo.utils.StreamUtils#readVarInt(ByteBuffer)
+	 */
+	public static void writeVarInt(int n, ByteBuffer buffer) throws BufferOverflowException {
+		if (n < 0)
+			throw new IllegalArgumentException("Negative varint " + n);
+		while (n >= 0x80) {
+			buffer.put((byte) ((n & 0x7F) | 0x80));
+			n >>>= 7;
+		}
+		buffer.put((byte) n);
+	}
+	
+	/**
+	 * Reads the non-negative int from the ByteBuffer, written in as few bytes as it needs.
+	 * Symmetrical to writeVarInt.
+	 * @param buffer the ByteBuffer to read from
+	 * @return the int read from buffer
+	 * @throws IOException if buffer ends before the varint, or the varint is malformed
+	 * @see com.phoenixkahlo.utils.StreamUtils#writeVarInt(int, ByteBuffer)
+	 */
+	public static int readVarInt(ByteBuffer buffer) throws IOException {
+		int n = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			if (!buffer.hasRemaining())
+				throw new EOFException();
+			int b = buffer.get() & 0xFF;
+			n |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (n < 0)
+					throw new IOException("Malformed varint");
+				return n;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+	
 	/**
 	 * Writes the long to the OutputStream.
 	 * Symmetrical to readLong.
@@ -113,7 +314,7 @@ public class StreamUtils {
 	 */
 	public static long readLong(InputStream in) throws IOException {
 		byte[] bytes = new byte[8];
-		in.read(bytes);
+		readFully(bytes, in);
 		return bytesToLong(bytes);
 	}
 	
@@ -139,7 +340,7 @@ public class StreamUtils {
 	 */
 	public static double readDouble(InputStream in) throws IOException {
 		byte[] bytes = new byte[8];
-		in.read(bytes);
+		readFully(bytes, in);
 		return bytesToDouble(bytes);
 	}
 	
@@ -165,7 +366,7 @@ public class StreamUtils {
 	 */
 	public static float readFloat(InputStream in) throws IOException {
 		byte[] bytes = new byte[4];
-		in.read(bytes);
+		readFully(bytes, in);
 		return bytesToFloat(bytes);
 	}
 	
@@ -191,7 +392,7 @@ public class StreamUtils {
 	 */
 	public static short readShort(InputStream in) throws IOException {
 		byte[] bytes = new byte[2];
-		in.read(bytes);
+		readFully(bytes, in);
 		return bytesToShort(bytes);
 	}
 	
@@ -217,7 +418,7 @@ public class StreamUtils {
 	 */
 	public static char readChar(InputStream in) throws IOException {
 		byte[] bytes = new byte[2];
-		in.read(bytes);
+		readFully(bytes, in);
 		return bytesToChar(bytes);
 	}
 	
@@ -245,6 +446,190 @@ public class StreamUtils {
 		return in.read() != 0;
 	}
 	
+	/**
+	 * Writes the int array to the OutputStream, preceded by an integer signifying the length of the array.
+	 * Copies the array in blocks through a ByteBuffer view, writing each block at once.
+	 * Symmetrical to readIntArray.
+	 * @param array the array to write to out
+	 * @param out the OutputStream to write to
+	 * @throws IOException if out throws an IOException
+	 * @see com.phoenixkahlo.utils.StreamUtils#readIntArray(InputStream)
+	 */
+	public static void writeIntArray(int[] array, OutputStream out) throws IOException {
+		writeBlocks(array.length, 4, (block, from, count) -> block.asIntBuffer().put(array, from, count), out);
+	}
+	
+	/**
+	 * Reads a int array from the InputStream, preceded by an integer signifying the length of the array.
+	 * Copies the array in blocks through a ByteBuffer view, reading each block at once.
+	 * Symmetrical to writeIntArray.
+	 * @param in the InputStream to read from
+	 * @return the array read from in
+	 * @throws IOException if in throws an IOException
+	 * @see com.phoenixkahlo.utils.StreamUtils#writeIntArray(int[], OutputStream)
+	 */
+	public static int[] readIntArray(InputStream in) throws IOException {
+		int[] array = new int[readArrayLength(in)];
+		readBlocks(array.length, 4, (block, from, count) -> block.asIntBuffer().get(array, from, count), in);
+		return array;
+	}
+	
+	/**
+	 * Writes the long array to the OutputStream, preceded by an integer signifying the length of the array.
+	 * Copies the array in blocks through a ByteBuffer view, writing each block at once.
+	 * Symmetrical to readLongArray.
+	 * @param array the array to write to out
+	 * @param out the OutputStream to write to
+	 * @throws IOException if out throws an IOException
+	 * @see com.phoenixkahlo.utils.StreamUtils#readLongArray(InputStream)
+	 */
+	public static void writeLongArray(long[] array, OutputStream out) throws IOException {
+		writeBlocks(array.length, 8, (block, from, count) -> block.asLongBuffer().put(array, from, count), out);
+	}
+	
+	/**
+	 * Reads a long array from the InputStream, preceded by an integer signifying the length of the array.
+	 * Copies the array in blocks through a ByteBuffer view, reading each block at once.
+	 * Symmetrical to writeLongArray.
+	 * @param in the InputStream to read from
+	 * @return the array read from in
+	 * @throws IOException if in throws an IOException
+	 * @see com.phoenixkahlo.utils.StreamUtils#writeLongArray(long[], OutputStream)
+	 */
+	public static long[] readLongArray(InputStream in) throws IOException {
+		long[] array = new long[readArrayLength(in)];
+		readBlocks(array.length, 8, (block, from, count) -> block.asLongBuffer().get(array, from, count), in);
+		return array;
+	}
+	
+	/**
+	 * Writes the short array to the OutputStream, preceded by an integer signifying the length of the array.
+	 * Copies the array in blocks through a ByteBuffer view, writing each block at once.
+	 * Symmetrical to readShortArray.
+	 * @param array the array to write to out
+	 * @param out the OutputStream to write to
+	 * @throws IOException if out throws an IOException
+	 * @see com.phoenixkahlo.utils.StreamUtils#readShortArray(InputStream)
+	 */
+	public static void writeShortArray(short[] array, OutputStream out) throws IOException {
+		writeBlocks(array.length, 2, (block, from, count) -> block.asShortBuffer().put(array, from, count), out);
+	}
+	
+	/**
+	 * Reads a short array from the InputStream, preceded by an integer signifying the length of the array.
+	 * Copies the array in blocks through a ByteBuffer view, reading each block at once.
+	 * Symmetrical to writeShortArray.
+	 * @param in the InputStream to read from
+	 * @return the array read from in
+	 * @throws IOException if in throws an IOException
+	 * @see com.phoenixkahlo.utils.StreamUtils#writeShortArray(short[], OutputStream)
+	 */
+	public static short[] readShortArray(InputStream in) throws IOException {
+		short[] array = new short[readArrayLength(in)];
+		readBlocks(array.length, 2, (block, from, count) -> block.asShortBuffer().get(array, from, count), in);
+		return array;
+	}
+	
+	/**
+	 * Writes the float array to the OutputStream, preceded by an integer signifying the length of the array.
+	 * Copies the array in blocks through a ByteBuffer view, writing each block at once.
+	 * Symmetrical to readFloatArray.
+	 * @param array the array to write to out
+	 * @param out the OutputStream to write to
+	 * @throws IOException if out throws an IOException
+	 * @see com.phoenixkahlo.utils.StreamUtils#readFloatArray(InputStream)
+	 */
+	public static void writeFloatArray(float[] array, OutputStream out) throws IOException {
+		writeBlocks(array.length, 4, (block, from, count) -> block.asFloatBuffer().put(array, from, count), out);
+	}
+	
+	/**
+	 * Reads a float array from the InputStream, preceded by an integer signifying the length of the array.
+	 * Copies the array in blocks through a ByteBuffer view, reading each block at once.
+	 * Symmetrical to writeFloatArray.
+	 * @param in the InputStream to read from
+	 * @return the array read from in
+	 * @throws IOException if in throws an IOException
+	 * @see com.phoenixkahlo.utils.StreamUtils#writeFloatArray(float[], OutputStream)
+	 */
+	public static float[] readFloatArray(InputStream in) throws IOException {
+		float[] array = new float[readArrayLength(in)];
+		readBlocks(array.length, 4, (block, from, count) -> block.asFloatBuffer().get(array, from, count), in);
+		return array;
+	}
+	
+	/**
+	 * Writes the double array to the OutputStream, preceded by an integer signifying the length of the array.
+	 * Copies the array in blocks through a ByteBuffer view, writing each block at once.
+	 * Symmetrical to readDoubleArray.
+	 * @param array the array to write to out
+	 * @param out the OutputStream to write to
+	 * @throws IOException if out throws an IOException
+	 * @see com.phoenixkahlo.utils.StreamUtils#readDoubleArray(InputStream)
+	 */
+	public static void writeDoubleArray(double[] array, OutputStream out) throws IOException {
+		writeBlocks(array.length, 8, (block, from, count) -> block.asDoubleBuffer().put(array, from, count), out);
+	}
+	
+	/**
+	 * Reads a double array from the InputStream, preceded by an integer signifying the length of the array.
+	 * Copies the array in blocks through a ByteBuffer view, reading each block at once.
+	 * Symmetrical to writeDoubleArray.
+	 * @param in the InputStream to read from
+	 * @return the array read from in
+	 * @throws IOException if in throws an IOException
+	 * @see com.phoenixkahlo.utils.StreamUtils#writeDoubleArray(double[], OutputStream)
+	 */
+	public static double[] readDoubleArray(InputStream in) throws IOException {
+		double[] array = new double[readArrayLength(in)];
+		readBlocks(array.length, 8, (block, from, count) -> block.asDoubleBuffer().get(array, from, count), in);
+		return array;
+	}
+	
+	/**
+	 * Copies elements of an array to or from a block of bytes.
+	 */
+	private static interface BlockCopier {
+		void copy(ByteBuffer block, int from, int count);
+	}
+	
+	/**
+	 * Writes the length of an array, followed by its elements, copied into the thread's scratch buffer a
+	 * block at a time.
+	 */
+	private static void writeBlocks(int length, int size, BlockCopier copier, OutputStream out) throws IOException {
+		writeInt(length, out);
+		byte[] bytes = scratch((int) Math.min(length * (long) size, BLOCK_BYTES));
+		ByteBuffer block = ByteBuffer.wrap(bytes);
+		int perBlock = bytes.length / size;
+		for (int from = 0; from < length; from += perBlock) {
+			int count = Math.min(perBlock, length - from);
+			copier.copy(block, from, count);
+			out.write(bytes, 0, count * size);
+		}
+	}
+	
+	/**
+	 * Reads the elements of an array of the length, a block at a time into the thread's scratch buffer.
+	 */
+	private static void readBlocks(int length, int size, BlockCopier copier, InputStream in) throws IOException {
+		byte[] bytes = scratch((int) Math.min(length * (long) size, BLOCK_BYTES));
+		ByteBuffer block = ByteBuffer.wrap(bytes);
+		int perBlock = bytes.length / size;
+		for (int from = 0; from < length; from += perBlock) {
+			int count = Math.min(perBlock, length - from);
+			readFully(bytes, 0, count * size, in);
+			copier.copy(block, from, count);
+		}
+	}
+	
+	private static int readArrayLength(InputStream in) throws IOException {
+		int length = readInt(in);
+		if (length < 0)
+			throw new IOException("Negative array length " + length);
+		return length;
+	}
+	
 	/**
 	 * Converts an int to an array of 4 bytes
 	 * @param n the int to convert to bytes
@@ -269,7 +654,7 @@ public class StreamUtils {
 	 * @return the byte array representation of n
 	 */
 	public static byte[] longToBytes(long n) {
-		return ByteBuffer.allocate(4).putDouble(n).array();
+		return ByteBuffer.allocate(8).putLong(n).array();
 	}
 	
 	/**
@@ -0,0 +1,148 @@
+package com.phoenixkahlo.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An EvictionPolicy in the style of W-TinyLFU, which keeps hit rates high when a few keys are used far more
+ * than the rest, even among a stream of keys that are used only once.
+ * <p>
+ * New keys enter a small LRU window, which absorbs bursts. The key evicted from the window is only admitted
+ * to the main LRU region if it has been used more often than the key the main region would evict to make
+ * room for it, otherwise it is evicted itself. How often keys have been used is estimated by a count-min
+ * sketch of 4-bit counters, which are halved periodically so that the estimates favor recent use.
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @param <K> the type of keys
+ */
+public class TinyLfuEvictionPolicy<K> implements EvictionPolicy<K> {
+
+	/**
+	 * Estimates how often each key has been used, in a fixed amount of memory.
+	 */
+	private static class FrequencySketch {
+
+		private static final int[] SEEDS = {0x97CB3127, 0xB3A5E1C7, 0x4F1BBCDD, 0x2545F491};
+
+		private byte[][] counters;
+		private int mask;
+		private int additions = 0;
+		private int sampleSize;
+
+		FrequencySketch(int capacity) {
+			int width = 16;
+			while (width < capacity) {
+				width <<= 1;
+			}
+			counters = new byte[SEEDS.length][width];
+			mask = width - 1;
+			sampleSize = width * 10;
+		}
+
+		int frequency(Object key) {
+			int hash = key.hashCode();
+			int frequency = Integer.MAX_VALUE;
+			for (int i = 0; i < SEEDS.length; i++) {
+				frequency = Math.min(frequency, counters[i][index(hash, i)]);
+			}
+			return frequency;
+		}
+
+		void increment(Object key) {
+			int hash = key.hashCode();
+			for (int i = 0; i < SEEDS.length; i++) {
+				int index = index(hash, i);
+				if (counters[i][index] < 15)
+					counters[i][index]++;
+			}
+			if (++additions >= sampleSize)
+				age();
+		}
+
+		private void age() {
+			for (byte[] row : counters) {
+				for (int i = 0; i < row.length; i++) {
+					row[i] >>= 1;
+				}
+			}
+			additions /= 2;
+		}
+
+		private int index(int hash, int row) {
+			int h = (hash + SEEDS[row]) * SEEDS[row];
+			return (h ^ (h >>> 17)) & mask;
+		}
+
+	}
+
+	private FrequencySketch sketch;
+	private int windowCapacity;
+	private int mainCapacity;
+
+	/**
+	 * The keys of each region in order from least to most recently used.
+	 */
+	private Map<K, Boolean> window = new LinkedHashMap<K, Boolean>(16, 0.75f, true);
+	private Map<K, Boolean> main = new LinkedHashMap<K, Boolean>(16, 0.75f, true);
+
+	/**
+	 * Constructs a TinyLfuEvictionPolicy with a window of one percent of the capacity, which should be passed
+	 * to a BoundedBiMap as {@code TinyLfuEvictionPolicy::new}, such that it is given the map's capacity.
+	 * @param capacity the capacity of the cache that will use the policy
+	 */
+	public TinyLfuEvictionPolicy(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity " + capacity + " less than 1");
+		sketch = new FrequencySketch(capacity);
+		windowCapacity = Math.max(1, capacity / 100);
+		mainCapacity = capacity - windowCapacity;
+	}
+
+	@Override
+	public void added(K key) {
+		sketch.increment(key);
+		window.put(key, Boolean.TRUE);
+	}
+
+	@Override
+	public void accessed(K key) {
+		sketch.increment(key);
+		if (window.get(key) == null)
+			main.get(key);
+	}
+
+	@Override
+	public void removed(K key) {
+		if (window.remove(key) == null)
+			main.remove(key);
+	}
+
+	@Override
+	public K victim() {
+		while (window.size() > windowCapacity) {
+			K candidate = removeEldest(window);
+			if (main.size() < mainCapacity) {
+				main.put(candidate, Boolean.TRUE);
+				continue;
+			}
+			if (mainCapacity == 0)
+				// a cache of one key is all window, so there is nothing to compare the candidate against
+				return candidate;
+			K eldest = main.keySet().iterator().next();
+			if (sketch.frequency(candidate) <= sketch.frequency(eldest))
+				return candidate;
+			main.remove(eldest);
+			main.put(candidate, Boolean.TRUE);
+			return eldest;
+		}
+		return removeEldest(main.isEmpty() ? window : main);
+	}
+
+	private K removeEldest(Map<K, Boolean> region) {
+		Iterator<K> iterator = region.keySet().iterator();
+		K eldest = iterator.next();
+		iterator.remove();
+		return eldest;
+	}
+
+}
@@ -0,0 +1,252 @@
+package com.phoenixkahlo.utils;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A static class for encoding Strings to UTF 8 directly into a buffer, and decoding them directly from one,
+ * without the intermediate arrays of String.getBytes and without a CharsetEncoder. Strings of ASCII
+ * characters, which are most Strings sent, take a fast path of one byte per char in each direction.
+ * <p>
+ * Encoding is identical to String.getBytes(StandardCharsets.UTF_8), including the replacement of unpaired
+ * surrogates with '?', and decoding is identical to new String(bytes, StandardCharsets.UTF_8).
+ * @author <a href="mailto:kahlo.phoenix@gmail.com">Phoenix Kahlo</a>
+ * @see com.phoenixkahlo.utils.StreamUtils#writeString(String, java.io.OutputStream)
+ */
+public class Utf8 {
+
+	/**
+	 * Returns the number of bytes that the String encodes to.
+	 * @param string the String to measure
+	 * @return the length of the UTF 8 encoding of string
+	 */
+	public static int encodedLength(String string) {
+		int length = string.length();
+		int bytes = length;
+		int i = 0;
+		// ASCII characters are one byte each, so are already counted
+		while (i < length && string.charAt(i) < 0x80) {
+			i++;
+		}
+		for (; i < length; i++) {
+			char c = string.charAt(i);
+			if (c < 0x80) {
+				continue;
+			} else if (c < 0x800) {
+				bytes += 1;
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(string.charAt(i + 1))) {
+				// a surrogate pair of two chars is four bytes
+				bytes += 2;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				// an unpaired surrogate is replaced with '?'
+				continue;
+			} else {
+				bytes += 2;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Encodes the String into the array, which must have room for encodedLength(string) bytes.
+	 * @param string the String to encode
+	 * @param bytes the array to encode into
+	 * @param offset the position in bytes at which to start
+	 * @return the position in bytes after the encoding
+	 * @throws ArrayIndexOutOfBoundsException if there isn't room in bytes
+	 */
+	public static int encode(String string, byte[] bytes, int offset) {
+		int length = string.length();
+		int i = 0;
+		int position = offset;
+		while (i < length) {
+			char c = string.charAt(i);
+			if (c >= 0x80)
+				break;
+			bytes[position++] = (byte) c;
+			i++;
+		}
+		for (; i < length; i++) {
+			char c = string.charAt(i);
+			if (c < 0x80) {
+				bytes[position++] = (byte) c;
+			} else if (c < 0x800) {
+				bytes[position++] = (byte) (0xC0 | (c >> 6));
+				bytes[position++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(string.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, string.charAt(++i));
+				bytes[position++] = (byte) (0xF0 | (codePoint >> 18));
+				bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				bytes[position++] = '?';
+			} else {
+				bytes[position++] = (byte) (0xE0 | (c >> 12));
+				bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				bytes[position++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Encodes the String into the ByteBuffer at its position, advancing its position. Encodes straight into
+	 * the backing array if the ByteBuffer has one, and otherwise with absolute puts, such as into a direct
+	 * ByteBuffer.
+	 * @param string the String to encode
+	 * @param buffer the ByteBuffer to encode into
+	 * @throws BufferOverflowException if there isn't room in buffer
+	 * @throws java.nio.ReadOnlyBufferException if buffer is read-only
+	 */
+	public static void encode(String string, ByteBuffer buffer) {
+		int length = encodedLength(string);
+		if (buffer.remaining() < length)
+			throw new BufferOverflowException();
+		if (buffer.hasArray())
+			encode(string, buffer.array(), buffer.arrayOffset() + buffer.position());
+		else
+			encode(string, buffer, buffer.position());
+		buffer.position(buffer.position() + length);
+	}
+
+	/**
+	 * Encodes the String into the ByteBuffer at the index, without moving its position, as encode(String,
+	 * byte[], int) does into an array.
+	 */
+	private static void encode(String string, ByteBuffer buffer, int index) {
+		int length = string.length();
+		int i = 0;
+		int position = index;
+		while (i < length) {
+			char c = string.charAt(i);
+			if (c >= 0x80)
+				break;
+			buffer.put(position++, (byte) c);
+			i++;
+		}
+		for (; i < length; i++) {
+			char c = string.charAt(i);
+			if (c < 0x80) {
+				buffer.put(position++, (byte) c);
+			} else if (c < 0x800) {
+				buffer.put(position++, (byte) (0xC0 | (c >> 6)));
+				buffer.put(position++, (byte) (0x80 | (c & 0x3F)));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(string.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, string.charAt(++i));
+				buffer.put(position++, (byte) (0xF0 | (codePoint >> 18)));
+				buffer.put(position++, (byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				buffer.put(position++, (byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				buffer.put(position++, (byte) (0x80 | (codePoint & 0x3F)));
+			} else if (Character.isSurrogate(c)) {
+				buffer.put(position++, (byte) '?');
+			} else {
+				buffer.put(position++, (byte) (0xE0 | (c >> 12)));
+				buffer.put(position++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+				buffer.put(position++, (byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+
+	/**
+	 * Decodes a String from the bytes of the array.
+	 * @param bytes the array containing the encoding
+	 * @param offset the position of the encoding in bytes
+	 * @param length the length of the encoding
+	 * @return the String decoded
+	 */
+	public static String decode(byte[] bytes, int offset, int length) {
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			if (bytes[i] < 0)
+				return new String(bytes, offset, length, StandardCharsets.UTF_8);
+		}
+		// ASCII is a subset of ISO 8859 1, which decodes by a straight copy
+		return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Decodes a String from the bytes of the ByteBuffer at its position, advancing its position. Decodes
+	 * straight from the backing array if the ByteBuffer has one, and otherwise with absolute gets, such as
+	 * from a direct or read-only ByteBuffer.
+	 * @param buffer the ByteBuffer containing the encoding
+	 * @param length the length of the encoding
+	 * @return the String decoded
+	 * @throws BufferUnderflowException if buffer has fewer than length bytes remaining
+	 */
+	public static String decode(ByteBuffer buffer, int length) {
+		if (buffer.remaining() < length)
+			throw new BufferUnderflowException();
+		String string;
+		if (buffer.hasArray())
+			string = decode(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+		else
+			string = decode(buffer, buffer.position(), length);
+		buffer.position(buffer.position() + length);
+		return string;
+	}
+
+	/**
+	 * Decodes a String from the bytes of the ByteBuffer at the index, without moving its position. Well-formed
+	 * UTF 8 is decoded into the chars of the String as it is read, and anything malformed is copied out and
+	 * decoded by the charset, so that it is replaced exactly as new String(bytes, StandardCharsets.UTF_8)
+	 * would replace it.
+	 */
+	private static String decode(ByteBuffer buffer, int index, int length) {
+		// a UTF 8 encoding has no more chars than bytes
+		char[] chars = new char[length];
+		int count = 0;
+		int i = index;
+		int end = index + length;
+		while (i < end) {
+			int b = buffer.get(i);
+			if (b >= 0) {
+				chars[count++] = (char) b;
+				i++;
+				continue;
+			}
+			b &= 0xFF;
+			int codePoint;
+			int size;
+			if (b >= 0xC2 && b <= 0xDF) {
+				codePoint = b & 0x1F;
+				size = 2;
+			} else if (b >= 0xE0 && b <= 0xEF) {
+				codePoint = b & 0x0F;
+				size = 3;
+			} else if (b >= 0xF0 && b <= 0xF4) {
+				codePoint = b & 0x07;
+				size = 4;
+			} else {
+				return malformed(buffer, index, length);
+			}
+			if (i + size > end)
+				return malformed(buffer, index, length);
+			for (int j = 1; j < size; j++) {
+				int continuation = buffer.get(i + j);
+				if ((continuation & 0xC0) != 0x80)
+					return malformed(buffer, index, length);
+				codePoint = (codePoint << 6) | (continuation & 0x3F);
+			}
+			// overlong encodings, surrogates, and code points beyond Unicode are malformed
+			if ((size == 3 && (codePoint < 0x800 || Character.isSurrogate((char) codePoint)))
+					|| (size == 4 && (codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT)))
+				return malformed(buffer, index, length);
+			count += Character.toChars(codePoint, chars, count);
+			i += size;
+		}
+		return new String(chars, 0, count);
+	}
+
+	private static String malformed(ByteBuffer buffer, int index, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buffer.get(index + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}